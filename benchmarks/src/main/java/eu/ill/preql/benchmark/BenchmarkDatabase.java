@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates in-memory H2 databases of the test domain, seeded with synthetic data
+ *
+ * @author Jamie Hall
+ */
+final class BenchmarkDatabase {
+
+    private static final String PERSISTENCE_UNIT = "persistenceUnit";
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Create an entity manager factory for a new database
+     *
+     * @param name    the name of the database
+     * @param courses the number of courses to create (each course has two tags and an attachment)
+     * @return the entity manager factory
+     */
+    static EntityManagerFactory create(final String name, final int courses) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        properties.put("hibernate.format_sql", "false");
+        properties.put("hibernate.show_sql", "false");
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+        if (courses > 0) {
+            seed(entityManagerFactory, courses);
+        }
+        return entityManagerFactory;
+    }
+
+    /**
+     * Insert the synthetic data with set based statements
+     *
+     * @param entityManagerFactory the entity manager factory
+     * @param courses              the number of courses
+     */
+    private static void seed(final EntityManagerFactory entityManagerFactory, final int courses) {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            execute(entityManager, "INSERT INTO tenant (id, name) VALUES (1, 'Tenant 1')");
+            execute(entityManager, "INSERT INTO affiliation (id, name) SELECT X, 'Affiliation ' || X FROM SYSTEM_RANGE(1, 10)");
+            execute(entityManager, "INSERT INTO teacher (id, name, age, affiliation_id) "
+                    + "SELECT X, 'Teacher ' || X, 25 + MOD(X, 40), 1 + MOD(X, 10) FROM SYSTEM_RANGE(1, 100)");
+            execute(entityManager, "INSERT INTO tag (id, name) SELECT X, 'tag' || X FROM SYSTEM_RANGE(1, 20)");
+            execute(entityManager, "INSERT INTO course (id, name, active, code, credits, startDate, endDate, duration, "
+                    + "description, price, summary, teacher_id, tenant_id) "
+                    + "SELECT X, 'Course ' || X, MOD(X, 2) = 0, 'C-' || X, 1000 * (1 + MOD(X, 5)), "
+                    + "DATEADD('DAY', MOD(X, 1000), DATE '2018-01-01'), DATEADD('DAY', 90 + MOD(X, 1000), DATE '2018-01-01'), "
+                    + "3600000 * (1 + MOD(X, 100)), 'Description of course ' || X, 100.0 * (1 + MOD(X, 10)), "
+                    + "'Summary of course ' || X, 1 + MOD(X, 100), 1 FROM SYSTEM_RANGE(1, ?1)", courses);
+            execute(entityManager, "INSERT INTO course_tag (course_id, tag_id) SELECT X, 1 + MOD(X, 20) FROM SYSTEM_RANGE(1, ?1)", courses);
+            execute(entityManager, "INSERT INTO course_tag (course_id, tag_id) SELECT X, 1 + MOD(X + 7, 20) FROM SYSTEM_RANGE(1, ?1)", courses);
+            execute(entityManager, "INSERT INTO attachment (id, name, size, course_id) "
+                    + "SELECT X, 'attachment' || X || '.pdf', 1000 * MOD(X, 5000), X FROM SYSTEM_RANGE(1, ?1)", courses);
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static void execute(final EntityManager entityManager, final String sql) {
+        entityManager.createNativeQuery(sql).executeUpdate();
+    }
+
+    private static void execute(final EntityManager entityManager, final String sql, final int courses) {
+        entityManager.createNativeQuery(sql).setParameter(1, courses).executeUpdate();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import eu.ill.preql.CompiledFilterQueryProvider;
+import eu.ill.preql.builder.CourseFilterQueryProvider;
+import eu.ill.preql.domain.Course;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation of a filter query and the conversion of its expressions into criteria predicates,
+ * including the coercion of the parameter values, without executing the query
+ *
+ * @author Jamie Hall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CriteriaBenchmark {
+
+    @Param({"SIMPLE", "JOIN", "COLLECTION", "MIXED", "WIDE"})
+    private QueryShape shape;
+
+    private EntityManagerFactory                entityManagerFactory;
+    private EntityManager                       entityManager;
+    private CompiledFilterQueryProvider<Course> provider;
+    private String                              query;
+    private Map<String, Object>                 parameters;
+
+    @Setup
+    public void setup() {
+        entityManagerFactory = BenchmarkDatabase.create("criteria", 0);
+        entityManager = entityManagerFactory.createEntityManager();
+        provider = new CourseFilterQueryProvider(entityManager).compile();
+        query = shape.getQuery();
+        parameters = shape.getParameters();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    public Predicate[] buildCriteria() {
+        return provider.createQuery(entityManager, query)
+                .setParameters(parameters)
+                .getParser()
+                .parse(query);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import eu.ill.preql.CompiledFilterQueryProvider;
+import eu.ill.preql.FilterQuery;
+import eu.ill.preql.builder.CourseFilterQueryProvider;
+import eu.ill.preql.domain.Course;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end execution of filter queries against an in-memory database.
+ * Every operation uses its own entity manager, as a request of an application would
+ *
+ * @author Jamie Hall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExecutionBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"SIMPLE", "JOIN", "COLLECTION", "MIXED"})
+    private QueryShape shape;
+
+    private EntityManagerFactory                entityManagerFactory;
+    private CompiledFilterQueryProvider<Course> provider;
+    private String                              query;
+    private Map<String, Object>                 parameters;
+
+    @Setup
+    public void setup() {
+        entityManagerFactory = BenchmarkDatabase.create("execution-" + rows, rows);
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            provider = new CourseFilterQueryProvider(entityManager).compile();
+        } finally {
+            entityManager.close();
+        }
+        query = shape.getQuery();
+        parameters = shape.getParameters();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManagerFactory.close();
+    }
+
+    /**
+     * Fetch the first page of 20 results ordered by name
+     */
+    @Benchmark
+    public List<Course> resultList() {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            final FilterQuery<Course> filter = createQuery(entityManager);
+            filter.setOrder("name", "asc");
+            filter.setPagination(20, 0);
+            return filter.getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Count the results
+     */
+    @Benchmark
+    public Long count() {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return createQuery(entityManager).count();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private FilterQuery<Course> createQuery(final EntityManager entityManager) {
+        return provider.createQuery(entityManager, query).setParameters(parameters);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import eu.ill.preql.parser.ParsedQuery;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.parser.SyntaxParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lexing and parsing of queries into their abstract syntax tree
+ *
+ * @author Jamie Hall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"SIMPLE", "JOIN", "MIXED", "WIDE"})
+    private QueryShape shape;
+
+    @Param({"ANTLR", "RECURSIVE_DESCENT"})
+    private SyntaxParser parser;
+
+    private String query;
+
+    @Setup
+    public void setup() {
+        query = shape.getQuery();
+        QueryParser.setSyntaxParser(parser);
+    }
+
+    /**
+     * Parse the query without the cache of parsed queries
+     */
+    @Benchmark
+    public ParsedQuery parse() {
+        return parser.parse(query);
+    }
+
+    /**
+     * Parse the query through the cache of parsed queries
+     */
+    @Benchmark
+    public ParsedQuery parseCached() {
+        return QueryParser.parseQuery(query);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Representative queries of different shapes and sizes, with their parameters
+ *
+ * @author Jamie Hall
+ */
+public enum QueryShape {
+
+    /**
+     * A single comparison on an attribute of the root entity
+     */
+    SIMPLE("credits >= :credits"),
+
+    /**
+     * A comparison on an attribute of a joined entity
+     */
+    JOIN("teacher.age < :age AND credits >= :credits"),
+
+    /**
+     * A comparison on an attribute of a joined collection
+     */
+    COLLECTION("tags IN :tags AND credits >= :credits"),
+
+    /**
+     * A combination of all of the kinds of expressions
+     */
+    MIXED("(name LIKE :name OR code = :code) AND credits BETWEEN :min AND :max "
+            + "AND teacher.name IS NOT NULL AND tags IN :tags AND startDate < :startDate"),
+
+    /**
+     * A long disjunction of comparisons
+     */
+    WIDE(wide(50));
+
+    private final String query;
+
+    QueryShape(final String query) {
+        this.query = query;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Get the parameters of the query
+     *
+     * @return the parameter values by name
+     */
+    public Map<String, Object> getParameters() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("credits", 3000);
+        parameters.put("age", 40);
+        parameters.put("tags", Arrays.asList("tag1", "tag2", "tag3"));
+        parameters.put("name", "%Course 1%");
+        parameters.put("code", "C-2");
+        parameters.put("min", "2000");
+        parameters.put("max", 4000);
+        parameters.put("startDate", "2019-01-01");
+        for (int i = 0; i < 50; i++) {
+            parameters.put("id" + i, (long) i * 97);
+        }
+        return parameters;
+    }
+
+    private static String wide(final int size) {
+        final StringBuilder query = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                query.append(" OR ");
+            }
+            query.append("id = :id").append(i);
+        }
+        return query.toString();
+    }
+}
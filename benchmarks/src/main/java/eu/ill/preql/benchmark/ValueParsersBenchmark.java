@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.benchmark;
+
+import eu.ill.preql.parser.ValueParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the coercion of parameter values into the types of the attributes
+ *
+ * @author Jamie Hall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueParsersBenchmark {
+
+    /**
+     * The coercions: the target type and the value that is given as a parameter
+     */
+    public enum Coercion {
+        IDENTITY(Long.class, 12345L),
+        LONG(Long.class, "12345"),
+        INTEGER(Integer.class, 12345L),
+        BOOLEAN(Boolean.class, "true"),
+        BIG_DECIMAL(BigDecimal.class, "12345.67"),
+        DATE(Date.class, "2018-01-01"),
+        UUID(java.util.UUID.class, "f47ac10b-58cc-4372-a567-0e02b2c3d479");
+
+        private final Class<?> type;
+        private final Object   value;
+
+        Coercion(final Class<?> type, final Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    @Param
+    private Coercion coercion;
+
+    private ValueParsers valueParsers;
+    private Class<?>     type;
+    private Object       value;
+
+    @Setup
+    public void setup() {
+        valueParsers = new ValueParsers();
+        type = coercion.type;
+        value = coercion.value;
+    }
+
+    @Benchmark
+    public Object coerce() {
+        return valueParsers.getParser(type, value).parse(value);
+    }
+}
@@ -15,9 +15,20 @@
  */
 package eu.ill.preql;
 
+import eu.ill.preql.memory.CompiledPredicate;
+import eu.ill.preql.memory.InMemoryQuery;
+import eu.ill.preql.memory.SnapshotIndex;
 import eu.ill.preql.support.Field;
-import eu.ill.preql.support.OrderableField;
+import eu.ill.preql.support.FieldDescriptor;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.CriteriaQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * @param <E> the root entity type
@@ -25,7 +36,8 @@ import jakarta.persistence.EntityManager;
  */
 public abstract class AbstractFilterQueryProvider<E> extends AbstractQueryProvider<E, E> {
 
-    private final CountQueryProvider<E> countQueryProvider;
+    private final    Class<E>                       objectType;
+    private volatile CompiledFilterQueryProvider<E> compiled;
 
     /**
      * @param objectType    the object type that the query will correspond to
@@ -33,25 +45,18 @@ public abstract class AbstractFilterQueryProvider<E> extends AbstractQueryProvid
      */
     public AbstractFilterQueryProvider(final Class<E> objectType, final EntityManager entityManager) {
         super(objectType, objectType, entityManager);
-        this.countQueryProvider = new CountQueryProvider<E>(objectType, entityManager);
+        this.objectType = objectType;
     }
 
     /**
      * Create a new query for the given object type
+     * Every query is created with its own criteria query and root
      *
      * @param preql - the expression query
      * @return a new filter instance
      */
     public FilterQuery<E> createQuery(final String preql) {
-        CountQuery<E> countQuery = this.countQueryProvider.createQuery(preql);
-
-        return new FilterQuery<>(preql,
-                entityManager,
-                criteriaBuilder,
-                criteria,
-                root,
-                fields,
-                countQuery);
+        return compile().createQuery(entityManager, preql);
     }
 
     /**
@@ -63,21 +68,90 @@ public abstract class AbstractFilterQueryProvider<E> extends AbstractQueryProvid
         return createQuery(null);
     }
 
+    /**
+     * Compile a query into a predicate that filters objects in memory
+     *
+     * @param preql      the expression query
+     * @param parameters the parameter values
+     * @return the predicate
+     */
+    public CompiledPredicate<E> createPredicate(final String preql, final Map<String, Object> parameters) {
+        return compile().createPredicate(preql, parameters);
+    }
+
+    /**
+     * Create a new query that filters, orders and paginates objects in memory
+     *
+     * @param preql the expression query
+     * @return a new in memory query
+     */
+    public InMemoryQuery<E> createInMemoryQuery(final String preql) {
+        return compile().createInMemoryQuery(preql);
+    }
+
+    /**
+     * Create a new index that evaluates the queries on a columnar snapshot of all the entities of the object type.
+     * Every snapshot is loaded with a new entity manager of the entity manager factory of this provider, which is closed
+     * once the associations and collections that the fields go through have been loaded: the snapshot holds
+     * detached entities and does not keep the entity manager of this provider (which may be bound to a request)
+     *
+     * @return the snapshot index
+     */
+    public SnapshotIndex<E> createSnapshotIndex() {
+        final EntityManagerFactory factory = entityManager.getEntityManagerFactory();
+        return createSnapshotIndex(() -> {
+            final EntityManager loader = factory.createEntityManager();
+            try {
+                final CriteriaQuery<E> criteria = loader.getCriteriaBuilder().createQuery(objectType);
+                final List<E>          objects  = loader.createQuery(criteria.select(criteria.from(objectType))).getResultList();
+                compile().initialize(objects);
+                return objects;
+            } finally {
+                loader.close();
+            }
+        });
+    }
+
+    /**
+     * Create a new index that evaluates the queries on a columnar snapshot of the objects returned by a loader
+     *
+     * @param loader the loader of the objects (called on the first query and on every refresh)
+     * @return the snapshot index
+     */
+    public SnapshotIndex<E> createSnapshotIndex(final Supplier<? extends Collection<? extends E>> loader) {
+        return compile().createSnapshotIndex(loader);
+    }
+
+    /**
+     * Compile the registered fields into an immutable provider that can be shared between threads
+     * and used with any entity manager of the same persistence unit
+     *
+     * @return the compiled provider
+     */
+    public CompiledFilterQueryProvider<E> compile() {
+        CompiledFilterQueryProvider<E> provider = compiled;
+        if (provider == null) {
+            final List<FieldDescriptor> descriptors = new ArrayList<>();
+            for (final Field field : fields.values()) {
+                descriptors.add(FieldDescriptor.of(field));
+            }
+            provider = new CompiledFilterQueryProvider<>(objectType, descriptors, entityManager.getMetamodel());
+            compiled = provider;
+        }
+        return provider;
+    }
+
     /**
      * Add a new field
      *
      * @param field The field to be added
      * @return this
      */
+    @Override
     public AbstractQueryProvider<E, E> addField(final Field field) {
-        // Clone field for count query provider
-        if (field instanceof OrderableField) {
-            this.countQueryProvider.addField(this.countQueryProvider.field(field.getAttribute(), field.getName(), field.getValueParser()));
-        } else {
-            this.countQueryProvider.addField(this.countQueryProvider.orderableField(field.getAttribute(), field.getName(), field.getValueParser()));
-        }
-
-        return super.addField(field);
+        super.addField(field);
+        compiled = null;
+        return this;
     }
 
 }
@@ -99,6 +99,8 @@ public abstract class AbstractQueryProvider<E, S> {
 
     /**
      * Create a new simple field
+     * The path of the field is resolved on the root of the provider on first use: the fields of a provider are
+     * compiled into descriptors that are bound to the root of every query, so they are usually never resolved here
      *
      * @param attribute the name of the represented attribute
      * @return a new simple field
@@ -136,9 +138,10 @@ public abstract class AbstractQueryProvider<E, S> {
      * @param alias       the field alias
      * @param valueParser the custom value parser for the field
      * @return a new simple field
+     * @throws IllegalArgumentException if the attribute does not exist
      */
     public SimpleField field(final String attribute, final String alias, final FieldValueParser<?> valueParser) {
-        return new SimpleField(attribute, alias, mapper.get(attribute), valueParser);
+        return new SimpleField(checkAttribute(attribute), alias, valueParser, mapper);
     }
 
     /**
@@ -180,9 +183,23 @@ public abstract class AbstractQueryProvider<E, S> {
      * @param alias       the field alias
      * @param valueParser the custom value parser for the field
      * @return a new orderable field
+     * @throws IllegalArgumentException if the attribute does not exist
      */
     public OrderableField orderableField(final String attribute, final String alias, final FieldValueParser<?> valueParser) {
-        return new OrderableField(attribute, alias, mapper.get(attribute), valueParser);
+        return new OrderableField(checkAttribute(attribute), alias, valueParser, mapper);
+    }
+
+    /**
+     * Check that an attribute exists with the metamodel, without resolving its path:
+     * the path of a field is only resolved when it is used
+     *
+     * @param attribute the name of the represented attribute
+     * @return the attribute
+     * @throws IllegalArgumentException if the attribute does not exist
+     */
+    private String checkAttribute(final String attribute) {
+        mapper.getJavaType(attribute);
+        return attribute;
     }
 
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identifies the filter queries of a provider in the cached results: the fields of the provider
+ * and the entity types their paths go through, on which the results of the queries depend.
+ * It also holds the types of the attributes of the fields, which the parameter values are coerced to
+ * in the keys of the results
+ *
+ * @author Jamie Hall
+ */
+final class CacheScope {
+    private final String                       fields;
+    private final Set<Class<?>>                entityTypes;
+    private final Map<String, FieldDescriptor> descriptors;
+    private final Map<String, Class<?>>        types;
+
+    /**
+     * @param fields      the description of the root type and of the fields, which is part of the keys of the results
+     * @param entityTypes the entity types of the paths of the fields
+     * @param descriptors the field descriptors indexed by field name
+     * @param types       the types of the attributes of the fields indexed by field name
+     */
+    CacheScope(final String fields, final Set<Class<?>> entityTypes,
+               final Map<String, FieldDescriptor> descriptors, final Map<String, Class<?>> types) {
+        this.fields = fields;
+        this.entityTypes = entityTypes;
+        this.descriptors = descriptors;
+        this.types = types;
+    }
+
+    /**
+     * Get the description of the root type and of the fields
+     *
+     * @return the description
+     */
+    String getFields() {
+        return fields;
+    }
+
+    /**
+     * Get the entity types the results of the queries depend on
+     *
+     * @return the entity types
+     */
+    Set<Class<?>> getEntityTypes() {
+        return entityTypes;
+    }
+
+    /**
+     * Get a field
+     *
+     * @param name the name of the field
+     * @return the field descriptor or null if the field does not exist
+     */
+    FieldDescriptor getField(final String name) {
+        return descriptors.get(name);
+    }
+
+    /**
+     * Get the type of the attribute of a field (the type of its elements for a collection)
+     *
+     * @param name the name of the field
+     * @return the type
+     */
+    Class<?> getType(final String name) {
+        return types.get(name);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.support.ChunkRelease;
+import eu.ill.preql.support.CursorPage;
+import eu.ill.preql.support.Pagination;
+import jakarta.persistence.EntityManager;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the results of a filter query one chunk at a time.
+ * A chunk is only fetched once the previous one has been consumed, and the entities of the previous chunk
+ * are then released from the persistence context, so that the memory used does not depend on the number of results
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class ChunkIterator<E> implements Iterator<E> {
+
+    private final FilterQuery<E> query;
+    private final EntityManager  entityManager;
+    private final int            chunkSize;
+    private final boolean        keyset;
+    private final ChunkRelease   release;
+    private       List<E>        chunk    = Collections.emptyList();
+    private       Iterator<E>    iterator = chunk.iterator();
+    private       String         cursor;
+    private       int            offset;
+    private       boolean        last;
+
+    /**
+     * @param query         the filter query
+     * @param entityManager the entity manager of the query
+     * @param chunkSize     the number of results of a chunk
+     * @param keyset        true to fetch the chunks with keyset pagination, false to fetch them with an offset
+     * @param release       how the entities of a processed chunk are released
+     */
+    ChunkIterator(final FilterQuery<E> query,
+                  final EntityManager entityManager,
+                  final int chunkSize,
+                  final boolean keyset,
+                  final ChunkRelease release) {
+        this.query = query;
+        this.entityManager = entityManager;
+        this.chunkSize = chunkSize;
+        this.keyset = keyset;
+        this.release = release;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!iterator.hasNext()) {
+            if (last) {
+                return false;
+            }
+            close();
+            chunk = fetch();
+            iterator = chunk.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return iterator.next();
+    }
+
+    /**
+     * Release the entities of the current chunk from the persistence context.
+     * The pending changes of a transaction are flushed before the persistence context is cleared, so that they are not lost
+     */
+    void close() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (release == ChunkRelease.CLEAR) {
+            if (entityManager.isJoinedToTransaction()) {
+                entityManager.flush();
+            }
+            entityManager.clear();
+        } else {
+            for (final E entity : chunk) {
+                entityManager.detach(entity);
+            }
+        }
+        chunk = Collections.emptyList();
+    }
+
+    /**
+     * Fetch the next chunk
+     *
+     * @return the results of the chunk
+     */
+    private List<E> fetch() {
+        if (keyset) {
+            final CursorPage<E> page = query.getCursorPage(cursor, chunkSize);
+            cursor = page.getNextCursor();
+            last = !page.hasNext();
+            return page.getResults();
+        }
+        final List<E> results = query.getResultList(true, new Pagination(chunkSize, offset));
+        offset += results.size();
+        last = results.size() < chunkSize;
+        return results;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.cache.QueryCaches;
+import eu.ill.preql.memory.CompiledPredicate;
+import eu.ill.preql.memory.InMemoryQuery;
+import eu.ill.preql.memory.PredicateCompiler;
+import eu.ill.preql.memory.SnapshotIndex;
+import eu.ill.preql.support.AttributeMapper;
+import eu.ill.preql.support.Field;
+import eu.ill.preql.support.FieldDescriptor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Metamodel;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable provider of filter queries for a given entity.
+ * The fields are held as root independent descriptors and every query is created with its own
+ * criteria query and root, so a single instance can be shared between concurrent requests.
+ * Use {@link AbstractFilterQueryProvider#compile()} to create a compiled provider.
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+public final class CompiledFilterQueryProvider<E> {
+
+    private final    Class<E>                     objectType;
+    private final    Map<String, FieldDescriptor> fields;
+    private final    PredicateCompiler<E>         predicateCompiler;
+    private volatile CacheScope                   cacheScope;
+
+    /**
+     * @param objectType the object type that the query will correspond to
+     * @param fields     the field descriptors
+     * @param metamodel  the metamodel of the persistence unit, used to check the attributes of the fields
+     *                   and to resolve the attributes of in memory queries (can be null)
+     * @throws IllegalArgumentException if the attribute of a field does not exist
+     */
+    CompiledFilterQueryProvider(final Class<E> objectType, final Collection<FieldDescriptor> fields, final Metamodel metamodel) {
+        this.objectType = requireNonNull(objectType, "Object type cannot be null");
+        final Map<String, FieldDescriptor> descriptors = new LinkedHashMap<>();
+        for (final FieldDescriptor field : fields) {
+            if (metamodel != null) {
+                // the joins of the fields are only created by the queries, but the attributes are checked now
+                AttributeMapper.getJavaType(metamodel, objectType, field.getAttribute());
+            }
+            descriptors.put(field.getName(), field);
+        }
+        this.fields = unmodifiableMap(descriptors);
+        this.predicateCompiler = new PredicateCompiler<>(objectType, this.fields, metamodel);
+    }
+
+    /**
+     * Create a new query for the given object type
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @param preql         the expression query
+     * @return a new filter instance
+     */
+    public FilterQuery<E> createQuery(final EntityManager entityManager, final String preql) {
+        final CriteriaBuilder  criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<E> criteria        = criteriaBuilder.createQuery(objectType);
+        final Root<E>          root            = criteria.from(objectType);
+        final QueryPlan<E>     plan            = new QueryPlan<>(preql, getCacheScope(root, entityManager));
+        return new FilterQuery<>(plan,
+                entityManager,
+                criteriaBuilder,
+                criteria,
+                root,
+                bindFields(root, entityManager),
+                () -> createCountQuery(entityManager, plan),
+                () -> createIdQuery(entityManager, plan),
+                () -> createWindowQuery(entityManager, plan),
+                () -> createCursorQuery(entityManager, plan));
+    }
+
+    /**
+     * Create a new query for the given object type
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @return a new filter instance
+     */
+    public FilterQuery<E> createQuery(final EntityManager entityManager) {
+        return createQuery(entityManager, null);
+    }
+
+    /**
+     * Compile a query into a predicate that filters objects of the given object type in memory,
+     * for example to filter a cached collection without a database round trip.
+     * The predicate has the semantics of the filter query with the same query and parameters
+     *
+     * @param preql      the expression query
+     * @param parameters the parameter values
+     * @return the predicate
+     */
+    public CompiledPredicate<E> createPredicate(final String preql, final Map<String, Object> parameters) {
+        return predicateCompiler.compile(preql, parameters);
+    }
+
+    /**
+     * Create a new query that filters, orders and paginates objects of the given object type in memory
+     *
+     * @param preql the expression query
+     * @return a new in memory query
+     */
+    public InMemoryQuery<E> createInMemoryQuery(final String preql) {
+        return predicateCompiler.createQuery(preql);
+    }
+
+    /**
+     * Create a new index that evaluates the queries on a columnar snapshot of the objects returned by a loader
+     *
+     * @param loader the loader of the objects (called on the first query and on every refresh)
+     * @return the snapshot index
+     */
+    public SnapshotIndex<E> createSnapshotIndex(final Supplier<? extends Collection<? extends E>> loader) {
+        return predicateCompiler.createSnapshotIndex(loader);
+    }
+
+    /**
+     * Initialize the lazy associations and collections that the fields go through (see {@link PredicateCompiler#initialize(Collection)})
+     *
+     * @param objects the objects
+     */
+    void initialize(final Collection<? extends E> objects) {
+        predicateCompiler.initialize(objects);
+    }
+
+    /**
+     * Get the object type that the queries correspond to
+     *
+     * @return the object type
+     */
+    public Class<E> getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * Get the field descriptors indexed by field name
+     *
+     * @return the field descriptors
+     */
+    public Map<String, FieldDescriptor> getFields() {
+        return fields;
+    }
+
+    /**
+     * Get the scope of the cached results of the queries
+     * The scope is created on first use, once the results or the counts are cached
+     *
+     * @param root          the root of a query
+     * @param entityManager the entity manager
+     * @return the scope or null if the results are not cached
+     */
+    private CacheScope getCacheScope(final Root<E> root, final EntityManager entityManager) {
+        if (QueryCaches.getResultCache() == null && QueryCaches.getCountCache() == null) {
+            return null;
+        }
+        CacheScope scope = cacheScope;
+        if (scope == null) {
+            final AttributeMapper<E>    mapper      = new AttributeMapper<>(root, entityManager.getMetamodel());
+            final Set<Class<?>>         entityTypes = new LinkedHashSet<>();
+            final Map<String, Class<?>> types       = new HashMap<>();
+            final StringBuilder         description = new StringBuilder(objectType.getName());
+            entityTypes.add(objectType);
+            for (final FieldDescriptor field : fields.values()) {
+                description.append(';').append(field.getName()).append('=').append(field.getAttribute())
+                        .append(':').append(mapper.getCollectionStrategy(field.getCollectionStrategy()));
+                entityTypes.addAll(mapper.getEntityTypes(field.getAttribute()));
+                types.put(field.getName(), mapper.getJavaType(field.getAttribute()));
+            }
+            scope = new CacheScope(description.toString(), unmodifiableSet(entityTypes), fields, unmodifiableMap(types));
+            cacheScope = scope;
+        }
+        return scope;
+    }
+
+    /**
+     * Create the count query that accompanies a filter query
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @param plan          the plan shared with the filter query
+     * @return a new count query
+     */
+    private CountQuery<E> createCountQuery(final EntityManager entityManager, final QueryPlan<E> plan) {
+        final CriteriaBuilder     criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Long> criteria        = criteriaBuilder.createQuery(Long.class);
+        final Root<E>             root            = criteria.from(objectType);
+        return new CountQuery<>(plan,
+                entityManager,
+                criteriaBuilder,
+                criteria,
+                root,
+                bindFields(root, entityManager));
+    }
+
+    /**
+     * Create the identifier query that accompanies a filter query
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @param plan          the plan shared with the filter query
+     * @return a new identifier query
+     */
+    private IdQuery<E> createIdQuery(final EntityManager entityManager, final QueryPlan<E> plan) {
+        final CriteriaBuilder       criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Object> criteria        = criteriaBuilder.createQuery(Object.class);
+        final Root<E>               root            = criteria.from(objectType);
+        return new IdQuery<>(plan,
+                entityManager,
+                criteriaBuilder,
+                criteria,
+                root,
+                bindFields(root, entityManager));
+    }
+
+    /**
+     * Create the window query that accompanies a filter query
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @param plan          the plan shared with the filter query
+     * @return a new window query
+     */
+    private WindowQuery<E> createWindowQuery(final EntityManager entityManager, final QueryPlan<E> plan) {
+        final CriteriaBuilder      criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> criteria        = criteriaBuilder.createTupleQuery();
+        final Root<E>              root            = criteria.from(objectType);
+        return new WindowQuery<>(plan,
+                entityManager,
+                criteriaBuilder,
+                criteria,
+                root,
+                bindFields(root, entityManager));
+    }
+
+    /**
+     * Create a cursor query that accompanies a filter query
+     *
+     * @param entityManager the entity manager used to execute the query
+     * @param plan          the plan shared with the filter query
+     * @return a new cursor query
+     */
+    private CursorQuery<E> createCursorQuery(final EntityManager entityManager, final QueryPlan<E> plan) {
+        final CriteriaBuilder      criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> criteria        = criteriaBuilder.createTupleQuery();
+        final Root<E>              root            = criteria.from(objectType);
+        return new CursorQuery<>(plan,
+                entityManager,
+                criteriaBuilder,
+                criteria,
+                root,
+                bindFields(root, entityManager));
+    }
+
+    /**
+     * Bind the field descriptors to a query root
+     * The fields are bound lazily so that only the joins of the referenced fields are created
+     *
+     * @param root          the query root
+     * @param entityManager the entity manager
+     * @return the fields indexed by name
+     */
+    private Map<String, Field> bindFields(final Root<E> root, final EntityManager entityManager) {
+        return new LazyFieldMap(fields, new AttributeMapper<>(root, entityManager.getMetamodel()));
+    }
+}
@@ -15,10 +15,12 @@
  */
 package eu.ill.preql;
 
-import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.cache.CountCache;
+import eu.ill.preql.cache.QueryCaches;
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
 import eu.ill.preql.parser.QueryParser;
-import eu.ill.preql.parser.QueryParserContext;
-import eu.ill.preql.parser.ValueParsers;
 import eu.ill.preql.support.Field;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.CriteriaBuilder;
@@ -27,12 +29,13 @@ import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import static java.lang.String.format;
+import static eu.ill.preql.support.AttributeMapper.hasCollectionJoin;
 
 /**
  * Defines a new query
@@ -46,20 +49,18 @@ class CountQuery<E> {
     private final CriteriaQuery<Long> criteria;
     private final Root<E>             root;
     private final Map<String, Field>  fields;
-    private final Map<String, Object> parameters   = new HashMap<>();
-    private final String              query;
+    private final QueryPlan<E>        plan;
     private final List<Predicate>     expressions  = new ArrayList<>();
     private final QueryParser         parser;
-    private final ValueParsers valueParsers = new ValueParsers();
 
     CountQuery(
-            final String query,
+            final QueryPlan<E> plan,
             final EntityManager entityManager,
             final CriteriaBuilder criteriaBuilder,
             final CriteriaQuery<Long> criteria,
             final Root<E> root,
             final Map<String, Field> fields) {
-        this.query = query;
+        this.plan = plan;
         this.entityManager = entityManager;
         this.criteriaBuilder = criteriaBuilder;
         this.criteria = criteria;
@@ -68,48 +69,47 @@ class CountQuery<E> {
         this.parser = createParser();
     }
 
-    /**
-     * Get a field for a given name
-     *
-     * @param name The name of the field
-     * @return the field
-     */
-    Field getField(final String name) {
-        if (fields.containsKey(name)) {
-            return fields.get(name);
-        }
-        throw new InvalidQueryException(format("Field %s does not exist", name));
-    }
-
-    /**
-     * Add a predefined expression to the query
-     * These expressions are added to the final query before being executed
-     *
-     * @param callback the expression callback
-     * @return this
-     */
-    CountQuery<E> addExpression(final BiFunction<CriteriaBuilder, Root<E>, Predicate> callback) {
-        final Predicate expression = callback.apply(criteriaBuilder, root);
-        expressions.add(expression);
-        return this;
-    }
-
     /**
      * Create a SELECT query
-     * @param distinct  distinct rows or not
+     * The rows are only counted distinctly when a collection has been joined to the query
+     * @param entityManager the entity manager that executes the query
+     * @param distinct      distinct rows or not
      * @return the typed query of <E>
      */
-    private TypedQuery<Long> createQuery(boolean distinct) {
-        final Predicate[] expressions = parser.parse(query);
+    private TypedQuery<Long> createQuery(final EntityManager entityManager, boolean distinct) {
+        plan.applyExpressions(criteriaBuilder, root, this.expressions);
+        final Predicate[] expressions = parser.parse(plan.getParsedQuery());
 
         criteria.where(expressions);
-        if (distinct) {
+        if (distinct && hasCollectionJoin(root)) {
             criteria.select(criteriaBuilder.countDistinct(root));
         } else {
             criteria.select(criteriaBuilder.count(root));
         }
 
-        return entityManager.createQuery(criteria);
+        final QueryEvent event = QueryObservers.start(QueryPhase.TRANSLATE);
+        final TypedQuery<Long> query = entityManager.createQuery(criteria);
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        parser.bindParameters(query);
+
+        return query;
+    }
+
+    /**
+     * Prepare the count on an entity manager
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param distinct      counts distinct results
+     * @return the supplier of the count
+     */
+    Supplier<Long> prepare(final EntityManager entityManager, final boolean distinct) {
+        final TypedQuery<Long> query = createQuery(entityManager, distinct);
+        return () -> {
+            final QueryEvent event = QueryObservers.start(QueryPhase.COUNT);
+            final Long count = query.getSingleResult();
+            QueryObservers.complete(event, plan.getParsedQuery(), criteria, count);
+            return count;
+        };
     }
 
     /**
@@ -137,8 +137,28 @@ class CountQuery<E> {
      *                                      is rolled back
      */
     Long getSingleResult(final boolean distinct) {
-        final TypedQuery<Long> query = createQuery(distinct);
-        return query.getSingleResult();
+        return prepare(entityManager, distinct).get();
+    }
+
+    /**
+     * Execute a SELECT query that returns a single result, through the count cache when it has been set
+     * (see {@link QueryCaches#setCountCache(CountCache)}) and the query has no predefined expressions.
+     * The count is only prepared when it is not cached, and a stale count is refreshed by a count prepared
+     * on another entity manager and executed asynchronously
+     *
+     * @param distinct     counts distinct results
+     * @param executeAsync the function that prepares a count on a new entity manager and executes it asynchronously
+     * @return the result
+     */
+    Long getSingleResult(final boolean distinct,
+                         final Function<Function<EntityManager, Supplier<Long>>, CompletableFuture<Long>> executeAsync) {
+        final CountCache cache = QueryCaches.getCountCache();
+        if (cache == null || !plan.isCacheable()) {
+            return getSingleResult(distinct);
+        }
+        return cache.get(plan.createCacheKey("count", distinct), plan.getEntityTypes(),
+                () -> prepare(entityManager, distinct).get(),
+                () -> executeAsync.apply(asyncEntityManager -> prepare(asyncEntityManager, distinct)));
     }
 
     /**
@@ -165,38 +185,10 @@ class CountQuery<E> {
      *                                      is rolled back
      */
     Long getSingleResult() {
-        final TypedQuery<Long> query = createQuery(true);
-        return query.getSingleResult();
+        return getSingleResult(true);
     }
 
 
-    /**
-     * Bind an argument to a named parameter.
-     *
-     * @param name  parameter name
-     * @param value parameter value
-     * @return this
-     * @throws InvalidQueryException if the parameter has already been defined
-     */
-    CountQuery<E> setParameter(final String name, final Object value) {
-        if (parameters.containsKey(name)) {
-            throw new InvalidQueryException(format("Parameter '%s' has already been set", name));
-        }
-        parameters.put(name, value);
-        return this;
-    }
-
-    /**
-     * Set the bound parameters
-     *
-     * @param parameters the parameters to be bound
-     * @return this
-     */
-    CountQuery<E> setParameters(final Map<String, Object> parameters) {
-        parameters.forEach(this::setParameter);
-        return this;
-    }
-
     /**
      * Get the query parser
      *
@@ -212,8 +204,7 @@ class CountQuery<E> {
      * @return the query parser
      */
     private QueryParser createParser() {
-        final QueryParserContext context = new QueryParserContext(criteriaBuilder, fields, parameters, expressions, valueParsers);
-        return new QueryParser(context);
+        return plan.createParser(criteriaBuilder, criteria, fields, expressions);
     }
 
 }
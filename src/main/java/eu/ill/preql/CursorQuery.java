@@ -0,0 +1,281 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.support.Cursor;
+import eu.ill.preql.support.CursorPage;
+import eu.ill.preql.support.Field;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static eu.ill.preql.support.AttributeMapper.getIdAttribute;
+import static eu.ill.preql.support.AttributeMapper.hasCollectionJoin;
+
+/**
+ * Defines a query that selects a page of root entities after a cursor (keyset pagination), together with
+ * the value of the order field of every row, so that the cursor of the next page is created from the selected rows.
+ * The rows are ordered by the order field, with the null values after the other values in ascending order
+ * (and before them in descending order), and then by the identifier of the root entity
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class CursorQuery<E> {
+    private final EntityManager        entityManager;
+    private final CriteriaBuilder      criteriaBuilder;
+    private final CriteriaQuery<Tuple> criteria;
+    private final Root<E>              root;
+    private final Map<String, Field>   fields;
+    private final QueryPlan<E>         plan;
+    private final List<Predicate>      expressions  = new ArrayList<>();
+    private final QueryParser          parser;
+    private       String               orderName;
+    private       Path<?>              orderPath;
+    private       String               orderDirection = "asc";
+
+    CursorQuery(
+            final QueryPlan<E> plan,
+            final EntityManager entityManager,
+            final CriteriaBuilder criteriaBuilder,
+            final CriteriaQuery<Tuple> criteria,
+            final Root<E> root,
+            final Map<String, Field> fields) {
+        this.plan = plan;
+        this.entityManager = entityManager;
+        this.criteriaBuilder = criteriaBuilder;
+        this.criteria = criteria;
+        this.root = root;
+        this.fields = fields;
+        this.parser = createParser();
+    }
+
+    /**
+     * Create a SELECT query of the root entities (and of the values of the order field) after a cursor
+     * The rows are grouped by the root (and the order field) when a collection has been joined to the query
+     *
+     * @param cursor    the decoded cursor (null for the first page)
+     * @param limit     the maximum number of rows
+     * @param fetchSize the fetch size (0 for the default fetch size)
+     * @return the typed query of the root entities
+     */
+    private TypedQuery<Tuple> createQuery(final Cursor cursor, final int limit, final int fetchSize) {
+        plan.applyExpressions(criteriaBuilder, root, this.expressions);
+        Predicate[] expressions = parser.parse(plan.getParsedQuery());
+        final Path<?> id = root.get(getIdAttribute(root));
+        if (cursor != null) {
+            expressions = Arrays.copyOf(expressions, expressions.length + 1);
+            expressions[expressions.length - 1] = createSeekExpression(cursor, id);
+        }
+
+        criteria.where(expressions);
+        if (orderPath == null) {
+            criteria.multiselect(root);
+            criteria.orderBy(createOrder(id));
+        } else {
+            criteria.multiselect(root, orderPath);
+            criteria.orderBy(createOrder(createNullRank()), createOrder(orderPath), createOrder(id));
+        }
+        if (!hasCollectionJoin(root)) {
+            criteria.groupBy();
+        } else if (orderPath == null) {
+            criteria.groupBy(root);
+        } else {
+            criteria.groupBy(root, orderPath);
+        }
+
+        final QueryEvent event = QueryObservers.start(QueryPhase.TRANSLATE);
+        final TypedQuery<Tuple> query = entityManager.createQuery(criteria);
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        parser.bindParameters(query);
+        FilterQuery.applyFetchSize(query, fetchSize);
+        query.setMaxResults(limit + 1);
+
+        return query;
+    }
+
+    /**
+     * Execute the query and return the page of root entities after a cursor
+     *
+     * @param cursor    the cursor token returned with the previous page (null for the first page)
+     * @param limit     the maximum number of results of the page
+     * @param fetchSize the fetch size (0 for the default fetch size)
+     * @return the page of results
+     * @throws InvalidQueryException if the cursor is invalid or does not correspond to the order of the query
+     */
+    CursorPage<E> getPage(final String cursor, final int limit, final int fetchSize) {
+        final TypedQuery<Tuple> query = createQuery(cursor == null ? null : Cursor.decode(cursor), limit, fetchSize);
+
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final List<Tuple> rows = query.getResultList();
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, rows.size());
+
+        final int     size    = Math.min(rows.size(), limit);
+        final List<E> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(rows.get(i).get(0, root.getJavaType()));
+        }
+        if (rows.size() <= limit) {
+            return new CursorPage<>(results, null);
+        }
+
+        final Path<?>        id     = root.get(getIdAttribute(root));
+        final Object         lastId = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(results.get(size - 1));
+        final List<Object>   values = new ArrayList<>();
+        final List<Class<?>> types  = new ArrayList<>();
+        if (orderPath != null) {
+            values.add(rows.get(size - 1).get(1));
+            types.add(orderPath.getJavaType());
+        }
+        values.add(lastId);
+        types.add(id.getJavaType());
+        return new CursorPage<>(results, Cursor.of(getOrder(), values, types).encode());
+    }
+
+    /**
+     * Set the order field
+     * The field has already been validated by the filter query
+     *
+     * @param name      order field name
+     * @param direction the direction (asc or desc)
+     * @return this
+     */
+    CursorQuery<E> setOrder(final String name, final String direction) {
+        this.orderName = name;
+        this.orderPath = fields.get(name).getPath();
+        this.orderDirection = direction;
+        return this;
+    }
+
+    /**
+     * Get the order that a cursor belongs to
+     *
+     * @return the order field and direction, or an empty string when the rows are only ordered by identifier
+     */
+    private String getOrder() {
+        return orderPath == null ? "" : orderName + ":" + orderDirection;
+    }
+
+    /**
+     * Create the expression that restricts the rows to the ones after the row of the cursor
+     * (order, id) &gt; (value, lastId) is expanded to: order &gt; value OR (order = value AND id &gt; lastId),
+     * and the null values of the order field are placed after the other values in ascending order
+     * and before them in descending order
+     *
+     * @param cursor the decoded cursor
+     * @param id     the identifier path of the root entity
+     * @return the seek expression
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate createSeekExpression(final Cursor cursor, final Path<?> id) {
+        final int size = orderPath == null ? 1 : 2;
+        if (!getOrder().equals(cursor.getOrder()) || cursor.size() != size) {
+            throw new InvalidQueryException("Cursor does not correspond to the order of the query");
+        }
+        final Object lastIdValue = cursor.getValue(size - 1, id.getJavaType());
+        if (lastIdValue == null) {
+            throw new InvalidQueryException("Invalid cursor");
+        }
+        final Predicate afterId = after((Expression) id, parser.createValueExpression(id, lastIdValue));
+        if (orderPath == null) {
+            return afterId;
+        }
+        final boolean ascending = "asc".equals(orderDirection);
+        final Object  value     = cursor.getValue(0, orderPath.getJavaType());
+        if (value == null) {
+            final Predicate nullAfterId = criteriaBuilder.and(criteriaBuilder.isNull(orderPath), afterId);
+            return ascending ? nullAfterId : criteriaBuilder.or(criteriaBuilder.isNotNull(orderPath), nullAfterId);
+        }
+        final Expression expression = parser.createValueExpression(orderPath, value);
+        final Predicate afterValue = criteriaBuilder.or(
+                after((Expression) orderPath, expression),
+                criteriaBuilder.and(criteriaBuilder.equal(orderPath, expression), afterId));
+        return ascending ? criteriaBuilder.or(afterValue, criteriaBuilder.isNull(orderPath)) : afterValue;
+    }
+
+    /**
+     * Create a comparison in the direction of the order
+     *
+     * @param path  the path
+     * @param value the value expression
+     * @return the comparison
+     */
+    @SuppressWarnings("unchecked")
+    private Predicate after(final Expression<? extends Comparable> path, final Expression value) {
+        if ("asc".equals(orderDirection)) {
+            return criteriaBuilder.greaterThan(path, (Expression<Comparable>) value);
+        }
+        return criteriaBuilder.lessThan(path, (Expression<Comparable>) value);
+    }
+
+    /**
+     * Create the expression that orders the null values of the order field explicitly,
+     * as the default position of the null values depends on the database
+     *
+     * @return 1 when the value of the order field is null, otherwise 0
+     */
+    private Expression<Integer> createNullRank() {
+        return criteriaBuilder.<Integer>selectCase()
+                .when(criteriaBuilder.isNull(orderPath), 1)
+                .otherwise(0);
+    }
+
+    /**
+     * Create an order on an expression using the direction of the order field
+     *
+     * @param expression the expression
+     * @return the order
+     */
+    private Order createOrder(final Expression<?> expression) {
+        return "asc".equals(orderDirection) ? criteriaBuilder.asc(expression) : criteriaBuilder.desc(expression);
+    }
+
+    /**
+     * Get the query parser
+     *
+     * @return the query parser
+     */
+    QueryParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Create a new parser
+     *
+     * @return the query parser
+     */
+    private QueryParser createParser() {
+        return plan.createParser(criteriaBuilder, criteria, fields, expressions);
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the default executor of the asynchronous queries.
+ * The jar is a multi-release jar: this class is replaced by one that creates virtual threads on Java 21 and later
+ *
+ * @author Jamie Hall
+ */
+final class DefaultExecutor {
+
+    private DefaultExecutor() {
+    }
+
+    /**
+     * Create the default executor: a pool of daemon threads bounded by {@link QueryConcurrency#MAXIMUM_QUERIES}.
+     * The queries submitted while all the threads are busy are queued, and the idle threads are stopped after a minute
+     *
+     * @return the executor
+     */
+    static Executor create() {
+        final AtomicInteger      threads  = new AtomicInteger();
+        final int                maximum  = QueryConcurrency.MAXIMUM_QUERIES;
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maximum, maximum, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "preql-async-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
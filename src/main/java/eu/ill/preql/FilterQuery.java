@@ -15,27 +15,51 @@
  */
 package eu.ill.preql;
 
+import eu.ill.preql.cache.CountCache;
+import eu.ill.preql.cache.QueryCaches;
+import eu.ill.preql.cache.ResultCache;
 import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
 import eu.ill.preql.parser.QueryParser;
-import eu.ill.preql.parser.QueryParserContext;
-import eu.ill.preql.parser.ValueParsers;
+import eu.ill.preql.support.ChunkRelease;
+import eu.ill.preql.support.CountMode;
+import eu.ill.preql.support.CursorPage;
 import eu.ill.preql.support.Field;
 import eu.ill.preql.support.OrderableField;
+import eu.ill.preql.support.Page;
 import eu.ill.preql.support.Pagination;
+import eu.ill.preql.support.WindowCount;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.ParameterExpression;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Flow;
 import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static eu.ill.preql.support.AttributeMapper.getIdAttribute;
+import static eu.ill.preql.support.AttributeMapper.hasCollectionJoin;
 import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
 
 /**
  * Defines a new query
@@ -44,38 +68,104 @@ import static java.lang.String.format;
  * @author Jamie Hall
  */
 public class FilterQuery<E> {
+    /**
+     * The fetch size hints of the persistence providers (a provider ignores the hints that it does not know)
+     */
+    private static final String[] FETCH_SIZE_HINTS = {"org.hibernate.fetchSize", "eclipselink.jdbc.fetch-size"};
+
+    /**
+     * The executor of the asynchronous queries when none has been set (virtual threads on Java 21 and later),
+     * which executes a limited number of queries at the same time
+     */
+    private static final Executor DEFAULT_EXECUTOR = DefaultExecutor.create();
+
+    private static volatile WindowCount windowCount;
+
     private final EntityManager       entityManager;
     private final CriteriaBuilder     criteriaBuilder;
     private final CriteriaQuery<E>    criteria;
     private final Root<E>             root;
     private final Map<String, Field>  fields;
-    private final Map<String, Object> parameters   = new HashMap<>();
-    private final String              query;
+    private final QueryPlan<E>        plan;
     private final List<Predicate>     expressions  = new ArrayList<>();
     private final QueryParser         parser;
     private       Pagination   pagination   = Pagination.DEFAULT;
-    private final ValueParsers valueParsers = new ValueParsers();
+    private       Field        orderField;
+    private       String       orderDirection = "asc";
+
+    private       boolean      twoPhase     = false;
+    private       CountMode    countMode    = CountMode.EXACT;
+    private       int          maxCount     = 10000;
+    private       int          fetchSize    = 0;
+    private       EntityManagerFactory entityManagerFactory;
+    private       Executor     executor;
 
-    private final CountQuery<E> countQuery;
+    private final Supplier<CountQuery<E>>  countQueries;
+    private final Supplier<IdQuery<E>>     idQueries;
+    private final Supplier<WindowQuery<E>> windowQueries;
+    private final Supplier<CursorQuery<E>> cursorQueries;
+    private       CountQuery<E>            countQuery;
+    private       IdQuery<E>               idQuery;
+    private       WindowQuery<E>           windowQuery;
 
+    /**
+     * The count, identifier and window queries that accompany the filter query are created on first use,
+     * each with its own criteria query and root. A cursor query is created for every page of keyset pagination
+     *
+     * @param plan            the plan shared with the accompanying queries
+     * @param entityManager   the entity manager used to execute the query
+     * @param criteriaBuilder the criteria builder
+     * @param criteria        the criteria query
+     * @param root            the root of the criteria query
+     * @param fields          the fields bound to the root
+     * @param countQueries    creates the count query
+     * @param idQueries       creates the identifier query
+     * @param windowQueries   creates the window query
+     * @param cursorQueries   creates the cursor queries
+     */
     public FilterQuery(
-            final String query,
+            final QueryPlan<E> plan,
             final EntityManager entityManager,
             final CriteriaBuilder criteriaBuilder,
             final CriteriaQuery<E> criteria,
             final Root<E> root,
             final Map<String, Field> fields,
-            final CountQuery<E> countQuery) {
-        this.query = query;
+            final Supplier<CountQuery<E>> countQueries,
+            final Supplier<IdQuery<E>> idQueries,
+            final Supplier<WindowQuery<E>> windowQueries,
+            final Supplier<CursorQuery<E>> cursorQueries) {
+        this.plan = plan;
         this.entityManager = entityManager;
         this.criteriaBuilder = criteriaBuilder;
         this.criteria = criteria;
         this.root = root;
         this.fields = fields;
-        this.countQuery = countQuery;
+        this.countQueries = countQueries;
+        this.idQueries = idQueries;
+        this.windowQueries = windowQueries;
+        this.cursorQueries = cursorQueries;
         this.parser = createParser();
     }
 
+    /**
+     * Get the window count used by the {@link CountMode#WINDOW} count mode
+     *
+     * @return the window count or null if it has not been set
+     */
+    public static WindowCount getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * Set the window count used by the {@link CountMode#WINDOW} count mode.
+     * JPA does not define window functions so the window count is created with the persistence provider
+     *
+     * @param windowCount the window count (null to always fall back to a separate count query)
+     */
+    public static void setWindowCount(final WindowCount windowCount) {
+        FilterQuery.windowCount = windowCount;
+    }
+
     /**
      * Get an order field for a given name
      *
@@ -124,6 +214,88 @@ public class FilterQuery<E> {
         this.pagination = new Pagination(limit, offset);
     }
 
+    /**
+     * Execute the SELECT queries in two phases.
+     * The first phase selects the ordered and paginated identifiers of the root entities that match the query
+     * and the second phase loads the entities of these identifiers, keeping the same order.
+     * The pagination is then applied to the root entities, whatever the collections joined by the query
+     *
+     * @param twoPhase true to execute the queries in two phases
+     * @return this
+     */
+    public FilterQuery<E> setTwoPhase(final boolean twoPhase) {
+        this.twoPhase = twoPhase;
+        return this;
+    }
+
+    /**
+     * Set how the total of a page is counted when it cannot be derived from the page (see {@link #getPage()})
+     *
+     * @param countMode the count mode
+     * @return this
+     */
+    public FilterQuery<E> setCountMode(final CountMode countMode) {
+        this.countMode = requireNonNull(countMode, "Count mode cannot be null");
+        return this;
+    }
+
+    /**
+     * Set the number of results at which the {@link CountMode#CAPPED} count stops (10000 by default)
+     *
+     * @param maxCount the maximum count
+     * @return this
+     * @throws InvalidQueryException if the maximum count is out of range
+     */
+    public FilterQuery<E> setMaxCount(final int maxCount) {
+        if (maxCount < 1 || maxCount == Integer.MAX_VALUE) {
+            throw new InvalidQueryException(format("Maximum count must be between 1 and %d", Integer.MAX_VALUE - 1));
+        }
+        this.maxCount = maxCount;
+        return this;
+    }
+
+    /**
+     * Set the number of rows fetched from the database in each round trip by the JDBC driver of the SELECT queries.
+     * By default the fetch size of the driver is used
+     *
+     * @param fetchSize the fetch size
+     * @return this
+     * @throws InvalidQueryException if the fetch size is not positive
+     */
+    public FilterQuery<E> setFetchSize(final int fetchSize) {
+        if (fetchSize < 1) {
+            throw new InvalidQueryException("Fetch size must be a positive value");
+        }
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Set the factory of the entity managers of the asynchronous queries
+     * By default the factory of the entity manager of the query is used
+     *
+     * @param entityManagerFactory the entity manager factory (of the same persistence unit as the query)
+     * @return this
+     */
+    public FilterQuery<E> setEntityManagerFactory(final EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+        return this;
+    }
+
+    /**
+     * Set the executor of the asynchronous queries
+     * By default the queries are executed by virtual threads on Java 21 and later, and otherwise by a pool of daemon threads.
+     * In both cases at most as many queries as processors are executed at the same time, as each query holds
+     * an entity manager and a connection
+     *
+     * @param executor the executor (null for the default executor)
+     * @return this
+     */
+    public FilterQuery<E> setExecutor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     /**
      * Add a predefined expression to the query
      * These expressions are added to the final query before being executed
@@ -132,44 +304,94 @@ public class FilterQuery<E> {
      * @return this
      */
     public FilterQuery<E> addExpression(final BiFunction<CriteriaBuilder, Root<E>, Predicate> callback) {
-        this.countQuery.addExpression(callback);
-
-        final Predicate expression = callback.apply(criteriaBuilder, root);
-        expressions.add(expression);
+        plan.addExpression(callback);
+        plan.applyExpressions(criteriaBuilder, root, expressions);
         return this;
     }
 
     /**
      * Create a SELECT query
-     * @param distinct  distinct rows or not
+     * The rows are only grouped by the root when a collection has been joined to the query
+     * @param entityManager the entity manager that executes the query
+     * @param distinct      distinct rows or not
+     * @param pagination    the pagination
      * @return the typed query of <E>
      */
-    private TypedQuery<E> createQuery(boolean distinct) {
-        final Predicate[] expressions = parser.parse(query);
+    TypedQuery<E> createQuery(final EntityManager entityManager, boolean distinct, final Pagination pagination) {
+        final TypedQuery<E> query = createQuery(entityManager, distinct, parser.parse(plan.getParsedQuery()));
+
+        query.setMaxResults(pagination.getLimit());
+        query.setFirstResult(pagination.getOffset());
+
+        return query;
+    }
 
+    /**
+     * Create a SELECT query restricted by the given expressions
+     * @param entityManager the entity manager that executes the query
+     * @param distinct      distinct rows or not
+     * @param expressions   the parsed expressions
+     * @return the typed query of <E>
+     */
+    private TypedQuery<E> createQuery(final EntityManager entityManager, boolean distinct, final Predicate[] expressions) {
         criteria.where(expressions);
-        if (distinct) {
+        if (distinct && hasCollectionJoin(root)) {
             criteria.groupBy(root);
+        } else {
+            criteria.groupBy();
         }
+        final QueryEvent event = QueryObservers.start(QueryPhase.TRANSLATE);
         final TypedQuery<E> query = entityManager.createQuery(criteria);
-
-        query.setMaxResults(pagination.getLimit());
-        query.setFirstResult(pagination.getOffset());
-
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        parser.bindParameters(query);
+        applyFetchSize(query, fetchSize);
         return query;
     }
 
+    /**
+     * Apply the fetch size to a SELECT query
+     *
+     * @param query     the query
+     * @param fetchSize the fetch size (0 for the default fetch size)
+     */
+    static void applyFetchSize(final TypedQuery<?> query, final int fetchSize) {
+        if (fetchSize > 0) {
+            for (final String hint : FETCH_SIZE_HINTS) {
+                query.setHint(hint, fetchSize);
+            }
+        }
+    }
+
     public Long count() {
-        return this.countQuery.getSingleResult(true);
+        return count(true);
     }
 
+    /**
+     * Count the results of the query
+     * The count of a query without predefined expressions is cached by the count cache when it has been set
+     * (see {@link QueryCaches#setCountCache(CountCache)}), otherwise by the result cache when it has been set
+     * (see {@link QueryCaches#setResultCache(ResultCache)}). The stale counts are refreshed with the executor
+     * and the entity manager factory of the asynchronous queries
+     *
+     * @param distinct counts distinct results
+     * @return the number of results
+     */
     public Long count(boolean distinct) {
-        return this.countQuery.getSingleResult(distinct);
+        final ResultCache cache = QueryCaches.getResultCache();
+        if (QueryCaches.getCountCache() != null || cache == null || !plan.isCacheable()) {
+            return getCountQuery().getSingleResult(distinct, this::executeAsync);
+        }
+        return cache.get(plan.createCacheKey("count", distinct), plan.getEntityTypes(),
+                () -> getCountQuery().prepare(entityManager, distinct).get());
     }
 
     /**
      * Execute a SELECT query and return the query results
      * as a typed List.
+     * When a result cache has been set (see {@link QueryCaches#setResultCache(ResultCache)}), the ordered identifiers
+     * of the results of a query without predefined expressions are cached, and the identical queries load the entities
+     * of these identifiers with their own entity manager. The query itself is only prepared when its result is not cached
+     *
      * @param distinct  distinct rows or not
      * @return a list of the results
      * @throws IllegalStateException        if called for a Java
@@ -190,8 +412,86 @@ public class FilterQuery<E> {
      *                                      is rolled back
      */
     public List<E> getResultList(boolean distinct) {
-        final TypedQuery<E> query = createQuery(distinct);
-        return query.getResultList();
+        final ResultCache cache = QueryCaches.getResultCache();
+        if (cache == null || !plan.isCacheable()) {
+            return getResultList(distinct, pagination);
+        }
+        final String                   order  = orderField == null ? null : orderField.getName() + " " + orderDirection;
+        final AtomicReference<List<E>> loaded = new AtomicReference<>();
+        final List<Object> ids = cache.get(plan.createCacheKey("list", distinct, twoPhase, order, pagination.getLimit(), pagination.getOffset()),
+                plan.getEntityTypes(), () -> {
+                    final List<E> entities = prepareResultList(entityManager, distinct, pagination).get();
+                    loaded.set(entities);
+                    return unmodifiableList(getIdentifiers(entities));
+                });
+        if (loaded.get() != null) {
+            return loaded.get();
+        }
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final List<E> entities = getResultListByIds(entityManager, ids);
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, entities.size());
+        return entities;
+    }
+
+    /**
+     * Get the identifiers of entities
+     *
+     * @param entities the entities
+     * @return the identifiers in the order of the entities
+     */
+    private List<Object> getIdentifiers(final List<E> entities) {
+        final PersistenceUnitUtil util = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        final List<Object>        ids  = new ArrayList<>(entities.size());
+        for (final E entity : entities) {
+            ids.add(util.getIdentifier(entity));
+        }
+        return ids;
+    }
+
+    /**
+     * Execute a SELECT query with the given pagination
+     *
+     * @param distinct   distinct rows or not
+     * @param pagination the pagination
+     * @return a list of the results
+     */
+    List<E> getResultList(final boolean distinct, final Pagination pagination) {
+        return prepareResultList(entityManager, distinct, pagination).get();
+    }
+
+    /**
+     * Prepare a SELECT query with the given pagination on an entity manager
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param distinct      distinct rows or not
+     * @param pagination    the pagination
+     * @return the supplier of the results
+     */
+    private Supplier<List<E>> prepareResultList(final EntityManager entityManager, final boolean distinct, final Pagination pagination) {
+        if (twoPhase) {
+            final Supplier<List<Object>> ids = getIdQuery().prepareResultList(entityManager, pagination);
+            return () -> {
+                final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+                final List<E> results = getResultListByIds(entityManager, ids.get());
+                QueryObservers.complete(event, plan.getParsedQuery(), criteria, results.size());
+                return results;
+            };
+        }
+        final TypedQuery<E> query = createQuery(entityManager, distinct, pagination);
+        return () -> getResultList(query);
+    }
+
+    /**
+     * Execute a SELECT query created by this filter query
+     *
+     * @param query the typed query
+     * @return a list of the results
+     */
+    List<E> getResultList(final TypedQuery<E> query) {
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final List<E> results = query.getResultList();
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, results.size());
+        return results;
     }
 
     /**
@@ -220,6 +520,273 @@ public class FilterQuery<E> {
         return getResultList(true);
     }
 
+    /**
+     * Execute the SELECT query and return the page of results with the total number of results.
+     * One more row than the limit is fetched to know if there is a next page. The total is derived from the page,
+     * without executing a count query, when the page is the last one and is not empty or starts at the first result.
+     * Otherwise the total is counted according to the count mode of the query (see {@link #setCountMode(CountMode)}).
+     * With the {@link CountMode#WINDOW} count mode, the page and its total are selected in one statement
+     * when the window count is supported, and the page is otherwise counted exactly
+     *
+     * @return the page of results
+     */
+    public Page<E> getPage() {
+        final WindowCount current = windowCount;
+        if (countMode == CountMode.WINDOW && isWindowCountSupported(current)) {
+            return prepareWindowPage(entityManager, current, this::count).get();
+        }
+        return createPage(getResultList(true, getPagePagination()), this::count, () -> getIdQuery().count(maxCount + 1));
+    }
+
+    /**
+     * Execute the SELECT query and the count query concurrently, each with its own entity manager
+     * created by the entity manager factory of the query (see {@link #setEntityManagerFactory(EntityManagerFactory)})
+     * and executed by the executor of the query (see {@link #setExecutor(Executor)}), and return the page of results
+     * with the total number of results (see {@link #getPage()}).
+     * The queries are created on the calling thread and the query must not be modified until the page is completed.
+     * The results are detached as the entity managers are closed once the queries have been executed
+     *
+     * @return the future page of results
+     * @throws InvalidQueryException if the query is invalid
+     */
+    public CompletableFuture<Page<E>> getPageAsync() {
+        final WindowCount current = windowCount;
+        if (countMode == CountMode.WINDOW && isWindowCountSupported(current)) {
+            return executeAsync(entityManager -> prepareWindowPage(entityManager, current, getCountQuery().prepare(entityManager, true)));
+        }
+        final Pagination pagination = getPagePagination();
+        if (twoPhase && countMode == CountMode.CAPPED) {
+            // the identifier query is shared by the select and the capped count so they are executed one after the other
+            final IdQuery<E> idQuery = getIdQuery();
+            return executeAsync(entityManager -> {
+                final Supplier<List<E>> results = prepareResultList(entityManager, true, pagination);
+                return () -> createPage(results.get(), null, () -> idQuery.prepareCount(entityManager, maxCount + 1).get());
+            });
+        }
+        final CompletableFuture<List<E>> results = executeAsync(entityManager -> prepareResultList(entityManager, true, pagination));
+        final CompletableFuture<Long>    total;
+        switch (countMode) {
+            case NONE:
+                total = CompletableFuture.completedFuture(null);
+                break;
+            case CAPPED:
+                total = executeAsync(entityManager -> getIdQuery().prepareCount(entityManager, maxCount + 1));
+                break;
+            default:
+                total = executeAsync(entityManager -> getCountQuery().prepare(entityManager, true));
+        }
+        return results.thenCombine(total, (fetched, count) -> createPage(fetched, () -> count, () -> count));
+    }
+
+    /**
+     * Execute the SELECT query with its own entity manager and return the query results (see {@link #getPageAsync()})
+     *
+     * @return the future list of the results
+     * @throws InvalidQueryException if the query is invalid
+     */
+    public CompletableFuture<List<E>> getResultListAsync() {
+        return executeAsync(entityManager -> prepareResultList(entityManager, true, pagination));
+    }
+
+    /**
+     * Execute the count query with its own entity manager and return the number of results (see {@link #getPageAsync()})
+     *
+     * @return the future number of results
+     * @throws InvalidQueryException if the query is invalid
+     */
+    public CompletableFuture<Long> countAsync() {
+        return executeAsync(entityManager -> getCountQuery().prepare(entityManager, true));
+    }
+
+    /**
+     * Get the pagination of the SELECT query of a page: one more row than the limit is fetched to know if there is a next page
+     *
+     * @return the pagination
+     */
+    private Pagination getPagePagination() {
+        if (pagination.getLimit() < Pagination.NO_ROW_LIMIT) {
+            return new Pagination(pagination.getLimit() + 1, pagination.getOffset());
+        }
+        return pagination;
+    }
+
+    /**
+     * Create a page from the results fetched with the pagination of a page, counting the total when it cannot be derived
+     *
+     * @param fetched     the fetched results
+     * @param count       the supplier of the exact count
+     * @param cappedCount the supplier of the count capped to one more than the maximum count
+     * @return the page
+     */
+    private Page<E> createPage(final List<E> fetched, final Supplier<Long> count, final Supplier<Long> cappedCount) {
+        final int     limit   = pagination.getLimit();
+        final int     offset  = pagination.getOffset();
+        final List<E> results = new ArrayList<>(fetched);
+        final boolean hasNext = results.size() > limit;
+        if (hasNext) {
+            results.subList(limit, results.size()).clear();
+        }
+        final long fetchedCount = (long) offset + results.size();
+        if (!hasNext && (offset == 0 || !results.isEmpty())) {
+            return new Page<>(results, fetchedCount, true, false);
+        }
+        switch (countMode) {
+            case NONE:
+                return new Page<>(results, null, false, hasNext);
+            case CAPPED:
+                final long counted = cappedCount.get();
+                if (counted <= maxCount) {
+                    return new Page<>(results, counted, true, hasNext);
+                }
+                return new Page<>(results, Math.max(maxCount, hasNext ? fetchedCount + 1 : fetchedCount), false, hasNext);
+            default:
+                return new Page<>(results, count.get(), true, hasNext);
+        }
+    }
+
+    /**
+     * Prepare the page and its total selected in one statement on an entity manager.
+     * A page past the last result has no rows to carry the total, which is then counted separately
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param windowCount   the window count
+     * @param count         the supplier of the exact count
+     * @return the supplier of the page
+     */
+    private Supplier<Page<E>> prepareWindowPage(final EntityManager entityManager, final WindowCount windowCount, final Supplier<Long> count) {
+        final Supplier<Page<E>> page = getWindowQuery().preparePage(entityManager, windowCount, pagination);
+        return () -> {
+            final Page<E> results = page.get();
+            if (results != null) {
+                return results;
+            }
+            return new Page<>(new ArrayList<>(), pagination.getOffset() == 0 ? 0L : count.get(), true, false);
+        };
+    }
+
+    /**
+     * Prepare queries on a new entity manager and execute them asynchronously.
+     * The queries are prepared in two steps: they are created on the calling thread, so that an invalid query fails
+     * immediately and the criteria of this query are not shared with another thread, and the returned supplier
+     * executes them on a thread of the executor. All the {@code prepare} methods of the queries follow this split.
+     * The entity manager is closed once the queries have been executed
+     *
+     * @param prepare creates the queries on the entity manager and returns the supplier that executes them
+     * @param <T>     the type of the result
+     * @return the future result
+     */
+    private <T> CompletableFuture<T> executeAsync(final Function<EntityManager, Supplier<T>> prepare) {
+        final EntityManager entityManager = createEntityManager();
+        try {
+            final Supplier<T> execution = prepare.apply(entityManager);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return execution.get();
+                } finally {
+                    entityManager.close();
+                }
+            }, getAsyncExecutor());
+        } catch (RuntimeException exception) {
+            entityManager.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Create an entity manager for the asynchronous queries
+     *
+     * @return a new entity manager
+     */
+    EntityManager createEntityManager() {
+        final EntityManagerFactory factory = entityManagerFactory == null ? entityManager.getEntityManagerFactory() : entityManagerFactory;
+        return factory.createEntityManager();
+    }
+
+    /**
+     * Get the executor of the asynchronous queries
+     *
+     * @return the executor
+     */
+    Executor getAsyncExecutor() {
+        return executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
+    /**
+     * Check if the page and its total can be selected in one statement with a window function:
+     * a window count must be set, be supported by the database and the query must be executed in one phase
+     *
+     * @return true if the window count is supported
+     */
+    public boolean isWindowCountSupported() {
+        return isWindowCountSupported(windowCount);
+    }
+
+    /**
+     * Check if the page and its total can be selected in one statement with the given window count
+     *
+     * @param windowCount the window count (can be null)
+     * @return true if the window count is supported
+     */
+    private boolean isWindowCountSupported(final WindowCount windowCount) {
+        return windowCount != null && !twoPhase && windowCount.isSupported(entityManager);
+    }
+
+    /**
+     * Execute the second phase of the SELECT queries: the entities of the paginated identifiers
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param ids           the paginated identifiers
+     * @return a list of the results, in the order of the identifiers
+     */
+    @SuppressWarnings("rawtypes")
+    private List<E> getResultListByIds(final EntityManager entityManager, final List<Object> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final ParameterExpression<Collection> parameter = criteriaBuilder.parameter(Collection.class);
+        criteria.where(root.get(getIdAttribute(root)).in(parameter));
+        criteria.groupBy();
+
+        final PersistenceUnitUtil util     = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        final Map<Object, E>      entities = new HashMap<>();
+        final TypedQuery<E> query = entityManager.createQuery(criteria).setParameter(parameter, ids);
+        applyFetchSize(query, fetchSize);
+        for (final E entity : query.getResultList()) {
+            entities.put(util.getIdentifier(entity), entity);
+        }
+        final List<E> results = new ArrayList<>(ids.size());
+        for (final Object id : ids) {
+            final E entity = entities.get(id);
+            if (entity != null) {
+                results.add(entity);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Execute a SELECT query and return a page of results using keyset pagination.
+     * The rows are ordered by the order field and then by the identifier of the root entity, and the
+     * page starts after the row of the given cursor rather than at an offset, so every page costs the same
+     * as the first one. The null values of the order field are placed after the other values in ascending order
+     * and before them in descending order. The pagination of the query is ignored.
+     *
+     * @param cursor the cursor token returned with the previous page (null for the first page)
+     * @param limit  the maximum number of results of the page
+     * @return the page of results
+     * @throws InvalidQueryException if the cursor is invalid or does not correspond to the order of the query
+     */
+    public CursorPage<E> getCursorPage(final String cursor, final int limit) {
+        if (limit < 1) {
+            throw new InvalidQueryException("Limit must be a positive value");
+        }
+        final CursorQuery<E> query = cursorQueries.get();
+        if (orderField != null) {
+            query.setOrder(orderField.getName(), orderDirection);
+        }
+        return query.getPage(cursor, limit, fetchSize);
+    }
+
     /**
      * Execute a SELECT query and return the query results
      * as a typed <code>java.util.stream.Stream</code>.
@@ -245,8 +812,14 @@ public class FilterQuery<E> {
      *                                      is rolled back
      */
     public Stream<E> getResultStream(boolean distinct) {
-        final TypedQuery<E> query = createQuery(distinct);
-        return query.getResultStream();
+        if (twoPhase) {
+            return getResultList(distinct).stream();
+        }
+        final TypedQuery<E> query = createQuery(entityManager, distinct, pagination);
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final Stream<E> results = query.getResultStream();
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        return results;
     }
 
     /**
@@ -277,6 +850,65 @@ public class FilterQuery<E> {
         return getResultStream(true);
     }
 
+    /**
+     * Execute the SELECT query one chunk of results at a time and return the results as a stream.
+     * The chunks are fetched with keyset pagination (see {@link #getCursorPage(String, int)}), or with an offset when
+     * the query is executed in two phases, and a chunk is only fetched once the previous one has been consumed.
+     * The entities of a consumed chunk are then released from the persistence context of the entity manager,
+     * so that the memory used does not depend on the number of results. The pagination of the query is ignored.
+     * The entities of the last chunk are released when the stream is closed
+     *
+     * @param chunkSize the number of results of a chunk
+     * @param release   how the entities of a consumed chunk are released
+     * @return a stream of the results
+     * @throws InvalidQueryException if the chunk size is not positive
+     */
+    public Stream<E> getChunkedResultStream(final int chunkSize, final ChunkRelease release) {
+        if (chunkSize < 1) {
+            throw new InvalidQueryException("Chunk size must be a positive value");
+        }
+        requireNonNull(release, "Chunk release cannot be null");
+        final ChunkIterator<E> iterator = new ChunkIterator<>(this, entityManager, chunkSize, !twoPhase, release);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Execute the SELECT query one chunk of results at a time, clearing the persistence context after each consumed chunk
+     * (see {@link #getChunkedResultStream(int, ChunkRelease)} and {@link ChunkRelease#CLEAR}).
+     * The entities loaded by the entity manager before the stream are detached. The pending changes are flushed first
+     * when the entity manager is joined to a transaction; outside a transaction the changes that have not been flushed are lost
+     *
+     * @param chunkSize the number of results of a chunk
+     * @return a stream of the results
+     * @throws InvalidQueryException if the chunk size is not positive
+     */
+    public Stream<E> getChunkedResultStream(final int chunkSize) {
+        return getChunkedResultStream(chunkSize, ChunkRelease.CLEAR);
+    }
+
+    /**
+     * Publish the results of the SELECT query to reactive subscribers.
+     * The results are fetched in batches driven by the demand of the subscriber: a batch never fetches more rows
+     * than the subscriber has requested and than the batch size, so no row is read before it has been requested.
+     * Each subscription executes its own query, with its own entity manager (see {@link #setEntityManagerFactory(EntityManagerFactory)}),
+     * starting at the offset and stopping at the limit of the pagination of the query. The batches are fetched
+     * and published by the executor of the query (see {@link #setExecutor(Executor)}), one after the other.
+     * The entity manager is cleared after each batch, so the published results are detached, and it is closed
+     * as soon as the subscription completes, fails or is cancelled.
+     * The query is executed in one phase and must not be modified while it is subscribed to
+     *
+     * @param batchSize the maximum number of rows fetched by a batch
+     * @return the publisher of the results
+     * @throws InvalidQueryException if the batch size is not positive
+     */
+    public Flow.Publisher<E> getResultPublisher(final int batchSize) {
+        if (batchSize < 1) {
+            throw new InvalidQueryException("Batch size must be a positive value");
+        }
+        return new ResultPublisher<>(this, pagination, batchSize);
+    }
+
     /**
      * Execute a SELECT query that returns a single result.
      *
@@ -301,8 +933,11 @@ public class FilterQuery<E> {
      *                                      is rolled back
      */
     public E getSingleResult() {
-        final TypedQuery<E> query = createQuery(false);
-        return query.getSingleResult();
+        final TypedQuery<E> query = createQuery(entityManager, false, pagination);
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final E result = query.getSingleResult();
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, 1);
+        return result;
     }
 
     /**
@@ -314,12 +949,7 @@ public class FilterQuery<E> {
      * @throws InvalidQueryException if the parameter has already been defined
      */
     public FilterQuery<E> setParameter(final String name, final Object value) {
-        this.countQuery.setParameter(name, value);
-
-        if (parameters.containsKey(name)) {
-            throw new InvalidQueryException(format("Parameter '%s' has already been set", name));
-        }
-        parameters.put(name, value);
+        plan.setParameter(name, value);
         return this;
     }
 
@@ -335,6 +965,14 @@ public class FilterQuery<E> {
             throw new InvalidQueryException("Order direction must be asc or desc");
         }
         final Field field = getOrderField(name);
+        this.orderField = field;
+        this.orderDirection = direction;
+        if (idQuery != null) {
+            idQuery.setOrder(name, direction);
+        }
+        if (windowQuery != null) {
+            windowQuery.setOrder(name, direction);
+        }
         if ("asc".equals(direction)) {
             criteria.orderBy(criteriaBuilder.asc(field.getPath()));
         } else {
@@ -363,14 +1001,55 @@ public class FilterQuery<E> {
         return parser;
     }
 
+    /**
+     * Get the count query, created on first use
+     *
+     * @return the count query
+     */
+    private CountQuery<E> getCountQuery() {
+        if (countQuery == null) {
+            countQuery = countQueries.get();
+        }
+        return countQuery;
+    }
+
+    /**
+     * Get the identifier query, created on first use with the order of the filter query
+     *
+     * @return the identifier query
+     */
+    private IdQuery<E> getIdQuery() {
+        if (idQuery == null) {
+            idQuery = idQueries.get();
+            if (orderField != null) {
+                idQuery.setOrder(orderField.getName(), orderDirection);
+            }
+        }
+        return idQuery;
+    }
+
+    /**
+     * Get the window query, created on first use with the order of the filter query
+     *
+     * @return the window query
+     */
+    private WindowQuery<E> getWindowQuery() {
+        if (windowQuery == null) {
+            windowQuery = windowQueries.get();
+            if (orderField != null) {
+                windowQuery.setOrder(orderField.getName(), orderDirection);
+            }
+        }
+        return windowQuery;
+    }
+
     /**
      * Create a new parser
      *
      * @return the query parser
      */
     private QueryParser createParser() {
-        final QueryParserContext context = new QueryParserContext(criteriaBuilder, fields, parameters, expressions, valueParsers);
-        return new QueryParser(context);
+        return plan.createParser(criteriaBuilder, criteria, fields, expressions);
     }
 
 }
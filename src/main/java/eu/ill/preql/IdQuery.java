@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.support.Field;
+import eu.ill.preql.support.Pagination;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static eu.ill.preql.support.AttributeMapper.getIdAttribute;
+import static eu.ill.preql.support.AttributeMapper.hasCollectionJoin;
+
+/**
+ * Defines the first phase of a two phase query: the ordered and paginated identifiers
+ * of the root entities that match the query
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class IdQuery<E> {
+    private final EntityManager         entityManager;
+    private final CriteriaBuilder       criteriaBuilder;
+    private final CriteriaQuery<Object> criteria;
+    private final Root<E>               root;
+    private final Map<String, Field>    fields;
+    private final QueryPlan<E>          plan;
+    private final List<Predicate>       expressions  = new ArrayList<>();
+    private final QueryParser           parser;
+    private       Path<?>               orderPath;
+    private       String                orderDirection = "asc";
+
+    IdQuery(
+            final QueryPlan<E> plan,
+            final EntityManager entityManager,
+            final CriteriaBuilder criteriaBuilder,
+            final CriteriaQuery<Object> criteria,
+            final Root<E> root,
+            final Map<String, Field> fields) {
+        this.plan = plan;
+        this.entityManager = entityManager;
+        this.criteriaBuilder = criteriaBuilder;
+        this.criteria = criteria;
+        this.root = root;
+        this.fields = fields;
+        this.parser = createParser();
+    }
+
+    /**
+     * Create a SELECT query of the identifiers
+     * The identifiers are ordered by the order field and then by the identifier so that the pagination is stable.
+     * The rows are grouped by the identifier (and the order field) when a collection has been joined to the query
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param pagination    the pagination
+     * @param ordered       false if the identifiers do not need to be ordered
+     * @return the typed query of the identifiers
+     */
+    private TypedQuery<Object> createQuery(final EntityManager entityManager, final Pagination pagination, final boolean ordered) {
+        plan.applyExpressions(criteriaBuilder, root, this.expressions);
+        final Predicate[] expressions = parser.parse(plan.getParsedQuery());
+        final Path<?>     id          = root.get(getIdAttribute(root));
+
+        criteria.select(id);
+        criteria.where(expressions);
+        if (!ordered) {
+            criteria.orderBy();
+        } else if (orderPath == null) {
+            criteria.orderBy(criteriaBuilder.asc(id));
+        } else if ("asc".equals(orderDirection)) {
+            criteria.orderBy(criteriaBuilder.asc(orderPath), criteriaBuilder.asc(id));
+        } else {
+            criteria.orderBy(criteriaBuilder.desc(orderPath), criteriaBuilder.desc(id));
+        }
+        if (!hasCollectionJoin(root)) {
+            criteria.groupBy();
+        } else if (orderPath == null || !ordered) {
+            criteria.groupBy(id);
+        } else {
+            criteria.groupBy(id, orderPath);
+        }
+
+        final QueryEvent event = QueryObservers.start(QueryPhase.TRANSLATE);
+        final TypedQuery<Object> query = entityManager.createQuery(criteria);
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        parser.bindParameters(query);
+
+        query.setMaxResults(pagination.getLimit());
+        query.setFirstResult(pagination.getOffset());
+
+        return query;
+    }
+
+    /**
+     * Prepare the query of the identifiers of a page on an entity manager
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param pagination    the pagination
+     * @return the supplier of the ordered identifiers
+     */
+    Supplier<List<Object>> prepareResultList(final EntityManager entityManager, final Pagination pagination) {
+        final TypedQuery<Object> query = createQuery(entityManager, pagination, true);
+        return query::getResultList;
+    }
+
+    /**
+     * Count the identifiers up to a maximum, by fetching at most this number of unordered identifiers
+     *
+     * @param max the maximum count
+     * @return the number of identifiers (at most the maximum)
+     */
+    long count(final int max) {
+        return prepareCount(entityManager, max).get();
+    }
+
+    /**
+     * Prepare the count of the identifiers up to a maximum on an entity manager
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param max           the maximum count
+     * @return the supplier of the number of identifiers (at most the maximum)
+     */
+    Supplier<Long> prepareCount(final EntityManager entityManager, final int max) {
+        final TypedQuery<Object> query = createQuery(entityManager, new Pagination(max, 0), false);
+        return () -> {
+            final QueryEvent event = QueryObservers.start(QueryPhase.COUNT);
+            final long count = query.getResultList().size();
+            QueryObservers.complete(event, plan.getParsedQuery(), criteria, count);
+            return count;
+        };
+    }
+
+    /**
+     * Set the order field
+     * The field has already been validated by the filter query
+     *
+     * @param name      order field name
+     * @param direction the direction (asc or desc)
+     * @return this
+     */
+    IdQuery<E> setOrder(final String name, final String direction) {
+        this.orderPath = fields.get(name).getPath();
+        this.orderDirection = direction;
+        return this;
+    }
+
+    /**
+     * Get the query parser
+     *
+     * @return the query parser
+     */
+    QueryParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Create a new parser
+     *
+     * @return the query parser
+     */
+    private QueryParser createParser() {
+        return plan.createParser(criteriaBuilder, criteria, fields, expressions);
+    }
+
+}
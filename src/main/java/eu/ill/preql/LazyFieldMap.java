@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.support.AttributeMapper;
+import eu.ill.preql.support.Field;
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map of fields that binds the field descriptors to the query root on first access.
+ * The paths (and therefore the joins) of a field are only created when the field is
+ * referenced by the query expression or the order
+ *
+ * @author Jamie Hall
+ */
+class LazyFieldMap extends AbstractMap<String, Field> {
+
+    private final Map<String, FieldDescriptor> descriptors;
+    private final AttributeMapper<?>           mapper;
+    private final Map<String, Field>           bound = new HashMap<>();
+
+    /**
+     * @param descriptors the field descriptors indexed by name
+     * @param mapper      the attribute mapper of the query root
+     */
+    LazyFieldMap(final Map<String, FieldDescriptor> descriptors, final AttributeMapper<?> mapper) {
+        this.descriptors = descriptors;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean containsKey(final Object name) {
+        return descriptors.containsKey(name);
+    }
+
+    @Override
+    public Field get(final Object name) {
+        final Field field = bound.get(name);
+        if (field != null) {
+            return field;
+        }
+        final FieldDescriptor descriptor = descriptors.get(name);
+        if (descriptor == null) {
+            return null;
+        }
+        final Field created = descriptor.bind(mapper);
+        bound.put(descriptor.getName(), created);
+        return created;
+    }
+
+    @Override
+    public int size() {
+        return descriptors.size();
+    }
+
+    /**
+     * Binds all of the remaining fields
+     *
+     * @return the entries of all fields
+     */
+    @Override
+    public Set<Entry<String, Field>> entrySet() {
+        final Set<Entry<String, Field>> entries = new LinkedHashSet<>();
+        for (final String name : descriptors.keySet()) {
+            entries.add(new SimpleImmutableEntry<>(name, get(name)));
+        }
+        return entries;
+    }
+
+    /**
+     * Get the fields that have been bound to the query root
+     *
+     * @return the bound fields indexed by name
+     */
+    Map<String, Field> getBoundFields() {
+        return bound;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.AbstractQueryParser;
+import eu.ill.preql.parser.ValueParsers;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NodeVisitor;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+
+/**
+ * Coerces the parameter values of a parsed query to the types of the attributes of the fields, without lowering
+ * the query to criteria, so that the key of its cached results can be created before any criteria query.
+ * The coerced values are stored with the same keys as the values coerced by the parsers, which reuse them
+ *
+ * @author Jamie Hall
+ */
+final class ParameterCoercer implements NodeVisitor<Void> {
+
+    private final CacheScope          scope;
+    private final Map<String, Object> parameters;
+    private final ValueParsers        valueParsers;
+    private final Map<Object, Object> parsedValues;
+
+    /**
+     * @param scope        the cache scope, which holds the fields and the types of their attributes
+     * @param parameters   the parameter values
+     * @param valueParsers the value parsers
+     * @param parsedValues the coerced values, shared with the parsers of the query
+     */
+    ParameterCoercer(final CacheScope scope,
+                     final Map<String, Object> parameters,
+                     final ValueParsers valueParsers,
+                     final Map<Object, Object> parsedValues) {
+        this.scope = scope;
+        this.parameters = parameters;
+        this.valueParsers = valueParsers;
+        this.parsedValues = parsedValues;
+    }
+
+    @Override
+    public Void visit(final ComparisonNode node) {
+        coerce(node.getField(), node.getParameter());
+        return null;
+    }
+
+    @Override
+    public Void visit(final BetweenNode node) {
+        coerce(node.getField(), node.getLower());
+        coerce(node.getField(), node.getUpper());
+        return null;
+    }
+
+    @Override
+    public Void visit(final InNode node) {
+        final FieldDescriptor field     = getField(node.getField());
+        final Object          parameter = getParameter(node.getParameter());
+        if (!(parameter instanceof List)) {
+            throw new InvalidQueryException(format("Expected a list of parameters for parameter: '%s'", field.getName()));
+        }
+        for (final Object value : (List<?>) parameter) {
+            coerce(field, node.getParameter(), value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(final LikeNode node) {
+        coerce(node.getField(), node.getParameter());
+        return null;
+    }
+
+    @Override
+    public Void visit(final NullNode node) {
+        getField(node.getField());
+        return null;
+    }
+
+    @Override
+    public Void visit(final AndNode node) {
+        return visit(node.getChildren());
+    }
+
+    @Override
+    public Void visit(final OrNode node) {
+        return visit(node.getChildren());
+    }
+
+    /**
+     * Coerce the parameter values of a list of expressions
+     *
+     * @param nodes the nodes
+     * @return null
+     */
+    private Void visit(final List<Node> nodes) {
+        for (final Node node : nodes) {
+            node.accept(this);
+        }
+        return null;
+    }
+
+    /**
+     * Coerce the value of a parameter to the type of the attribute of a field
+     *
+     * @param name      the name of the field
+     * @param parameter the name of the parameter
+     */
+    private void coerce(final String name, final String parameter) {
+        coerce(getField(name), parameter, getParameter(parameter));
+    }
+
+    /**
+     * Coerce a value to the type of the attribute of a field, unless it has already been coerced
+     *
+     * @param field     the field
+     * @param parameter the name of the parameter
+     * @param value     the value
+     */
+    private void coerce(final FieldDescriptor field, final String parameter, final Object value) {
+        final List<Object> key = asList(field.getName(), parameter, value);
+        if (!parsedValues.containsKey(key)) {
+            parsedValues.put(key, AbstractQueryParser.coerceValue(valueParsers, field.getValueParser(),
+                    scope.getType(field.getName()), parameter, value));
+        }
+    }
+
+    /**
+     * Get a field
+     *
+     * @param name the name of the field
+     * @return the field descriptor
+     * @throws InvalidQueryException if the field does not exist
+     */
+    private FieldDescriptor getField(final String name) {
+        final FieldDescriptor field = scope.getField(name);
+        if (field == null) {
+            throw new InvalidQueryException(format("Field %s does not exist", name));
+        }
+        return field;
+    }
+
+    /**
+     * Get the value of a parameter
+     *
+     * @param name the name of the parameter
+     * @return the value
+     * @throws InvalidQueryException if the parameter has not been set
+     */
+    private Object getParameter(final String name) {
+        if (parameters.containsKey(name)) {
+            return parameters.get(name);
+        }
+        throw new InvalidQueryException("Parameter " + name + " not found in the bound parameters");
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+/**
+ * The limit of the default executors of the asynchronous queries, on every Java version
+ * (see {@link DefaultExecutor}). Each asynchronous query holds an entity manager and a JDBC connection
+ * until it completes, so the default executors run at most {@link #MAXIMUM_QUERIES} queries at the same time
+ * and the other queries wait: an unbounded number of queries would drain the connection pool
+ *
+ * @author Jamie Hall
+ */
+final class QueryConcurrency {
+
+    /**
+     * The maximum number of asynchronous queries executed at the same time by the default executor
+     */
+    static final int MAXIMUM_QUERIES = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private QueryConcurrency() {
+    }
+}
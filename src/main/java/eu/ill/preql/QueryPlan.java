@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.AbstractQueryParser;
+import eu.ill.preql.parser.ParsedQuery;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.parser.QueryParserContext;
+import eu.ill.preql.parser.ValueParsers;
+import eu.ill.preql.support.Field;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+
+/**
+ * The state shared by the select, count and identifier queries of a filter query:
+ * the query, which is only parsed once, the bound parameters, the coerced parameter values
+ * and the predefined expressions
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class QueryPlan<E> {
+    private final String                                                 query;
+    private final Map<String, Object>                                    parameters   = new HashMap<>();
+    private final Map<Object, Object>                                    parsedValues = new HashMap<>();
+    private final List<BiFunction<CriteriaBuilder, Root<E>, Predicate>> expressions  = new ArrayList<>();
+    private final ValueParsers                                           valueParsers = new ValueParsers();
+    private final CacheScope                                             cacheScope;
+    private       ParsedQuery                                            parsedQuery;
+
+    /**
+     * @param query the expression query
+     */
+    QueryPlan(final String query) {
+        this(query, null);
+    }
+
+    /**
+     * @param query      the expression query
+     * @param cacheScope the scope of the cached results of the query (null if the results are not cached)
+     */
+    QueryPlan(final String query, final CacheScope cacheScope) {
+        this.query = query;
+        this.cacheScope = cacheScope;
+    }
+
+    /**
+     * Get the parsed query
+     * The query is parsed on first access
+     *
+     * @return the parsed query
+     */
+    ParsedQuery getParsedQuery() {
+        if (parsedQuery == null) {
+            parsedQuery = QueryParser.parseQuery(query);
+        }
+        return parsedQuery;
+    }
+
+    /**
+     * Bind an argument to a named parameter.
+     *
+     * @param name  parameter name
+     * @param value parameter value
+     * @throws InvalidQueryException if the parameter has already been defined
+     */
+    void setParameter(final String name, final Object value) {
+        if (parameters.containsKey(name)) {
+            throw new InvalidQueryException(format("Parameter '%s' has already been set", name));
+        }
+        parameters.put(name, value);
+    }
+
+    /**
+     * Add a predefined expression
+     *
+     * @param callback the expression callback
+     */
+    void addExpression(final BiFunction<CriteriaBuilder, Root<E>, Predicate> callback) {
+        expressions.add(callback);
+    }
+
+    /**
+     * Apply the predefined expressions that have not yet been applied to a query root
+     *
+     * @param criteriaBuilder the criteria builder
+     * @param root            the query root
+     * @param predicates      the predicates already created for the root
+     */
+    void applyExpressions(final CriteriaBuilder criteriaBuilder, final Root<E> root, final List<Predicate> predicates) {
+        for (int i = predicates.size(); i < expressions.size(); i++) {
+            predicates.add(expressions.get(i).apply(criteriaBuilder, root));
+        }
+    }
+
+    /**
+     * Check if the results of the query can be cached: the query has a cache scope and no predefined expression,
+     * because the predefined expressions cannot be compared
+     *
+     * @return true if the results can be cached
+     */
+    boolean isCacheable() {
+        return cacheScope != null && expressions.isEmpty();
+    }
+
+    /**
+     * Create the key of a result of the query: the fields of the provider, the normalized query,
+     * the coerced parameter values and the shape of the result
+     * The parameter values are coerced to the types of the fields without lowering the query,
+     * so a cached result is returned without creating any criteria query
+     *
+     * @param shape the properties of the result (the kind of result, the order, the pagination...)
+     * @return the key
+     * @throws InvalidQueryException if the query is invalid
+     */
+    List<Object> createCacheKey(final Object... shape) {
+        final ParsedQuery parsed = getParsedQuery();
+        if (!parsed.isEmpty()) {
+            AbstractQueryParser.checkMaxExpressions(parsed.getExpression());
+            parsed.getExpression().accept(new ParameterCoercer(cacheScope, parameters, valueParsers, parsedValues));
+        }
+        final Set<List<Object>> values = new HashSet<>();
+        for (final Map.Entry<Object, Object> entry : parsedValues.entrySet()) {
+            final List<?> key = (List<?>) entry.getKey();
+            values.add(asList(key.get(0), key.get(1), entry.getValue()));
+        }
+        return asList(cacheScope.getFields(), parsed.toString(), values, asList(shape));
+    }
+
+    /**
+     * Get the entity types the results of the query depend on
+     *
+     * @return the entity types
+     */
+    Set<Class<?>> getEntityTypes() {
+        return cacheScope.getEntityTypes();
+    }
+
+    /**
+     * Create a parser for a query root
+     *
+     * @param criteriaBuilder the criteria builder
+     * @param criteria        the criteria query
+     * @param fields          the fields bound to the root of the criteria query
+     * @param predicates      the predefined expressions applied to the root
+     * @return the query parser
+     */
+    QueryParser createParser(final CriteriaBuilder criteriaBuilder,
+                             final AbstractQuery<?> criteria,
+                             final Map<String, Field> fields,
+                             final List<Predicate> predicates) {
+        final QueryParserContext context = new QueryParserContext(criteriaBuilder, criteria, fields, parameters, predicates, valueParsers, parsedValues);
+        return new QueryParser(context);
+    }
+}
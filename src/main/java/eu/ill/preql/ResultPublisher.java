@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.support.Pagination;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.util.concurrent.Flow;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes the results of a filter query to reactive subscribers.
+ * Every subscription executes the query with its own entity manager
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class ResultPublisher<E> implements Flow.Publisher<E> {
+
+    private final FilterQuery<E> query;
+    private final Pagination     pagination;
+    private final int            batchSize;
+
+    /**
+     * @param query      the filter query
+     * @param pagination the pagination of the results
+     * @param batchSize  the maximum number of rows fetched by a batch
+     */
+    ResultPublisher(final FilterQuery<E> query, final Pagination pagination, final int batchSize) {
+        this.query = query;
+        this.pagination = pagination;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super E> subscriber) {
+        requireNonNull(subscriber, "Subscriber cannot be null");
+        final EntityManager entityManager;
+        try {
+            entityManager = query.createEntityManager();
+        } catch (RuntimeException exception) {
+            fail(subscriber, exception);
+            return;
+        }
+        final TypedQuery<E> typedQuery;
+        try {
+            typedQuery = query.createQuery(entityManager, true, pagination);
+        } catch (RuntimeException exception) {
+            entityManager.close();
+            fail(subscriber, exception);
+            return;
+        }
+        subscriber.onSubscribe(new ResultSubscription<>(query, subscriber, entityManager, typedQuery,
+                query.getAsyncExecutor(), pagination, batchSize));
+    }
+
+    /**
+     * Signal a subscriber that its subscription could not be created
+     *
+     * @param subscriber the subscriber
+     * @param exception  the cause of the failure
+     */
+    private void fail(final Flow.Subscriber<? super E> subscriber, final RuntimeException exception) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(exception);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.support.Pagination;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The subscription of a subscriber to the results of a filter query.
+ * The results are fetched in batches of at most the requested number of rows. The signals of the subscription
+ * only schedule a drain of the demand on the executor, and a single drain runs at a time, so the batches are
+ * fetched one after the other and a request made by the subscriber while it receives a result does not recurse
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class ResultSubscription<E> implements Flow.Subscription {
+
+    private final FilterQuery<E>             query;
+    private final Flow.Subscriber<? super E> subscriber;
+    private final EntityManager              entityManager;
+    private final TypedQuery<E>              typedQuery;
+    private final Executor                   executor;
+    private final int                        batchSize;
+    private final AtomicLong                 requested = new AtomicLong();
+    private final AtomicInteger              pending   = new AtomicInteger();
+    private volatile boolean                 cancelled;
+    private volatile IllegalArgumentException invalidRequest;
+    private          int                     offset;
+    private          long                    remaining;
+    private          boolean                 done;
+
+    /**
+     * @param query         the filter query
+     * @param subscriber    the subscriber
+     * @param entityManager the entity manager of the subscription
+     * @param typedQuery    the query of the results, created with the entity manager
+     * @param executor      the executor that fetches and publishes the batches
+     * @param pagination    the pagination of the results
+     * @param batchSize     the maximum number of rows fetched by a batch
+     */
+    ResultSubscription(final FilterQuery<E> query,
+                       final Flow.Subscriber<? super E> subscriber,
+                       final EntityManager entityManager,
+                       final TypedQuery<E> typedQuery,
+                       final Executor executor,
+                       final Pagination pagination,
+                       final int batchSize) {
+        this.query = query;
+        this.subscriber = subscriber;
+        this.entityManager = entityManager;
+        this.typedQuery = typedQuery;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.offset = pagination.getOffset();
+        this.remaining = pagination.getLimit() == Pagination.NO_ROW_LIMIT ? Long.MAX_VALUE : pagination.getLimit();
+    }
+
+    @Override
+    public void request(final long n) {
+        if (n <= 0) {
+            invalidRequest = new IllegalArgumentException("The number of requested results must be positive");
+        } else {
+            requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+        }
+        schedule();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        schedule();
+    }
+
+    /**
+     * Schedule a drain of the demand, unless one is already running
+     */
+    private void schedule() {
+        if (pending.getAndIncrement() == 0) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException exception) {
+                done = true;
+                entityManager.close();
+                subscriber.onError(exception);
+            }
+        }
+    }
+
+    /**
+     * Fetch and publish the requested results, until no signal is pending
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            if (!done) {
+                if (cancelled) {
+                    terminate();
+                } else if (invalidRequest != null) {
+                    terminate();
+                    subscriber.onError(invalidRequest);
+                } else {
+                    publish();
+                }
+            }
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Fetch and publish batches while there is a demand
+     * The entity manager is cleared after each batch so that its persistence context does not grow
+     */
+    private void publish() {
+        long demand = requested.get();
+        while (demand > 0 && !cancelled && invalidRequest == null) {
+            final int     size = (int) Math.min(Math.min(batchSize, demand), remaining);
+            final List<E> results;
+            try {
+                typedQuery.setFirstResult(offset);
+                typedQuery.setMaxResults(size);
+                results = query.getResultList(typedQuery);
+                entityManager.clear();
+            } catch (RuntimeException exception) {
+                terminate();
+                subscriber.onError(exception);
+                return;
+            }
+            offset += results.size();
+            remaining -= results.size();
+            try {
+                for (final E result : results) {
+                    if (cancelled) {
+                        return;
+                    }
+                    subscriber.onNext(result);
+                }
+            } catch (RuntimeException exception) {
+                // a subscriber must not throw: the subscription is considered as cancelled
+                terminate();
+                throw exception;
+            }
+            if (results.size() < size || remaining == 0) {
+                terminate();
+                if (!cancelled) {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+            demand = requested.get() == Long.MAX_VALUE ? Long.MAX_VALUE : requested.addAndGet(-results.size());
+        }
+    }
+
+    /**
+     * Terminate the subscription and release the entity manager
+     */
+    private void terminate() {
+        done = true;
+        entityManager.close();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.support.Field;
+import eu.ill.preql.support.Page;
+import eu.ill.preql.support.Pagination;
+import eu.ill.preql.support.WindowCount;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static eu.ill.preql.support.AttributeMapper.hasCollectionJoin;
+
+/**
+ * Defines a query that selects a page of root entities together with the total number of root entities
+ * that match the query, counted by a window function, so that the page and its total come back in one statement
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+class WindowQuery<E> {
+    private final EntityManager        entityManager;
+    private final CriteriaBuilder      criteriaBuilder;
+    private final CriteriaQuery<Tuple> criteria;
+    private final Root<E>              root;
+    private final Map<String, Field>   fields;
+    private final QueryPlan<E>         plan;
+    private final List<Predicate>      expressions  = new ArrayList<>();
+    private final QueryParser          parser;
+    private       Path<?>              orderPath;
+    private       String               orderDirection = "asc";
+
+    WindowQuery(
+            final QueryPlan<E> plan,
+            final EntityManager entityManager,
+            final CriteriaBuilder criteriaBuilder,
+            final CriteriaQuery<Tuple> criteria,
+            final Root<E> root,
+            final Map<String, Field> fields) {
+        this.plan = plan;
+        this.entityManager = entityManager;
+        this.criteriaBuilder = criteriaBuilder;
+        this.criteria = criteria;
+        this.root = root;
+        this.fields = fields;
+        this.parser = createParser();
+    }
+
+    /**
+     * Create a SELECT query of the root entities and of the window count
+     * The rows are grouped by the root when a collection has been joined to the query, and as the window
+     * function is evaluated after the grouping, the root entities are then counted distinctly
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param windowCount   the window count
+     * @param pagination    the pagination
+     * @return the typed query of the root entities and the total
+     */
+    private TypedQuery<Tuple> createQuery(final EntityManager entityManager, final WindowCount windowCount, final Pagination pagination) {
+        plan.applyExpressions(criteriaBuilder, root, this.expressions);
+        final Predicate[] expressions = parser.parse(plan.getParsedQuery());
+
+        criteria.multiselect(root, windowCount.create(criteriaBuilder, root));
+        criteria.where(expressions);
+        if (orderPath == null) {
+            criteria.orderBy();
+        } else if ("asc".equals(orderDirection)) {
+            criteria.orderBy(criteriaBuilder.asc(orderPath));
+        } else {
+            criteria.orderBy(criteriaBuilder.desc(orderPath));
+        }
+        if (hasCollectionJoin(root)) {
+            criteria.groupBy(root);
+        } else {
+            criteria.groupBy();
+        }
+
+        final QueryEvent event = QueryObservers.start(QueryPhase.TRANSLATE);
+        final TypedQuery<Tuple> query = entityManager.createQuery(criteria);
+        QueryObservers.complete(event, plan.getParsedQuery(), criteria, -1);
+        parser.bindParameters(query);
+
+        query.setMaxResults(pagination.getLimit());
+        query.setFirstResult(pagination.getOffset());
+
+        return query;
+    }
+
+    /**
+     * Execute the query and return the page of root entities with their total
+     *
+     * @param windowCount the window count
+     * @param pagination  the pagination
+     * @return the page or null if the page is empty, as the total is then unknown
+     */
+    Page<E> getPage(final WindowCount windowCount, final Pagination pagination) {
+        return preparePage(entityManager, windowCount, pagination).get();
+    }
+
+    /**
+     * Prepare the page on an entity manager
+     *
+     * @param entityManager the entity manager that executes the query
+     * @param windowCount   the window count
+     * @param pagination    the pagination
+     * @return the supplier of the page, which supplies null if the page is empty as the total is then unknown
+     */
+    Supplier<Page<E>> preparePage(final EntityManager entityManager, final WindowCount windowCount, final Pagination pagination) {
+        final TypedQuery<Tuple> query = createQuery(entityManager, windowCount, pagination);
+        return () -> {
+            final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+            final List<Tuple> rows = query.getResultList();
+            QueryObservers.complete(event, plan.getParsedQuery(), criteria, rows.size());
+            if (rows.isEmpty()) {
+                return null;
+            }
+            final List<E> results = new ArrayList<>(rows.size());
+            for (final Tuple row : rows) {
+                results.add(row.get(0, root.getJavaType()));
+            }
+            final long total = rows.get(0).get(1, Number.class).longValue();
+            return new Page<>(results, total, true, (long) pagination.getOffset() + results.size() < total);
+        };
+    }
+
+    /**
+     * Set the order field
+     * The field has already been validated by the filter query
+     *
+     * @param name      order field name
+     * @param direction the direction (asc or desc)
+     * @return this
+     */
+    WindowQuery<E> setOrder(final String name, final String direction) {
+        this.orderPath = fields.get(name).getPath();
+        this.orderDirection = direction;
+        return this;
+    }
+
+    /**
+     * Get the query parser
+     *
+     * @return the query parser
+     */
+    QueryParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Create a new parser
+     *
+     * @return the query parser
+     */
+    private QueryParser createParser() {
+        return plan.createParser(criteriaBuilder, criteria, fields, expressions);
+    }
+
+}
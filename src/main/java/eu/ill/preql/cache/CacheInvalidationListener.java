@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * An entity listener that invalidates the cached results of the queries that depend on the type of an entity
+ * once it has been persisted, updated or removed.
+ * It is registered as a default listener of all the entities of a persistence unit by adding the mapping file
+ * of the library to the persistence unit:
+ * <pre>
+ * &lt;mapping-file&gt;META-INF/preql-orm.xml&lt;/mapping-file&gt;
+ * </pre>
+ * or on the entities with {@code @EntityListeners(CacheInvalidationListener.class)}.
+ * The listener is called when the changes are flushed, before the commit; with Hibernate the results are
+ * invalidated again after the commit by {@link eu.ill.preql.hibernate.CacheInvalidationIntegrator}
+ *
+ * @author Jamie Hall
+ */
+public class CacheInvalidationListener {
+
+    /**
+     * Invalidate the cached results that depend on the type of a persisted entity
+     *
+     * @param entity the entity
+     */
+    @PostPersist
+    public void postPersist(final Object entity) {
+        invalidate(entity);
+    }
+
+    /**
+     * Invalidate the cached results that depend on the type of an updated entity
+     *
+     * @param entity the entity
+     */
+    @PostUpdate
+    public void postUpdate(final Object entity) {
+        invalidate(entity);
+    }
+
+    /**
+     * Invalidate the cached results that depend on the type of a removed entity
+     *
+     * @param entity the entity
+     */
+    @PostRemove
+    public void postRemove(final Object entity) {
+        invalidate(entity);
+    }
+
+    /**
+     * Invalidate the cached results that depend on the type of an entity
+     * Some persistence providers only register a callback method for one lifecycle event, so every event has its own method
+     *
+     * @param entity the entity that has been persisted, updated or removed
+     */
+    private void invalidate(final Object entity) {
+        QueryCaches.invalidate(entity.getClass());
+    }
+}
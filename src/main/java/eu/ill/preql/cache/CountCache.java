@@ -0,0 +1,423 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least recently used cache of the counts of the filter queries.
+ * A count is fresh for a time to live, then stale for a stale time: a stale count is returned while it is refreshed
+ * asynchronously, and a count that is older is loaded again before it is returned. The identical counts are only loaded
+ * or refreshed once at a time, the concurrent requests wait for the count that is being loaded.
+ * When an entity of a type the query depends on changes, the count becomes stale (see {@link CacheInvalidationListener}).
+ * It is safe for use by multiple threads
+ *
+ * @author Jamie Hall
+ */
+public final class CountCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CountCache.class);
+
+    private final int                                     maxSize;
+    private final long                                    timeToLive;
+    private final long                                    staleTime;
+    private final LongSupplier                            ticker;
+    private final LinkedHashMap<Object, Entry>            counts        = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Object, CompletableFuture<Long>>    loads         = new ConcurrentHashMap<>();
+    private final AtomicLong                              hits          = new AtomicLong();
+    private final AtomicLong                              staleHits     = new AtomicLong();
+    private final AtomicLong                              misses        = new AtomicLong();
+    private final AtomicLong                              refreshes     = new AtomicLong();
+    private final AtomicLong                              evictions     = new AtomicLong();
+    private final AtomicLong                              invalidations = new AtomicLong();
+    private       long                                    version;
+
+    /**
+     * @param maxSize    the maximum number of counts
+     * @param timeToLive the time during which a count is fresh
+     * @param staleTime  the time during which a count that is no longer fresh is returned while it is refreshed
+     *                   (zero to always load the counts that are no longer fresh)
+     * @throws IllegalArgumentException if an argument is not valid
+     */
+    public CountCache(final int maxSize, final Duration timeToLive, final Duration staleTime) {
+        this(maxSize, timeToLive, staleTime, System::nanoTime);
+    }
+
+    /**
+     * @param maxSize    the maximum number of counts
+     * @param timeToLive the time during which a count is fresh
+     * @param staleTime  the time during which a count that is no longer fresh is returned while it is refreshed
+     * @param ticker     the source of the time in nanoseconds
+     * @throws IllegalArgumentException if an argument is not valid
+     */
+    CountCache(final int maxSize, final Duration timeToLive, final Duration staleTime, final LongSupplier ticker) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be a positive duration");
+        }
+        if (staleTime == null || staleTime.isNegative()) {
+            throw new IllegalArgumentException("Stale time cannot be negative");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive.toNanos();
+        this.staleTime = staleTime.toNanos();
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the count for a given key
+     * A fresh count is returned as it is. A stale count is returned and refreshed in the background, unless it is already
+     * being refreshed. Otherwise the count is loaded on the calling thread, or the count that is already being loaded is awaited
+     *
+     * @param key         the key of the query
+     * @param entityTypes the entity types the query depends on
+     * @param loader      the function used to load the count on the calling thread
+     * @param refresher   the function used to start the refresh of the count in the background
+     * @return the count
+     */
+    public Long get(final Object key, final Set<Class<?>> entityTypes, final Supplier<Long> loader,
+                    final Supplier<CompletableFuture<Long>> refresher) {
+        final Entry entry;
+        synchronized (counts) {
+            entry = counts.get(key);
+        }
+        if (entry != null) {
+            final long age = ticker.getAsLong() - entry.created;
+            if (age < timeToLive) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (age < timeToLive + staleTime) {
+                staleHits.incrementAndGet();
+                refresh(key, entityTypes, refresher);
+                return entry.value;
+            }
+        }
+        misses.incrementAndGet();
+        return load(key, entityTypes, loader);
+    }
+
+    /**
+     * Load a count on the calling thread, or wait for the count that is already being loaded
+     *
+     * @param key         the key of the query
+     * @param entityTypes the entity types the query depends on
+     * @param loader      the function used to load the count
+     * @return the count
+     */
+    private Long load(final Object key, final Set<Class<?>> entityTypes, final Supplier<Long> loader) {
+        final CompletableFuture<Long> future  = new CompletableFuture<>();
+        final CompletableFuture<Long> current = loads.putIfAbsent(key, future);
+        if (current != null) {
+            return await(current);
+        }
+        try {
+            final Long loaded = getFreshCount(key);
+            if (loaded != null) {
+                future.complete(loaded);
+                return loaded;
+            }
+            final long loadVersion = getVersion();
+            final Long count       = loader.get();
+            put(key, new Entry(count, entityTypes, ticker.getAsLong()), loadVersion);
+            future.complete(count);
+            return count;
+        } catch (RuntimeException exception) {
+            future.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            loads.remove(key, future);
+        }
+    }
+
+    /**
+     * Get a fresh count, for example a count that has just been loaded by another request
+     *
+     * @param key the key of the query
+     * @return the count or null if there is no fresh count
+     */
+    private Long getFreshCount(final Object key) {
+        synchronized (counts) {
+            final Entry entry = counts.get(key);
+            return entry != null && ticker.getAsLong() - entry.created < timeToLive ? entry.value : null;
+        }
+    }
+
+    /**
+     * Start the refresh of a count in the background, unless the count is already being loaded
+     * A count that fails to be refreshed stays stale
+     *
+     * @param key         the key of the query
+     * @param entityTypes the entity types the query depends on
+     * @param refresher   the function used to start the refresh
+     */
+    private void refresh(final Object key, final Set<Class<?>> entityTypes, final Supplier<CompletableFuture<Long>> refresher) {
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, future) != null) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        final long loadVersion = getVersion();
+        try {
+            refresher.get().whenComplete((count, error) -> {
+                if (error == null) {
+                    put(key, new Entry(count, entityTypes, ticker.getAsLong()), loadVersion);
+                    loads.remove(key, future);
+                    future.complete(count);
+                } else {
+                    logger.warn("Failed to refresh a count", error);
+                    loads.remove(key, future);
+                    future.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException exception) {
+            logger.warn("Failed to refresh a count", exception);
+            loads.remove(key, future);
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Wait for a count that is being loaded by another request
+     *
+     * @param future the future count
+     * @return the count
+     */
+    private static Long await(final CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Add a count and evict the least recently used counts until the cache is within its bounds
+     * A count that has been loaded while the cache was invalidated is added as a stale count
+     *
+     * @param key         the key of the query
+     * @param entry       the entry of the count
+     * @param loadVersion the version of the cache when the count started to be loaded
+     */
+    private void put(final Object key, final Entry entry, final long loadVersion) {
+        synchronized (counts) {
+            counts.put(key, version == loadVersion ? entry : entry.stale(entry.created, timeToLive));
+            final Iterator<Map.Entry<Object, Entry>> iterator = counts.entrySet().iterator();
+            while (counts.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the version of the cache, which changes on every invalidation
+     *
+     * @return the version
+     */
+    private long getVersion() {
+        synchronized (counts) {
+            return version;
+        }
+    }
+
+    /**
+     * Make the counts of the queries that depend on an entity type stale, so that they are refreshed on their next request
+     * The counts of the queries on a superclass or a subclass of the type are also made stale
+     *
+     * @param entityType the entity type
+     */
+    public void invalidate(final Class<?> entityType) {
+        final long now = ticker.getAsLong();
+        synchronized (counts) {
+            version++;
+            for (final Map.Entry<Object, Entry> entry : counts.entrySet()) {
+                final Entry current = entry.getValue();
+                if (current.dependsOn(entityType) && now - current.created < timeToLive) {
+                    entry.setValue(current.stale(now, timeToLive));
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all of the cached counts
+     * The statistics are not reset
+     */
+    public void clear() {
+        synchronized (counts) {
+            version++;
+            counts.clear();
+        }
+    }
+
+    /**
+     * Get the number of cached counts, including the counts that have expired but have not been removed yet
+     *
+     * @return the number of cached counts
+     */
+    public int size() {
+        synchronized (counts) {
+            return counts.size();
+        }
+    }
+
+    /**
+     * Get the number of requests that returned a fresh count
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests that returned a stale count
+     *
+     * @return the number of stale hits
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * Get the number of requests that had to load the count or to wait for it
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of refreshes started in the background
+     *
+     * @return the number of refreshes
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * Get the number of counts that were evicted to keep the cache within its bounds
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of counts that were made stale because an entity they depend on has changed
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLive);
+    }
+
+    public Duration getStaleTime() {
+        return Duration.ofNanos(staleTime);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", size())
+                .append("hits", hits.get())
+                .append("staleHits", staleHits.get())
+                .append("misses", misses.get())
+                .append("refreshes", refreshes.get())
+                .append("evictions", evictions.get())
+                .append("invalidations", invalidations.get())
+                .toString();
+    }
+
+    /**
+     * A cached count
+     */
+    private static final class Entry {
+        private final Long          value;
+        private final Set<Class<?>> entityTypes;
+        private final long          created;
+
+        /**
+         * @param value       the count
+         * @param entityTypes the entity types the query depends on
+         * @param created     the time the count was loaded, in nanoseconds
+         */
+        Entry(final Long value, final Set<Class<?>> entityTypes, final long created) {
+            this.value = value;
+            this.entityTypes = entityTypes;
+            this.created = created;
+        }
+
+        /**
+         * Get the same count, no longer fresh: at the latest, it becomes stale now
+         *
+         * @param now        the current time in nanoseconds
+         * @param timeToLive the time to live of the counts
+         * @return the stale entry
+         */
+        Entry stale(final long now, final long timeToLive) {
+            return new Entry(value, entityTypes, Math.min(created, now - timeToLive));
+        }
+
+        /**
+         * Check if the query of the count depends on an entity type
+         *
+         * @param entityType the entity type
+         * @return true if the query depends on the type, a superclass or a subclass of the type
+         */
+        boolean dependsOn(final Class<?> entityType) {
+            for (final Class<?> type : entityTypes) {
+                if (type.isAssignableFrom(entityType) || entityType.isAssignableFrom(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
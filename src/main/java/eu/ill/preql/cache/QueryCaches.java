@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+/**
+ * Holds the caches of the filter queries. The caches are disabled until they are set
+ *
+ * @author Jamie Hall
+ */
+public final class QueryCaches {
+
+    private static volatile ResultCache resultCache;
+    private static volatile CountCache  countCache;
+
+    private QueryCaches() {
+    }
+
+    /**
+     * Get the cache of the results of the filter queries
+     *
+     * @return the cache or null if the results are not cached
+     */
+    public static ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Set the cache of the results of the filter queries
+     *
+     * @param cache the cache (null to disable the caching of the results)
+     */
+    public static void setResultCache(final ResultCache cache) {
+        QueryCaches.resultCache = cache;
+    }
+
+    /**
+     * Get the cache of the counts of the filter queries
+     *
+     * @return the cache or null if the counts are not cached
+     */
+    public static CountCache getCountCache() {
+        return countCache;
+    }
+
+    /**
+     * Set the cache of the counts of the filter queries
+     * When it is set, the counts are cached by this cache rather than by the result cache
+     *
+     * @param cache the cache (null to disable the caching of the counts)
+     */
+    public static void setCountCache(final CountCache cache) {
+        QueryCaches.countCache = cache;
+    }
+
+    /**
+     * Invalidate the cached results of the queries that depend on an entity type, and make their cached counts stale
+     *
+     * @param entityType the entity type
+     */
+    public static void invalidate(final Class<?> entityType) {
+        final ResultCache results = resultCache;
+        if (results != null) {
+            results.invalidate(entityType);
+        }
+        final CountCache counts = countCache;
+        if (counts != null) {
+            counts.invalidate(entityType);
+        }
+    }
+}
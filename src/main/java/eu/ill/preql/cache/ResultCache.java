@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least recently used cache of query results whose entries expire after a time to live.
+ * Every entry records the entity types its query depends on, so that the entries are invalidated
+ * when an entity of one of these types is persisted, updated or removed (see {@link CacheInvalidationListener}).
+ * It is safe for use by multiple threads
+ *
+ * @author Jamie Hall
+ */
+public final class ResultCache {
+
+    private final int                              maxSize;
+    private final long                             timeToLive;
+    private final LongSupplier                     ticker;
+    private final LinkedHashMap<Object, Entry>     results       = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong                       hits          = new AtomicLong();
+    private final AtomicLong                       misses        = new AtomicLong();
+    private final AtomicLong                       evictions     = new AtomicLong();
+    private final AtomicLong                       invalidations = new AtomicLong();
+    private       long                             version;
+
+    /**
+     * @param maxSize    the maximum number of results
+     * @param timeToLive the time after which a result expires
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    public ResultCache(final int maxSize, final Duration timeToLive) {
+        this(maxSize, timeToLive, System::nanoTime);
+    }
+
+    /**
+     * @param maxSize    the maximum number of results
+     * @param timeToLive the time after which a result expires
+     * @param ticker     the source of the time in nanoseconds
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    ResultCache(final int maxSize, final Duration timeToLive, final LongSupplier ticker) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be a positive duration");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive.toNanos();
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the result for a given key, loading and caching it if it is not in the cache or has expired
+     * A result that is loaded while the cache is invalidated is returned but not cached, because it may already be stale
+     *
+     * @param key         the key of the query
+     * @param entityTypes the entity types the query depends on
+     * @param loader      the function used to load the result on a cache miss
+     * @param <T>         the type of the result
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Set<Class<?>> entityTypes, final Supplier<T> loader) {
+        final long loadVersion;
+        synchronized (results) {
+            final Entry entry = results.get(key);
+            if (entry != null && ticker.getAsLong() - entry.created < timeToLive) {
+                hits.incrementAndGet();
+                return (T) entry.value;
+            }
+            if (entry != null) {
+                results.remove(key);
+            }
+            loadVersion = version;
+        }
+        misses.incrementAndGet();
+        final T value = loader.get();
+        put(key, new Entry(value, entityTypes, ticker.getAsLong()), loadVersion);
+        return value;
+    }
+
+    /**
+     * Add a result and evict the least recently used results until the cache is within its bounds
+     *
+     * @param key         the key of the query
+     * @param entry       the entry of the result
+     * @param loadVersion the version of the cache when the result started to be loaded
+     */
+    private void put(final Object key, final Entry entry, final long loadVersion) {
+        synchronized (results) {
+            if (version != loadVersion) {
+                return;
+            }
+            results.put(key, entry);
+            final Iterator<Map.Entry<Object, Entry>> iterator = results.entrySet().iterator();
+            while (results.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove the results of the queries that depend on an entity type
+     * The results of the queries on a superclass or a subclass of the type are also removed
+     *
+     * @param entityType the entity type
+     */
+    public void invalidate(final Class<?> entityType) {
+        synchronized (results) {
+            version++;
+            final Iterator<Entry> iterator = results.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().dependsOn(entityType)) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all of the cached results
+     * The statistics are not reset
+     */
+    public void clear() {
+        synchronized (results) {
+            version++;
+            results.clear();
+        }
+    }
+
+    /**
+     * Get the number of cached results, including the expired results that have not been removed yet
+     *
+     * @return the number of cached results
+     */
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /**
+     * Get the number of lookups that found a cached result
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that had to load the result
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of results that were evicted to keep the cache within its bounds
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of results that were removed because an entity they depend on has changed
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLive);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", size())
+                .append("hits", hits.get())
+                .append("misses", misses.get())
+                .append("evictions", evictions.get())
+                .append("invalidations", invalidations.get())
+                .toString();
+    }
+
+    /**
+     * A cached result
+     */
+    private static final class Entry {
+        private final Object         value;
+        private final Set<Class<?>>  entityTypes;
+        private final long           created;
+
+        /**
+         * @param value       the result
+         * @param entityTypes the entity types the query depends on
+         * @param created     the time the result was loaded, in nanoseconds
+         */
+        Entry(final Object value, final Set<Class<?>> entityTypes, final long created) {
+            this.value = value;
+            this.entityTypes = entityTypes;
+            this.created = created;
+        }
+
+        /**
+         * Check if the query of the result depends on an entity type
+         *
+         * @param entityType the entity type
+         * @return true if the query depends on the type, a superclass or a subclass of the type
+         */
+        boolean dependsOn(final Class<?> entityType) {
+            for (final Class<?> type : entityTypes) {
+                if (type.isAssignableFrom(entityType) || entityType.isAssignableFrom(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.hibernate;
+
+import eu.ill.preql.cache.QueryCaches;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Invalidates the cached results and counts once the transaction that persisted, updated or removed an entity
+ * has completed. The entity listener of the library ({@link eu.ill.preql.cache.CacheInvalidationListener})
+ * invalidates them when the changes are flushed, before the commit: a query executed by another entity manager
+ * between the flush and the commit can cache the data of before the commit again, so the results are invalidated
+ * a second time after the commit (or the rollback).
+ * The integrator is registered with Hibernate by the service loader, and only keeps the changes of a transaction
+ * until its completion when a cache has been set
+ *
+ * @author Jamie Hall
+ */
+public class CacheInvalidationIntegrator implements Integrator {
+
+    @Override
+    public void integrate(final Metadata metadata, final BootstrapContext bootstrapContext, final SessionFactoryImplementor sessionFactory) {
+        final EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        final Listener              listener = new Listener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    @Override
+    public void disintegrate(final SessionFactoryImplementor sessionFactory, final SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    /**
+     * Invalidates the cached results that depend on the type of an entity after the completion of a transaction
+     */
+    private static final class Listener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        @Override
+        public void onPostInsert(final PostInsertEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(final PostInsertEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public void onPostUpdate(final PostUpdateEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(final PostUpdateEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public void onPostDelete(final PostDeleteEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(final PostDeleteEvent event) {
+            invalidate(event.getPersister());
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(final EntityPersister persister) {
+            return QueryCaches.getResultCache() != null || QueryCaches.getCountCache() != null;
+        }
+
+        /**
+         * Invalidate the cached results that depend on the type of an entity
+         *
+         * @param persister the persister of the entity
+         */
+        private void invalidate(final EntityPersister persister) {
+            QueryCaches.invalidate(persister.getMappedClass());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.hibernate;
+
+import eu.ill.preql.support.WindowCount;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+
+/**
+ * Creates the window count with the criteria builder of Hibernate 6, for the WINDOW count mode:
+ * <pre>
+ * FilterQuery.setWindowCount(new HibernateWindowCount());
+ * </pre>
+ * Hibernate is an optional dependency of preql: this class can only be loaded when Hibernate is on the classpath
+ *
+ * @author Jamie Hall
+ */
+public class HibernateWindowCount implements WindowCount {
+
+    @Override
+    public boolean isSupported(final EntityManager entityManager) {
+        return entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect()
+                .supportsWindowFunctions();
+    }
+
+    @Override
+    public Expression<Long> create(final CriteriaBuilder criteriaBuilder, final Root<?> root) {
+        final HibernateCriteriaBuilder builder = (HibernateCriteriaBuilder) criteriaBuilder;
+        return builder.count(root, builder.createWindow());
+    }
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.PluralAttribute;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import static java.lang.String.format;
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.Collections.unmodifiableList;
+import static org.apache.commons.lang3.ClassUtils.primitiveToWrapper;
+
+/**
+ * Resolves an attribute path (i.e. teacher.affiliation.name) of a Java type into a chain of generated accessors.
+ * The attributes are resolved with the JPA metamodel when the type is managed, otherwise with reflection.
+ * Every attribute is read with its getter (getX or isX), which is compiled into a direct call with the {@link LambdaMetafactory},
+ * or, when there is no getter, directly from its field with a method handle.
+ * The getters of primitive attributes are also compiled into primitive functions, so their values are not boxed.
+ * An attribute whose type is a collection (or a map) is navigated to the type of its elements
+ *
+ * @author Jamie Hall
+ */
+final class AttributeAccessor {
+
+    private static final MethodType GETTER_TYPE        = methodType(Object.class, Object.class);
+    private static final MethodType LONG_GETTER_TYPE   = methodType(long.class, Object.class);
+    private static final MethodType DOUBLE_GETTER_TYPE = methodType(double.class, Object.class);
+
+    private final String        attribute;
+    private final List<Segment> segments;
+
+    private AttributeAccessor(final String attribute, final List<Segment> segments) {
+        this.attribute = attribute;
+        this.segments = unmodifiableList(segments);
+    }
+
+    /**
+     * Resolve an attribute path of a type with reflection
+     *
+     * @param type      the type that declares the first attribute of the path
+     * @param attribute the attribute path
+     * @return the accessor
+     * @throws InvalidQueryException if an attribute of the path does not exist
+     */
+    static AttributeAccessor resolve(final Class<?> type, final String attribute) {
+        return resolve(null, type, attribute);
+    }
+
+    /**
+     * Resolve an attribute path of a type
+     * The attributes of managed types (entities, mapped superclasses and embeddables) are resolved with the metamodel
+     *
+     * @param metamodel the metamodel (can be null)
+     * @param type      the type that declares the first attribute of the path
+     * @param attribute the attribute path
+     * @return the accessor
+     * @throws InvalidQueryException if an attribute of the path does not exist
+     */
+    static AttributeAccessor resolve(final Metamodel metamodel, final Class<?> type, final String attribute) {
+        final List<Segment> segments = new ArrayList<>();
+        Class<?> current = type;
+        for (final String name : attribute.split("\\.")) {
+            final ManagedType<?> managedType = getManagedType(metamodel, current);
+            final Segment segment = managedType == null ? resolveSegment(current, name) : resolveSegment(managedType, name);
+            segments.add(segment);
+            current = segment.getType();
+        }
+        return new AttributeAccessor(attribute, segments);
+    }
+
+    /**
+     * Get the attribute path
+     *
+     * @return the attribute path
+     */
+    String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Get the resolved attributes of the path
+     *
+     * @return the segments
+     */
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Get the last resolved attribute of the path
+     *
+     * @return the segment
+     */
+    Segment getLeaf() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Get the type of the last attribute of the path (the type of its elements for a collection)
+     *
+     * @return the type
+     */
+    Class<?> getType() {
+        return getLeaf().getType();
+    }
+
+    /**
+     * Check if the path goes through a collection
+     *
+     * @return true if an attribute of the path is a collection, otherwise false
+     */
+    boolean isCollection() {
+        for (final Segment segment : segments) {
+            if (segment.isCollection()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the getters of a range of the path
+     *
+     * @param from the first attribute (inclusive)
+     * @param to   the last attribute (exclusive)
+     * @return the getters
+     */
+    @SuppressWarnings("unchecked")
+    Function<Object, Object>[] getGetters(final int from, final int to) {
+        final Function<Object, Object>[] getters = new Function[to - from];
+        for (int i = from; i < to; i++) {
+            getters[i - from] = segments.get(i).getGetter();
+        }
+        return getters;
+    }
+
+    /**
+     * Read the value of a chain of single valued attributes
+     * The navigation stops at the first null value
+     *
+     * @param getters the getters of the attributes
+     * @param source  the object that declares the first attribute
+     * @return the value or null
+     */
+    static Object navigate(final Function<Object, Object>[] getters, final Object source) {
+        Object value = source;
+        for (int i = 0; i < getters.length && value != null; i++) {
+            value = getters[i].apply(value);
+        }
+        return value;
+    }
+
+    /**
+     * Read every value of the path from an object, iterating the collections that the path goes through.
+     * The lazy associations and collections of the path are initialized by their entity manager
+     *
+     * @param source the object that declares the first attribute
+     */
+    void load(final Object source) {
+        List<Object> values = Collections.singletonList(source);
+        for (final Segment segment : segments) {
+            final List<Object> next = new ArrayList<>();
+            for (final Object value : values) {
+                final Object attribute = segment.getGetter().apply(value);
+                if (segment.isCollection()) {
+                    for (final Object element : elements(attribute)) {
+                        if (element != null) {
+                            next.add(element);
+                        }
+                    }
+                } else if (attribute != null) {
+                    next.add(attribute);
+                }
+            }
+            values = next;
+        }
+    }
+
+    /**
+     * Get the elements of a collection attribute
+     *
+     * @param value the value of the attribute
+     * @return the elements (empty if the value is null)
+     */
+    static Collection<?> elements(final Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).values();
+        }
+        return (Collection<?>) value;
+    }
+
+    /**
+     * Get the managed type of a class
+     *
+     * @param metamodel the metamodel (can be null)
+     * @param type      the class
+     * @return the managed type or null if the class is not managed
+     */
+    private static ManagedType<?> getManagedType(final Metamodel metamodel, final Class<?> type) {
+        if (metamodel == null) {
+            return null;
+        }
+        try {
+            return metamodel.managedType(type);
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolve an attribute of a managed type with the metamodel
+     *
+     * @param managedType the managed type
+     * @param name        the name of the attribute
+     * @return the segment
+     */
+    private static Segment resolveSegment(final ManagedType<?> managedType, final String name) {
+        final Attribute<?, ?> attribute;
+        try {
+            attribute = managedType.getAttribute(name);
+        } catch (IllegalArgumentException exception) {
+            throw new InvalidQueryException(format("Unknown attribute %s on %s", name, managedType.getJavaType()));
+        }
+        final Member   member     = attribute.getJavaMember();
+        final boolean  collection = attribute.isCollection();
+        final Class<?> type       = collection ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType() : attribute.getJavaType();
+        if (member instanceof Method) {
+            return createSegment(name, (Method) member, null, type, collection);
+        }
+        final Field  field  = member instanceof Field ? (Field) member : findField(managedType.getJavaType(), name);
+        final Method getter = findGetter(managedType.getJavaType(), name, field == null ? null : field.getType());
+        return createSegment(name, getter, field, type, collection);
+    }
+
+    /**
+     * Resolve an attribute of a type with reflection
+     *
+     * @param type the type
+     * @param name the name of the attribute
+     * @return the segment
+     */
+    private static Segment resolveSegment(final Class<?> type, final String name) {
+        final Field  field  = findField(type, name);
+        final Method getter = findGetter(type, name, field == null ? null : field.getType());
+        if (getter == null && field == null) {
+            throw new InvalidQueryException(format("Unknown attribute %s on %s", name, type));
+        }
+        final Class<?> rawType     = getter == null ? field.getType() : getter.getReturnType();
+        final Type     genericType = getter == null ? field.getGenericType() : getter.getGenericReturnType();
+        final boolean  collection  = Collection.class.isAssignableFrom(rawType) || Map.class.isAssignableFrom(rawType);
+        return createSegment(name, getter, field, collection ? getElementType(genericType, rawType) : rawType, collection);
+    }
+
+    /**
+     * Create the accessors of an attribute
+     *
+     * @param name       the name of the attribute
+     * @param getter     the getter of the attribute (null to read the field)
+     * @param field      the field of the attribute (used when there is no getter)
+     * @param type       the type of the attribute (the type of its elements for a collection)
+     * @param collection true if the attribute is a collection
+     * @return the segment
+     */
+    private static Segment createSegment(final String name, final Method getter, final Field field,
+                                         final Class<?> type, final boolean collection) {
+        if (getter == null && field == null) {
+            throw new InvalidQueryException(format("Cannot read attribute %s", name));
+        }
+        final Class<?> declaringClass = getter == null ? field.getDeclaringClass() : getter.getDeclaringClass();
+        final Class<?> valueType      = getter == null ? field.getType() : getter.getReturnType();
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            final MethodHandle         handle = getter == null ? lookup.unreflectGetter(field) : lookup.unreflect(getter);
+            final Function<Object, Object> function = getter == null ? createFunction(handle) : generateFunction(lookup, handle, declaringClass, valueType);
+            ToLongFunction<Object>   longFunction   = null;
+            ToDoubleFunction<Object> doubleFunction = null;
+            if (isIntegral(valueType)) {
+                longFunction = getter == null ? createLongFunction(handle) : generateLongFunction(lookup, handle, declaringClass, valueType);
+            } else if (valueType == double.class || valueType == float.class) {
+                doubleFunction = getter == null ? createDoubleFunction(handle) : generateDoubleFunction(lookup, handle, declaringClass, valueType);
+            }
+            return new Segment(name, function, longFunction, doubleFunction, type, collection);
+        } catch (IllegalAccessException exception) {
+            throw new InvalidQueryException(format("Cannot access attribute %s on %s", name, declaringClass), exception);
+        }
+    }
+
+    /**
+     * Generate a function that calls a getter directly
+     * The method handle is used when the function cannot be generated
+     *
+     * @param lookup         the lookup with the access rights of the declaring class
+     * @param handle         the getter
+     * @param declaringClass the class that declares the getter
+     * @param valueType      the return type of the getter
+     * @return the function
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> generateFunction(final MethodHandles.Lookup lookup, final MethodHandle handle,
+                                                             final Class<?> declaringClass, final Class<?> valueType) {
+        try {
+            return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply", methodType(Function.class),
+                    GETTER_TYPE, handle, methodType(primitiveToWrapper(valueType), declaringClass)).getTarget().invoke();
+        } catch (Throwable throwable) {
+            return createFunction(handle);
+        }
+    }
+
+    /**
+     * Generate a primitive function that calls a getter of an integral value directly
+     *
+     * @param lookup         the lookup with the access rights of the declaring class
+     * @param handle         the getter
+     * @param declaringClass the class that declares the getter
+     * @param valueType      the return type of the getter
+     * @return the function
+     */
+    @SuppressWarnings("unchecked")
+    private static ToLongFunction<Object> generateLongFunction(final MethodHandles.Lookup lookup, final MethodHandle handle,
+                                                               final Class<?> declaringClass, final Class<?> valueType) {
+        try {
+            return (ToLongFunction<Object>) LambdaMetafactory.metafactory(lookup, "applyAsLong", methodType(ToLongFunction.class),
+                    LONG_GETTER_TYPE, handle, methodType(long.class, declaringClass)).getTarget().invoke();
+        } catch (Throwable throwable) {
+            return createLongFunction(handle);
+        }
+    }
+
+    /**
+     * Generate a primitive function that calls a getter of a floating point value directly
+     *
+     * @param lookup         the lookup with the access rights of the declaring class
+     * @param handle         the getter
+     * @param declaringClass the class that declares the getter
+     * @param valueType      the return type of the getter
+     * @return the function
+     */
+    @SuppressWarnings("unchecked")
+    private static ToDoubleFunction<Object> generateDoubleFunction(final MethodHandles.Lookup lookup, final MethodHandle handle,
+                                                                   final Class<?> declaringClass, final Class<?> valueType) {
+        try {
+            return (ToDoubleFunction<Object>) LambdaMetafactory.metafactory(lookup, "applyAsDouble", methodType(ToDoubleFunction.class),
+                    DOUBLE_GETTER_TYPE, handle, methodType(double.class, declaringClass)).getTarget().invoke();
+        } catch (Throwable throwable) {
+            return createDoubleFunction(handle);
+        }
+    }
+
+    /**
+     * Create a function that invokes a method handle
+     *
+     * @param handle the getter
+     * @return the function
+     */
+    private static Function<Object, Object> createFunction(final MethodHandle handle) {
+        final MethodHandle getter = handle.asType(GETTER_TYPE);
+        return source -> {
+            try {
+                return (Object) getter.invokeExact(source);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        };
+    }
+
+    /**
+     * Create a primitive function that invokes a method handle
+     *
+     * @param handle the getter of an integral value
+     * @return the function
+     */
+    private static ToLongFunction<Object> createLongFunction(final MethodHandle handle) {
+        final MethodHandle getter = handle.asType(LONG_GETTER_TYPE);
+        return source -> {
+            try {
+                return (long) getter.invokeExact(source);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        };
+    }
+
+    /**
+     * Create a primitive function that invokes a method handle
+     *
+     * @param handle the getter of a floating point value
+     * @return the function
+     */
+    private static ToDoubleFunction<Object> createDoubleFunction(final MethodHandle handle) {
+        final MethodHandle getter = handle.asType(DOUBLE_GETTER_TYPE);
+        return source -> {
+            try {
+                return (double) getter.invokeExact(source);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        };
+    }
+
+    /**
+     * Rethrow the exception thrown by a getter
+     *
+     * @param throwable the exception
+     * @return the unchecked exception to throw
+     */
+    private static RuntimeException rethrow(final Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        return new IllegalStateException("Failed to read attribute", throwable);
+    }
+
+    /**
+     * Check if a type is a primitive integral type that can be widened to a long
+     *
+     * @param type the type
+     * @return true if the type is long, int, short or byte
+     */
+    private static boolean isIntegral(final Class<?> type) {
+        return type == long.class || type == int.class || type == short.class || type == byte.class;
+    }
+
+    /**
+     * Find the field of an attribute in a type and its super classes
+     *
+     * @param type the type
+     * @param name the name of the attribute
+     * @return the field or null if it is not found
+     */
+    private static Field findField(final Class<?> type, final String name) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (final Field field : current.getDeclaredFields()) {
+                if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the getter of an attribute in a type and its super classes
+     * When the attribute has a field, the getter must return the type of the field
+     *
+     * @param type      the type
+     * @param name      the name of the attribute
+     * @param fieldType the type of the field of the attribute (null if there is no field)
+     * @return the getter or null if it is not found
+     */
+    private static Method findGetter(final Class<?> type, final String name, final Class<?> fieldType) {
+        final String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (final Method method : current.getDeclaredMethods()) {
+                if (method.getParameterCount() != 0 || method.isBridge() || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                final Class<?> returnType = method.getReturnType();
+                if (fieldType != null && returnType != fieldType) {
+                    continue;
+                }
+                if (method.getName().equals("get" + suffix) && returnType != void.class) {
+                    return method;
+                }
+                if (method.getName().equals("is" + suffix) && (returnType == boolean.class || returnType == Boolean.class)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the type of the elements of a collection (or the values of a map)
+     *
+     * @param genericType the generic type of the collection
+     * @param rawType     the type of the collection
+     * @return the type of the elements or Object if it cannot be determined
+     */
+    private static Class<?> getElementType(final Type genericType, final Class<?> rawType) {
+        if (genericType instanceof ParameterizedType) {
+            final Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            final int index = Map.class.isAssignableFrom(rawType) ? 1 : 0;
+            if (arguments.length > index) {
+                return getRawType(arguments[index]);
+            }
+        }
+        return Object.class;
+    }
+
+    /**
+     * Get the class of a type
+     *
+     * @param type the type
+     * @return the class of the type
+     */
+    private static Class<?> getRawType(final Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return getRawType(((ParameterizedType) type).getRawType());
+        }
+        if (type instanceof WildcardType) {
+            return getRawType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable) {
+            return getRawType(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        if (type instanceof GenericArrayType) {
+            return Object[].class;
+        }
+        return Object.class;
+    }
+
+    /**
+     * A resolved attribute of a path
+     */
+    static final class Segment {
+        private final String                   name;
+        private final Function<Object, Object> getter;
+        private final ToLongFunction<Object>   longGetter;
+        private final ToDoubleFunction<Object> doubleGetter;
+        private final Class<?>                 type;
+        private final boolean                  collection;
+
+        Segment(final String name, final Function<Object, Object> getter, final ToLongFunction<Object> longGetter,
+                final ToDoubleFunction<Object> doubleGetter, final Class<?> type, final boolean collection) {
+            this.name = name;
+            this.getter = getter;
+            this.longGetter = longGetter;
+            this.doubleGetter = doubleGetter;
+            this.type = type;
+            this.collection = collection;
+        }
+
+        /**
+         * Get the name of the attribute
+         *
+         * @return the name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Get the getter of the attribute
+         *
+         * @return the getter
+         */
+        Function<Object, Object> getGetter() {
+            return getter;
+        }
+
+        /**
+         * Get the getter of a primitive integral attribute (long, int, short or byte)
+         *
+         * @return the getter or null if the attribute is not a primitive integral value
+         */
+        ToLongFunction<Object> getLongGetter() {
+            return longGetter;
+        }
+
+        /**
+         * Get the getter of a primitive floating point attribute (double or float)
+         *
+         * @return the getter or null if the attribute is not a primitive floating point value
+         */
+        ToDoubleFunction<Object> getDoubleGetter() {
+            return doubleGetter;
+        }
+
+        /**
+         * Get the type of the attribute (the type of its elements for a collection)
+         *
+         * @return the type
+         */
+        Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Check if the attribute is a collection
+         *
+         * @return true if the attribute is a collection, otherwise false
+         */
+        boolean isCollection() {
+            return collection;
+        }
+    }
+}
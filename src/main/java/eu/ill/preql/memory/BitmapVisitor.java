@@ -0,0 +1,280 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.AbstractQueryParser;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NodeVisitor;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the abstract syntax tree of a query on the columns of a snapshot, one bitmap operation per node.
+ * Every node is evaluated into the bitmaps of the rows for which it is TRUE and for which it is FALSE,
+ * the other rows are unknown. A comparison that cannot be evaluated on a column (a field of a collection,
+ * a value that is not held in a column or a parameter of another type) is evaluated row by row
+ * by the {@link ConditionVisitor}
+ *
+ * @author Jamie Hall
+ */
+final class BitmapVisitor implements NodeVisitor<BitmapVisitor.Truth> {
+
+    private final PredicateCompiler<?> compiler;
+    private final Map<String, Object>  parameters;
+    private final Snapshot             snapshot;
+
+    /**
+     * @param compiler   the compiler that resolves the fields
+     * @param parameters the parameter values
+     * @param snapshot   the snapshot
+     */
+    BitmapVisitor(final PredicateCompiler<?> compiler, final Map<String, Object> parameters, final Snapshot snapshot) {
+        this.compiler = compiler;
+        this.parameters = parameters;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Evaluate a comparison expression
+     *
+     * @param node the comparison node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final ComparisonNode node) {
+        final FieldDescriptor field  = compiler.getField(node.getField());
+        final Column          column = snapshot.getColumn(field.getName());
+        if (column != null) {
+            final BitSet matches = column.compare(node.getOperator(), parseValue(field, node.getParameter(), getParameter(node.getParameter())));
+            if (matches != null) {
+                return new Truth(matches, column.complement(matches));
+            }
+        }
+        return evaluate(node);
+    }
+
+    /**
+     * Evaluate a BETWEEN expression
+     *
+     * @param node the between node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final BetweenNode node) {
+        final FieldDescriptor field  = compiler.getField(node.getField());
+        final Column          column = snapshot.getColumn(field.getName());
+        if (column != null) {
+            final Object lower   = parseValue(field, node.getLower(), getParameter(node.getLower()));
+            final Object upper   = parseValue(field, node.getUpper(), getParameter(node.getUpper()));
+            final BitSet matches = column.between(lower, upper);
+            if (matches != null) {
+                return new Truth(matches, column.complement(matches)).negate(node.isNegated());
+            }
+        }
+        return evaluate(node);
+    }
+
+    /**
+     * Evaluate an IN expression
+     *
+     * @param node the in node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final InNode node) {
+        final FieldDescriptor field     = compiler.getField(node.getField());
+        final Column          column    = snapshot.getColumn(field.getName());
+        final Object          parameter = getParameter(node.getParameter());
+        if (column != null && parameter instanceof List) {
+            final List<Object> values = new ArrayList<>();
+            for (Object value : (List) parameter) {
+                values.add(parseValue(field, node.getParameter(), value));
+            }
+            final BitSet matches = column.in(values);
+            if (matches != null) {
+                return new Truth(matches, column.complement(matches)).negate(node.isNegated());
+            }
+        }
+        return evaluate(node);
+    }
+
+    /**
+     * Evaluate a LIKE expression
+     *
+     * @param node the like node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final LikeNode node) {
+        final FieldDescriptor field  = compiler.getField(node.getField());
+        final Column          column = snapshot.getColumn(field.getName());
+        if (column != null) {
+            final Pattern pattern = Values.toPattern((String) parseValue(field, node.getParameter(), getParameter(node.getParameter())));
+            final BitSet  matches = column.like(pattern);
+            if (matches != null) {
+                return new Truth(matches, column.complement(matches)).negate(node.isNegated());
+            }
+        }
+        return evaluate(node);
+    }
+
+    /**
+     * Evaluate a NULL expression
+     *
+     * @param node the null node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final NullNode node) {
+        final FieldDescriptor field  = compiler.getField(node.getField());
+        final Column          column = snapshot.getColumn(field.getName());
+        if (column != null) {
+            return new Truth((BitSet) column.getNulls().clone(), column.getNonNulls()).negate(node.isNegated());
+        }
+        return evaluate(node);
+    }
+
+    /**
+     * Evaluate an AND expression: TRUE if every expression is TRUE, FALSE if an expression is FALSE
+     *
+     * @param node the and node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final AndNode node) {
+        final List<Node> children = node.getChildren();
+        final Truth      result   = children.get(0).accept(this);
+        for (int i = 1; i < children.size(); i++) {
+            final Truth truth = children.get(i).accept(this);
+            result.matches.and(truth.matches);
+            result.mismatches.or(truth.mismatches);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate an OR expression: TRUE if an expression is TRUE, FALSE if every expression is FALSE
+     *
+     * @param node the or node
+     * @return the truth of the rows
+     */
+    @Override
+    public Truth visit(final OrNode node) {
+        final List<Node> children = node.getChildren();
+        final Truth      result   = children.get(0).accept(this);
+        for (int i = 1; i < children.size(); i++) {
+            final Truth truth = children.get(i).accept(this);
+            result.matches.or(truth.matches);
+            result.mismatches.and(truth.mismatches);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate an expression row by row
+     *
+     * @param node the node of the expression
+     * @return the truth of the rows
+     */
+    private Truth evaluate(final Node node) {
+        final Condition condition  = node.accept(new ConditionVisitor(compiler, parameters));
+        final BitSet    matches    = new BitSet(snapshot.size());
+        final BitSet    mismatches = new BitSet(snapshot.size());
+        final Object[]  row        = new Object[1];
+        for (int i = 0; i < snapshot.size(); i++) {
+            row[0] = snapshot.getRow(i);
+            final Boolean value = condition.evaluate(row);
+            if (Boolean.TRUE.equals(value)) {
+                matches.set(i);
+            } else if (Boolean.FALSE.equals(value)) {
+                mismatches.set(i);
+            }
+        }
+        return new Truth(matches, mismatches);
+    }
+
+    /**
+     * Get a parameter
+     * The parameters have already been validated by the compilation of the predicate
+     *
+     * @param name parameter name
+     * @return the parameter value
+     */
+    private Object getParameter(final String name) {
+        return parameters.get(name);
+    }
+
+    /**
+     * Parse a parameter value into the type of the attribute of a field
+     *
+     * @param field     the field
+     * @param parameter the name of the parameter
+     * @param value     the value of the parameter
+     * @return the parsed value
+     */
+    private Object parseValue(final FieldDescriptor field, final String parameter, final Object value) {
+        final AttributeAccessor accessor = compiler.getAccessor(field);
+        return AbstractQueryParser.coerceValue(compiler.getValueParsers(), field.getValueParser(), accessor.getType(), parameter, value);
+    }
+
+    /**
+     * The truth of an expression for the rows of a snapshot
+     */
+    static final class Truth {
+        private final BitSet matches;
+        private final BitSet mismatches;
+
+        /**
+         * @param matches    the rows for which the expression is TRUE
+         * @param mismatches the rows for which the expression is FALSE
+         */
+        Truth(final BitSet matches, final BitSet mismatches) {
+            this.matches = matches;
+            this.mismatches = mismatches;
+        }
+
+        /**
+         * Get the rows for which the expression is TRUE
+         *
+         * @return the matching rows
+         */
+        BitSet getMatches() {
+            return matches;
+        }
+
+        /**
+         * Negate the expression if required: the TRUE rows become FALSE and the FALSE rows TRUE
+         *
+         * @param negated true if the expression is negated
+         * @return the truth of the expression
+         */
+        Truth negate(final boolean negated) {
+            return negated ? new Truth(mismatches, matches) : this;
+        }
+    }
+}
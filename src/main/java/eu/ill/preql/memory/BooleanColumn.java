@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column of boolean values held in a bitmap
+ *
+ * @author Jamie Hall
+ */
+final class BooleanColumn extends Column {
+
+    private final BitSet values;
+
+    /**
+     * @param values the values of the rows
+     */
+    BooleanColumn(final Object[] values) {
+        super(values);
+        this.values = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (Boolean.TRUE.equals(values[i])) {
+                this.values.set(i);
+            }
+        }
+    }
+
+    @Override
+    BitSet compare(final ComparisonOperator operator, final Object parameter) {
+        if (!(parameter instanceof Boolean)) {
+            return null;
+        }
+        switch (operator) {
+            case EQ:
+                return matching((Boolean) parameter);
+            case NOT_EQ:
+                return matching(!(Boolean) parameter);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    BitSet in(final List<Object> parameters) {
+        final BitSet matches = new BitSet(size);
+        for (final Object parameter : parameters) {
+            if (!(parameter instanceof Boolean)) {
+                return null;
+            }
+            matches.or(matching((Boolean) parameter));
+        }
+        return matches;
+    }
+
+    /**
+     * Get the rows of a value
+     *
+     * @param value the value
+     * @return the rows whose value is equal to the given value
+     */
+    private BitSet matching(final boolean value) {
+        if (value) {
+            return (BitSet) values.clone();
+        }
+        return complement(values);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang3.ClassUtils.primitiveToWrapper;
+
+/**
+ * A column of a snapshot index: the values of a field for every row of the snapshot.
+ * The operators are evaluated on the whole column at once and return the bitmap of the rows whose value matches.
+ * A null value never matches, the null values are held in their own bitmap
+ *
+ * @author Jamie Hall
+ */
+abstract class Column {
+
+    protected final int    size;
+    protected final BitSet nulls;
+
+    /**
+     * @param values the values of the rows
+     */
+    Column(final Object[] values) {
+        this.size = values.length;
+        this.nulls = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (values[i] == null) {
+                nulls.set(i);
+            }
+        }
+    }
+
+    /**
+     * Create the column of a type
+     *
+     * @param type   the type of the values
+     * @param values the values of the rows
+     * @return the column or null if the values of the type cannot be held in a column
+     */
+    static Column create(final Class<?> type, final Object[] values) {
+        final Class<?> wrapper = primitiveToWrapper(type);
+        if (wrapper == Long.class || wrapper == Integer.class || wrapper == Short.class || wrapper == Byte.class) {
+            return new LongColumn(values);
+        }
+        if (wrapper == Double.class || wrapper == Float.class) {
+            return new DoubleColumn(values);
+        }
+        if (wrapper == Boolean.class) {
+            return new BooleanColumn(values);
+        }
+        if (Comparable.class.isAssignableFrom(wrapper)) {
+            return new DictionaryColumn(values);
+        }
+        return null;
+    }
+
+    /**
+     * Get the rows whose value is null
+     *
+     * @return the bitmap of the null values
+     */
+    BitSet getNulls() {
+        return nulls;
+    }
+
+    /**
+     * Get the rows whose value is not null
+     *
+     * @return the bitmap of the non null values
+     */
+    BitSet getNonNulls() {
+        final BitSet nonNulls = new BitSet(size);
+        nonNulls.set(0, size);
+        nonNulls.andNot(nulls);
+        return nonNulls;
+    }
+
+    /**
+     * Get the rows whose value is not null and does not match
+     *
+     * @param matches the matching rows
+     * @return the other rows, without the null values
+     */
+    BitSet complement(final BitSet matches) {
+        final BitSet complement = getNonNulls();
+        complement.andNot(matches);
+        return complement;
+    }
+
+    /**
+     * Compare the values with a parameter value
+     *
+     * @param operator  the comparison operator
+     * @param parameter the parsed parameter value
+     * @return the matching rows or null if the column cannot compare its values with the parameter value
+     */
+    BitSet compare(final ComparisonOperator operator, final Object parameter) {
+        return null;
+    }
+
+    /**
+     * Check if the values are between two parameter values (inclusive)
+     *
+     * @param lower the lower bound
+     * @param upper the upper bound
+     * @return the matching rows or null if the column cannot compare its values with the parameter values
+     */
+    BitSet between(final Object lower, final Object upper) {
+        return null;
+    }
+
+    /**
+     * Check if the values are equal to one of the parameter values
+     *
+     * @param parameters the parsed parameter values
+     * @return the matching rows or null if the column cannot compare its values with the parameter values
+     */
+    BitSet in(final List<Object> parameters) {
+        return null;
+    }
+
+    /**
+     * Check if the values match a LIKE pattern
+     *
+     * @param pattern the pattern
+     * @return the matching rows or null if the column cannot match its values
+     */
+    BitSet like(final Pattern pattern) {
+        return null;
+    }
+
+    /**
+     * Create the bitmap of the matching rows from its words, without the null values
+     *
+     * @param words the words of the bitmap (the bit i of the word i / 64 is set when the row i matches)
+     * @return the matching rows
+     */
+    protected BitSet toBitSet(final long[] words) {
+        final BitSet matches = BitSet.valueOf(words);
+        matches.andNot(nulls);
+        return matches;
+    }
+
+    /**
+     * Create the words of a bitmap of the rows
+     *
+     * @return the words
+     */
+    protected long[] createWords() {
+        return new long[(size + 63) >>> 6];
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ParsedQuery;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * A query compiled into a predicate that filters objects in memory, with the semantics of the SQL query:
+ * an object matches when the query is TRUE for at least one combination of the elements of its joined collections.
+ * The predicate holds no state between evaluations and can be shared between threads
+ *
+ * @param <E> the root object type
+ * @author Jamie Hall
+ */
+public final class CompiledPredicate<E> implements Predicate<E> {
+
+    private final ParsedQuery query;
+    private final JoinPoint[] joinPoints;
+    private final Condition   condition;
+
+    /**
+     * @param query      the parsed query
+     * @param joinPoints the collections joined by the condition
+     * @param condition  the condition (null if the query is empty)
+     */
+    CompiledPredicate(final ParsedQuery query, final JoinPoint[] joinPoints, final Condition condition) {
+        this.query = query;
+        this.joinPoints = joinPoints;
+        this.condition = condition;
+    }
+
+    /**
+     * Evaluate the query on an object
+     *
+     * @param object the root object
+     * @return true if the query is TRUE for the object, otherwise false
+     */
+    @Override
+    public boolean test(final E object) {
+        if (condition == null) {
+            return true;
+        }
+        final Object[] row = new Object[joinPoints.length + 1];
+        row[0] = object;
+        return test(row, 0);
+    }
+
+    /**
+     * Get the parsed query
+     *
+     * @return the parsed query
+     */
+    public ParsedQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Check if the condition joins a collection
+     *
+     * @return true if an object is evaluated on the combinations of the elements of its collections
+     */
+    boolean isJoined() {
+        return joinPoints.length > 0;
+    }
+
+    /**
+     * Evaluate the condition on every combination of the elements of the joined collections
+     *
+     * @param row   the row whose slots before the join point have been filled
+     * @param index the current join point
+     * @return true if the condition is TRUE for a combination, otherwise false
+     */
+    private boolean test(final Object[] row, final int index) {
+        if (index == joinPoints.length) {
+            return Boolean.TRUE.equals(condition.evaluate(row));
+        }
+        final Collection<?> elements = joinPoints[index].elements(row);
+        if (elements.isEmpty()) {
+            row[index + 1] = null;
+            return test(row, index + 1);
+        }
+        for (final Object element : elements) {
+            row[index + 1] = element;
+            if (test(row, index + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return query.toString();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+/**
+ * A compiled expression of a query evaluated in memory.
+ * The expression is evaluated with the three valued logic of SQL: it returns TRUE, FALSE or null (UNKNOWN)
+ *
+ * @author Jamie Hall
+ */
+@FunctionalInterface
+interface Condition {
+
+    /**
+     * Evaluate the expression on a row
+     *
+     * @param row the root object followed by the current element of every joined collection
+     * @return TRUE, FALSE or null if the result is unknown
+     */
+    Boolean evaluate(Object[] row);
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.AbstractQueryParser;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.ComparisonOperator;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NodeVisitor;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+import eu.ill.preql.support.AttributeMapper;
+import eu.ill.preql.support.CollectionStrategy;
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Compiles the abstract syntax tree of a query into a condition evaluated in memory.
+ * The fields are translated as they are by the {@link eu.ill.preql.parser.CriteriaVisitor}: a field of a collection
+ * is joined (the row is repeated for every element of the collection, or once with a null element when the collection is empty)
+ * or is tested with an EXISTS expression, depending on its collection strategy
+ *
+ * @author Jamie Hall
+ */
+final class ConditionVisitor implements NodeVisitor<Condition> {
+
+    private final PredicateCompiler<?>  compiler;
+    private final Map<String, Object>   parameters;
+    private final Map<String, Integer>  slots      = new HashMap<>();
+    private final List<JoinPoint>       joinPoints = new ArrayList<>();
+
+    /**
+     * @param compiler   the compiler that resolves the fields
+     * @param parameters the parameter values
+     */
+    ConditionVisitor(final PredicateCompiler<?> compiler, final Map<String, Object> parameters) {
+        this.compiler = compiler;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Get the collections joined by the compiled conditions, in the order of their row slots
+     *
+     * @return the join points
+     */
+    JoinPoint[] getJoinPoints() {
+        return joinPoints.toArray(new JoinPoint[0]);
+    }
+
+    /**
+     * Compile a comparison expression
+     *
+     * @param node the comparison node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final ComparisonNode node) {
+        final String             identifier = node.getParameter();
+        final FieldDescriptor    field      = compiler.getField(node.getField());
+        final AttributeAccessor  accessor   = compiler.getAccessor(field);
+        final Object             parameter  = parseValue(field, accessor, identifier, getParameter(identifier));
+        final ComparisonOperator operator   = node.getOperator();
+        if (isPrimitive(field, accessor, parameter)) {
+            if (accessor.getLeaf().getLongGetter() != null) {
+                final long value = ((Number) parameter).longValue();
+                return createLongCondition(accessor, attribute -> Values.matches(operator, Long.compare(attribute, value)));
+            }
+            final double value = ((Number) parameter).doubleValue();
+            return createDoubleCondition(accessor, attribute -> Values.matches(operator, Double.compare(attribute, value)));
+        }
+        return createCondition(field, accessor, value -> Values.compare(operator, value, parameter));
+    }
+
+    /**
+     * Compile a BETWEEN expression
+     *
+     * @param node the between node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final BetweenNode node) {
+        final FieldDescriptor   field    = compiler.getField(node.getField());
+        final AttributeAccessor accessor = compiler.getAccessor(field);
+        final Object            lower    = parseValue(field, accessor, node.getLower(), getParameter(node.getLower()));
+        final Object            upper    = parseValue(field, accessor, node.getUpper(), getParameter(node.getUpper()));
+        final boolean           negated  = node.isNegated();
+        if (isPrimitive(field, accessor, lower) && isPrimitive(field, accessor, upper)) {
+            if (accessor.getLeaf().getLongGetter() != null) {
+                final long lowerValue = ((Number) lower).longValue();
+                final long upperValue = ((Number) upper).longValue();
+                return createLongCondition(accessor, attribute -> negated != (attribute >= lowerValue && attribute <= upperValue));
+            }
+            final double lowerValue = ((Number) lower).doubleValue();
+            final double upperValue = ((Number) upper).doubleValue();
+            return createDoubleCondition(accessor, attribute -> negated != (Double.compare(attribute, lowerValue) >= 0
+                    && Double.compare(attribute, upperValue) <= 0));
+        }
+        if (negated) {
+            return createCondition(field, accessor, value -> Values.not(Values.between(value, lower, upper)));
+        }
+        return createCondition(field, accessor, value -> Values.between(value, lower, upper));
+    }
+
+    /**
+     * Compile an IN expression
+     *
+     * @param node the in node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final InNode node) {
+        final String          identifier = node.getParameter();
+        final FieldDescriptor field      = compiler.getField(node.getField());
+        final Object          parameter  = getParameter(identifier);
+        if (parameter instanceof List) {
+            final AttributeAccessor accessor = compiler.getAccessor(field);
+            final List<Object>      values   = new ArrayList<>();
+            for (Object value : (List) parameter) {
+                values.add(parseValue(field, accessor, identifier, value));
+            }
+            if (node.isNegated()) {
+                return createCondition(field, accessor, value -> Values.not(Values.in(value, values)));
+            }
+            return createCondition(field, accessor, value -> Values.in(value, values));
+        } else {
+            throw new InvalidQueryException(format("Expected a list of parameters for parameter: '%s'", field.getName()));
+        }
+    }
+
+    /**
+     * Compile a LIKE expression
+     *
+     * @param node the like node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final LikeNode node) {
+        final String            identifier = node.getParameter();
+        final FieldDescriptor   field      = compiler.getField(node.getField());
+        final AttributeAccessor accessor   = compiler.getAccessor(field);
+        final Pattern           pattern    = Values.toPattern((String) parseValue(field, accessor, identifier, getParameter(identifier)));
+        if (node.isNegated()) {
+            return createCondition(field, accessor, value -> Values.not(Values.like(value, pattern)));
+        }
+        return createCondition(field, accessor, value -> Values.like(value, pattern));
+    }
+
+    /**
+     * Compile a NULL expression
+     *
+     * @param node the null node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final NullNode node) {
+        final FieldDescriptor   field    = compiler.getField(node.getField());
+        final AttributeAccessor accessor = compiler.getAccessor(field);
+        final boolean           negated  = node.isNegated();
+        return createCondition(field, accessor, value -> negated == (value != null));
+    }
+
+    /**
+     * Compile an AND expression: FALSE if a condition is FALSE, otherwise unknown if a condition is unknown
+     *
+     * @param node the and node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final AndNode node) {
+        final Condition[] conditions = compile(node.getChildren());
+        return row -> {
+            Boolean result = Boolean.TRUE;
+            for (final Condition condition : conditions) {
+                final Boolean value = condition.evaluate(row);
+                if (Boolean.FALSE.equals(value)) {
+                    return Boolean.FALSE;
+                }
+                if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Compile an OR expression: TRUE if a condition is TRUE, otherwise unknown if a condition is unknown
+     *
+     * @param node the or node
+     * @return the condition
+     */
+    @Override
+    public Condition visit(final OrNode node) {
+        final Condition[] conditions = compile(node.getChildren());
+        return row -> {
+            Boolean result = Boolean.FALSE;
+            for (final Condition condition : conditions) {
+                final Boolean value = condition.evaluate(row);
+                if (Boolean.TRUE.equals(value)) {
+                    return Boolean.TRUE;
+                }
+                if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Compile a list of expressions
+     *
+     * @param nodes the nodes
+     * @return the conditions
+     */
+    private Condition[] compile(final List<Node> nodes) {
+        final Condition[] conditions = new Condition[nodes.size()];
+        for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = nodes.get(i).accept(this);
+        }
+        return conditions;
+    }
+
+    /**
+     * Create the condition that tests the value of a field
+     * A field of a collection with the {@link CollectionStrategy#EXISTS} strategy is TRUE when the test is TRUE
+     * for one of the elements, otherwise it is FALSE. The other fields are read from the row
+     *
+     * @param field    the field
+     * @param accessor the accessor of the attribute of the field
+     * @param test     the test of the value
+     * @return the condition
+     */
+    private Condition createCondition(final FieldDescriptor field, final AttributeAccessor accessor, final Function<Object, Boolean> test) {
+        if (isExists(field, accessor)) {
+            final Function<Object, Object>[][] steps = split(accessor);
+            return row -> exists(steps, 0, row[0], test);
+        }
+        final int                        slot    = joinCollections(accessor);
+        final Function<Object, Object>[] getters = accessor.getGetters(getLeafStart(accessor), accessor.getSegments().size());
+        return row -> test.apply(AttributeAccessor.navigate(getters, row[slot]));
+    }
+
+    /**
+     * Create the condition that tests the value of a primitive integral attribute without boxing it
+     *
+     * @param accessor the accessor of the attribute of the field
+     * @param test     the test of the value
+     * @return the condition (unknown if the object that declares the attribute is null)
+     */
+    private Condition createLongCondition(final AttributeAccessor accessor, final LongPredicate test) {
+        final int                        slot    = joinCollections(accessor);
+        final Function<Object, Object>[] getters = accessor.getGetters(getLeafStart(accessor), accessor.getSegments().size() - 1);
+        final ToLongFunction<Object>     getter  = accessor.getLeaf().getLongGetter();
+        return row -> {
+            final Object owner = AttributeAccessor.navigate(getters, row[slot]);
+            return owner == null ? null : test.test(getter.applyAsLong(owner));
+        };
+    }
+
+    /**
+     * Create the condition that tests the value of a primitive floating point attribute without boxing it
+     *
+     * @param accessor the accessor of the attribute of the field
+     * @param test     the test of the value
+     * @return the condition (unknown if the object that declares the attribute is null)
+     */
+    private Condition createDoubleCondition(final AttributeAccessor accessor, final DoublePredicate test) {
+        final int                        slot    = joinCollections(accessor);
+        final Function<Object, Object>[] getters = accessor.getGetters(getLeafStart(accessor), accessor.getSegments().size() - 1);
+        final ToDoubleFunction<Object>   getter  = accessor.getLeaf().getDoubleGetter();
+        return row -> {
+            final Object owner = AttributeAccessor.navigate(getters, row[slot]);
+            return owner == null ? null : test.test(getter.applyAsDouble(owner));
+        };
+    }
+
+    /**
+     * Check if the value of a field can be compared with a parameter value without boxing it:
+     * the attribute is primitive, the parameter value has the same kind (integral or floating point)
+     * and the field is not tested with an EXISTS expression
+     *
+     * @param field     the field
+     * @param accessor  the accessor of the attribute of the field
+     * @param parameter the parsed parameter value
+     * @return true if the attribute can be read with a primitive getter
+     */
+    private static boolean isPrimitive(final FieldDescriptor field, final AttributeAccessor accessor, final Object parameter) {
+        if (isExists(field, accessor)) {
+            return false;
+        }
+        final AttributeAccessor.Segment leaf = accessor.getLeaf();
+        return (leaf.getLongGetter() != null && Values.isIntegral(parameter))
+                || (leaf.getDoubleGetter() != null && Values.isFloatingPoint(parameter));
+    }
+
+    /**
+     * Join the collections of the path of a field to the row, unless the same paths have already been joined
+     *
+     * @param accessor the accessor of the attribute of the field
+     * @return the row slot of the object that declares the rest of the path (0 for the root)
+     */
+    private int joinCollections(final AttributeAccessor accessor) {
+        final List<AttributeAccessor.Segment> segments = accessor.getSegments();
+        final StringBuilder path   = new StringBuilder();
+        int                 source = 0;
+        int                 start  = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            path.append(i == 0 ? "" : ".").append(segments.get(i).getName());
+            if (segments.get(i).isCollection()) {
+                source = join(path.toString(), source, accessor.getGetters(start, i + 1));
+                start = i + 1;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Join a collection to the row, unless the same path has already been joined
+     *
+     * @param path    the attribute path of the collection
+     * @param source  the row slot of the object that declares the path to the collection
+     * @param getters the getters from the source object to the collection
+     * @return the row slot of the elements of the collection
+     */
+    private int join(final String path, final int source, final Function<Object, Object>[] getters) {
+        return slots.computeIfAbsent(path, key -> {
+            joinPoints.add(new JoinPoint(source, getters));
+            return joinPoints.size();
+        });
+    }
+
+    /**
+     * Test the values of a path that goes through collections, with the semantics of an EXISTS subquery
+     *
+     * @param steps  the getters of the path split after every collection
+     * @param index  the current step
+     * @param source the object that declares the current step
+     * @param test   the test of the value
+     * @return TRUE if the test is TRUE for a value, otherwise FALSE
+     */
+    private static Boolean exists(final Function<Object, Object>[][] steps, final int index, final Object source,
+                                  final Function<Object, Boolean> test) {
+        final Object value = AttributeAccessor.navigate(steps[index], source);
+        if (index == steps.length - 1) {
+            return Boolean.TRUE.equals(test.apply(value));
+        }
+        final Collection<?> elements = AttributeAccessor.elements(value);
+        if (elements.isEmpty()) {
+            return exists(steps, index + 1, null, test);
+        }
+        for (final Object element : elements) {
+            if (exists(steps, index + 1, element, test)) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Split the getters of a path after every collection
+     *
+     * @param accessor the accessor of the path
+     * @return the getters of every step
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object>[][] split(final AttributeAccessor accessor) {
+        final List<AttributeAccessor.Segment>  segments = accessor.getSegments();
+        final List<Function<Object, Object>[]> steps    = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).isCollection()) {
+                steps.add(accessor.getGetters(start, i + 1));
+                start = i + 1;
+            }
+        }
+        steps.add(accessor.getGetters(start, segments.size()));
+        return steps.toArray(new Function[0][]);
+    }
+
+    /**
+     * Get the index of the first attribute after the last collection of a path
+     *
+     * @param accessor the accessor of the path
+     * @return the index (0 if the path does not go through a collection)
+     */
+    private static int getLeafStart(final AttributeAccessor accessor) {
+        final List<AttributeAccessor.Segment> segments = accessor.getSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).isCollection()) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Check if a field is tested with an EXISTS expression
+     *
+     * @param field    the field
+     * @param accessor the accessor of the attribute of the field
+     * @return true if the path of the field goes through a collection and its strategy is EXISTS
+     */
+    private static boolean isExists(final FieldDescriptor field, final AttributeAccessor accessor) {
+        return accessor.isCollection() && getCollectionStrategy(field) == CollectionStrategy.EXISTS;
+    }
+
+    /**
+     * Get the collection strategy of a field
+     *
+     * @param field the field
+     * @return the strategy of the field or the default strategy if it is null
+     */
+    private static CollectionStrategy getCollectionStrategy(final FieldDescriptor field) {
+        final CollectionStrategy strategy = field.getCollectionStrategy();
+        return strategy == null ? AttributeMapper.getDefaultCollectionStrategy() : strategy;
+    }
+
+    /**
+     * Get a parameter
+     *
+     * @param name parameter name
+     * @return the parameter value
+     */
+    private Object getParameter(final String name) {
+        if (parameters.containsKey(name)) {
+            return parameters.get(name);
+        }
+        throw new InvalidQueryException("Parameter " + name + " not found in the bound parameters");
+    }
+
+    /**
+     * Parse a parameter value into the type of the attribute of a field
+     *
+     * @param field     the field
+     * @param accessor  the accessor of the attribute of the field
+     * @param parameter the name of the parameter
+     * @param value     the value of the parameter
+     * @return the parsed value
+     */
+    private Object parseValue(final FieldDescriptor field, final AttributeAccessor accessor, final String parameter, final Object value) {
+        return AbstractQueryParser.coerceValue(compiler.getValueParsers(), field.getValueParser(), accessor.getType(), parameter, value);
+    }
+}
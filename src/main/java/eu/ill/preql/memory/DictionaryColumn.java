@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * A column of comparable values (strings, dates, decimals...) encoded with a sorted dictionary:
+ * the distinct values are held once, in order, and every row holds the code (the index in the dictionary) of its value.
+ * A comparison with a parameter value is translated into a range of codes, so the values are only compared
+ * with the parameter value to find the bounds of the range
+ *
+ * @author Jamie Hall
+ */
+final class DictionaryColumn extends Column {
+
+    private final Object[] dictionary;
+    private final int[]    codes;
+
+    /**
+     * @param values the values of the rows
+     */
+    DictionaryColumn(final Object[] values) {
+        super(values);
+        final TreeSet<Object> distinct = new TreeSet<>(Values::compareTo);
+        for (final Object value : values) {
+            if (value != null) {
+                distinct.add(value);
+            }
+        }
+        this.dictionary = distinct.toArray();
+        this.codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            codes[i] = values[i] == null ? -1 : lowerBound(values[i]);
+        }
+    }
+
+    @Override
+    BitSet compare(final ComparisonOperator operator, final Object parameter) {
+        final int lower = lowerBound(parameter);
+        final int upper = upperBound(parameter);
+        switch (operator) {
+            case EQ:
+                return range(lower, upper);
+            case NOT_EQ:
+                return complement(range(lower, upper));
+            case GT:
+                return range(upper, dictionary.length);
+            case GT_EQ:
+                return range(lower, dictionary.length);
+            case LT:
+                return range(0, lower);
+            case LT_EQ:
+                return range(0, upper);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    BitSet between(final Object lower, final Object upper) {
+        return range(lowerBound(lower), upperBound(upper));
+    }
+
+    @Override
+    BitSet in(final List<Object> parameters) {
+        final boolean[] members = new boolean[dictionary.length];
+        for (final Object parameter : parameters) {
+            final int lower = lowerBound(parameter);
+            final int upper = upperBound(parameter);
+            for (int code = lower; code < upper; code++) {
+                members[code] = true;
+            }
+        }
+        return members(members);
+    }
+
+    @Override
+    BitSet like(final Pattern pattern) {
+        final boolean[] members = new boolean[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++) {
+            members[code] = Values.like(dictionary[code], pattern);
+        }
+        return members(members);
+    }
+
+    /**
+     * Get the rows whose code is in a range
+     *
+     * @param from the first code (inclusive)
+     * @param to   the last code (exclusive)
+     * @return the matching rows
+     */
+    private BitSet range(final int from, final int to) {
+        final long[] words = createWords();
+        if (from < to) {
+            for (int i = 0; i < size; i++) {
+                words[i >>> 6] |= (codes[i] >= from && codes[i] < to ? 1L : 0L) << i;
+            }
+        }
+        return toBitSet(words);
+    }
+
+    /**
+     * Get the rows whose code is a member of a set of codes
+     *
+     * @param members the membership of every code
+     * @return the matching rows
+     */
+    private BitSet members(final boolean[] members) {
+        final long[] words = createWords();
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (codes[i] >= 0 && members[codes[i]] ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+
+    /**
+     * Find the first code whose value is greater than or equal to a value
+     *
+     * @param value the value
+     * @return the code (the size of the dictionary if all the values are less than the value)
+     */
+    private int lowerBound(final Object value) {
+        int low  = 0;
+        int high = dictionary.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (Values.compareTo(dictionary[middle], value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first code whose value is greater than a value
+     *
+     * @param value the value
+     * @return the code (the size of the dictionary if all the values are less than or equal to the value)
+     */
+    private int upperBound(final Object value) {
+        int low  = 0;
+        int high = dictionary.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (Values.compareTo(dictionary[middle], value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
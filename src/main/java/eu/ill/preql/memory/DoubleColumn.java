@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column of floating point values (double and float) held in a primitive array
+ * The values are compared like {@link Double#compare(double, double)}
+ *
+ * @author Jamie Hall
+ */
+final class DoubleColumn extends Column {
+
+    private final double[] values;
+
+    /**
+     * @param values the values of the rows
+     */
+    DoubleColumn(final Object[] values) {
+        super(values);
+        this.values = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) {
+                this.values[i] = ((Number) values[i]).doubleValue();
+            }
+        }
+    }
+
+    @Override
+    BitSet compare(final ComparisonOperator operator, final Object parameter) {
+        if (!Values.isFloatingPoint(parameter)) {
+            return null;
+        }
+        final double value = ((Number) parameter).doubleValue();
+        final long[] words = createWords();
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (Values.matches(operator, Double.compare(values[i], value)) ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+
+    @Override
+    BitSet between(final Object lower, final Object upper) {
+        if (!Values.isFloatingPoint(lower) || !Values.isFloatingPoint(upper)) {
+            return null;
+        }
+        final double lowerValue = ((Number) lower).doubleValue();
+        final double upperValue = ((Number) upper).doubleValue();
+        final long[] words      = createWords();
+        for (int i = 0; i < size; i++) {
+            final boolean match = Double.compare(values[i], lowerValue) >= 0 && Double.compare(values[i], upperValue) <= 0;
+            words[i >>> 6] |= (match ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+
+    @Override
+    BitSet in(final List<Object> parameters) {
+        final double[] members = new double[parameters.size()];
+        for (int i = 0; i < members.length; i++) {
+            if (!Values.isFloatingPoint(parameters.get(i))) {
+                return null;
+            }
+            members[i] = ((Number) parameters.get(i)).doubleValue();
+        }
+        Arrays.sort(members);
+        final long[] words = createWords();
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (Arrays.binarySearch(members, values[i]) >= 0 ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ParsedQuery;
+import eu.ill.preql.support.Pagination;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query that filters, orders and paginates objects that are already in memory (for example cached results),
+ * with the semantics of the filter query with the same query, parameters, order and pagination.
+ * The query is parsed once and can be executed on any number of collections, sequentially or in parallel
+ * on a fork/join pool
+ *
+ * @param <E> the root object type
+ * @author Jamie Hall
+ */
+public final class InMemoryQuery<E> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final PredicateCompiler<E> compiler;
+    private final ParsedQuery          query;
+    private final Map<String, Object>  parameters = new LinkedHashMap<>();
+    private       Comparator<E>        order;
+    private       Pagination           pagination = Pagination.DEFAULT;
+    private       boolean              parallel;
+    private       ForkJoinPool         pool;
+    private       int                  chunkSize  = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param compiler the compiler of the predicate and the order
+     * @param query    the parsed query
+     */
+    InMemoryQuery(final PredicateCompiler<E> compiler, final ParsedQuery query) {
+        this.compiler = compiler;
+        this.query = query;
+    }
+
+    /**
+     * Bind an argument value to a named parameter
+     *
+     * @param name  the parameter name
+     * @param value the parameter value
+     * @return this
+     */
+    public InMemoryQuery<E> setParameter(final String name, final Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    /**
+     * Set the bound parameters
+     *
+     * @param parameters the parameters to be bound
+     * @return this
+     */
+    public InMemoryQuery<E> setParameters(final Map<String, Object> parameters) {
+        parameters.forEach(this::setParameter);
+        return this;
+    }
+
+    /**
+     * Set the order field
+     *
+     * @param name      order field name
+     * @param direction the direction (asc or desc)
+     * @return this
+     */
+    public InMemoryQuery<E> setOrder(final String name, final String direction) {
+        this.order = compiler.compileOrder(name, direction);
+        return this;
+    }
+
+    /**
+     * Set the pagination
+     *
+     * @param pagination the pagination
+     * @return this
+     */
+    public InMemoryQuery<E> setPagination(final Pagination pagination) {
+        this.pagination = requireNonNull(pagination, "Pagination cannot be null");
+        return this;
+    }
+
+    /**
+     * Enable or disable the parallel execution of the query
+     * The objects are split into chunks that are filtered (and then sorted) by the tasks of the fork/join pool
+     *
+     * @param parallel true to execute the query in parallel
+     * @return this
+     */
+    public InMemoryQuery<E> setParallel(final boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * Set the fork/join pool of the parallel execution
+     *
+     * @param pool the pool (null for the common pool)
+     * @return this
+     */
+    public InMemoryQuery<E> setForkJoinPool(final ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of objects filtered by a task of the parallel execution
+     * By default, the objects are filtered in chunks of 1024 objects
+     *
+     * @param chunkSize the chunk size
+     * @return this
+     */
+    public InMemoryQuery<E> setChunkSize(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new InvalidQueryException("Chunk size must be a positive value");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Compile the query and the bound parameters into a predicate
+     *
+     * @return the predicate
+     */
+    public CompiledPredicate<E> getPredicate() {
+        return compiler.compile(query, parameters);
+    }
+
+    /**
+     * Get the comparator of the order field
+     *
+     * @return the comparator or null if the query is not ordered
+     */
+    public Comparator<E> getOrder() {
+        return order;
+    }
+
+    /**
+     * Filter, order and paginate objects
+     * The matching objects keep the encounter order of the collection, also when the query is executed in parallel,
+     * and the ordered objects with the same order value keep their relative order
+     *
+     * @param objects the objects
+     * @return the matching objects
+     */
+    public List<E> getResultList(final Collection<? extends E> objects) {
+        final CompiledPredicate<E> predicate = getPredicate();
+        List<E> results;
+        if (parallel) {
+            results = ParallelFilter.filter(getPool(), objects, predicate, chunkSize);
+            if (order != null) {
+                results = ParallelFilter.sort(getPool(), results, order);
+            }
+        } else {
+            results = new ArrayList<>();
+            for (final E object : objects) {
+                if (predicate.test(object)) {
+                    results.add(object);
+                }
+            }
+            if (order != null) {
+                results.sort(order);
+            }
+        }
+        final int offset = Math.min(pagination.getOffset(), results.size());
+        final int limit  = (int) Math.min((long) offset + pagination.getLimit(), results.size());
+        return offset == 0 && limit == results.size() ? results : new ArrayList<>(results.subList(offset, limit));
+    }
+
+    /**
+     * Count the objects that match the query
+     *
+     * @param objects the objects
+     * @return the number of matching objects
+     */
+    public long count(final Collection<? extends E> objects) {
+        final CompiledPredicate<E> predicate = getPredicate();
+        if (parallel) {
+            return ParallelFilter.count(getPool(), objects, predicate, chunkSize);
+        }
+        long count = 0;
+        for (final E object : objects) {
+            if (predicate.test(object)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the fork/join pool of the parallel execution
+     *
+     * @return the pool of the query or the common pool
+     */
+    private ForkJoinPool getPool() {
+        return pool == null ? ForkJoinPool.commonPool() : pool;
+    }
+}
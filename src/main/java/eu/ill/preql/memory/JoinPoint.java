@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * A collection joined to the root of an in memory query: the equivalent of a LEFT JOIN.
+ * The collection is read from the row slot of its source (the root or another joined collection)
+ *
+ * @author Jamie Hall
+ */
+final class JoinPoint {
+    private final int                        source;
+    private final Function<Object, Object>[] getters;
+
+    /**
+     * @param source  the row slot of the object that declares the path to the collection
+     * @param getters the getters from the source object to the collection
+     */
+    JoinPoint(final int source, final Function<Object, Object>[] getters) {
+        this.source = source;
+        this.getters = getters;
+    }
+
+    /**
+     * Get the elements of the collection for a row
+     *
+     * @param row the row whose source slot has been filled
+     * @return the elements (empty if the source or the collection is null)
+     */
+    Collection<?> elements(final Object[] row) {
+        return AttributeAccessor.elements(AttributeAccessor.navigate(getters, row[source]));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column of integral values (long, int, short and byte) held in a primitive array
+ *
+ * @author Jamie Hall
+ */
+final class LongColumn extends Column {
+
+    private final long[] values;
+
+    /**
+     * @param values the values of the rows
+     */
+    LongColumn(final Object[] values) {
+        super(values);
+        this.values = new long[size];
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) {
+                this.values[i] = ((Number) values[i]).longValue();
+            }
+        }
+    }
+
+    @Override
+    BitSet compare(final ComparisonOperator operator, final Object parameter) {
+        if (!Values.isIntegral(parameter)) {
+            return null;
+        }
+        final long   value = ((Number) parameter).longValue();
+        final long[] words = createWords();
+        switch (operator) {
+            case EQ:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] == value ? 1L : 0L) << i;
+                }
+                break;
+            case NOT_EQ:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] != value ? 1L : 0L) << i;
+                }
+                break;
+            case GT:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] > value ? 1L : 0L) << i;
+                }
+                break;
+            case GT_EQ:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] >= value ? 1L : 0L) << i;
+                }
+                break;
+            case LT:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] < value ? 1L : 0L) << i;
+                }
+                break;
+            case LT_EQ:
+                for (int i = 0; i < size; i++) {
+                    words[i >>> 6] |= (values[i] <= value ? 1L : 0L) << i;
+                }
+                break;
+            default:
+                return null;
+        }
+        return toBitSet(words);
+    }
+
+    @Override
+    BitSet between(final Object lower, final Object upper) {
+        if (!Values.isIntegral(lower) || !Values.isIntegral(upper)) {
+            return null;
+        }
+        final long   lowerValue = ((Number) lower).longValue();
+        final long   upperValue = ((Number) upper).longValue();
+        final long[] words      = createWords();
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (values[i] >= lowerValue && values[i] <= upperValue ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+
+    @Override
+    BitSet in(final List<Object> parameters) {
+        final long[] members = new long[parameters.size()];
+        for (int i = 0; i < members.length; i++) {
+            if (!Values.isIntegral(parameters.get(i))) {
+                return null;
+            }
+            members[i] = ((Number) parameters.get(i)).longValue();
+        }
+        Arrays.sort(members);
+        final long[] words = createWords();
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (Arrays.binarySearch(members, values[i]) >= 0 ? 1L : 0L) << i;
+        }
+        return toBitSet(words);
+    }
+}
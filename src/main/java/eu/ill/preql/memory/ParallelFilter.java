@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Filters and sorts a collection in parallel on a fork/join pool.
+ * The spliterator of the collection is split until its chunks are not larger than the chunk size,
+ * each chunk is filtered by a task and the results of the chunks are concatenated in their encounter order
+ *
+ * @author Jamie Hall
+ */
+final class ParallelFilter {
+
+    private ParallelFilter() {
+    }
+
+    /**
+     * Filter a collection
+     *
+     * @param pool      the fork/join pool
+     * @param objects   the objects
+     * @param predicate the predicate
+     * @param chunkSize the maximum number of objects filtered by a task
+     * @param <E>       the object type
+     * @return the matching objects, in the encounter order of the collection
+     */
+    static <E> List<E> filter(final ForkJoinPool pool, final Collection<? extends E> objects,
+                              final Predicate<? super E> predicate, final int chunkSize) {
+        return pool.invoke(new FilterTask<E>(objects.spliterator(), predicate, chunkSize));
+    }
+
+    /**
+     * Count the objects of a collection that match a predicate
+     *
+     * @param pool      the fork/join pool
+     * @param objects   the objects
+     * @param predicate the predicate
+     * @param chunkSize the maximum number of objects counted by a task
+     * @param <E>       the object type
+     * @return the number of matching objects
+     */
+    static <E> long count(final ForkJoinPool pool, final Collection<? extends E> objects,
+                          final Predicate<? super E> predicate, final int chunkSize) {
+        return pool.invoke(new CountTask<E>(objects.spliterator(), predicate, chunkSize));
+    }
+
+    /**
+     * Sort a list with a stable parallel merge sort on a fork/join pool
+     * The objects that are equal according to the comparator keep their encounter order
+     *
+     * @param pool    the fork/join pool
+     * @param objects the objects
+     * @param order   the comparator
+     * @param <E>     the object type
+     * @return the sorted objects
+     */
+    @SuppressWarnings("unchecked")
+    static <E> List<E> sort(final ForkJoinPool pool, final List<E> objects, final Comparator<? super E> order) {
+        final E[] array = (E[]) objects.toArray();
+        pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(array, order)));
+        return new ArrayList<>(Arrays.asList(array));
+    }
+
+    /**
+     * Filters a chunk of a collection, or splits it in two tasks
+     *
+     * @param <E> the object type
+     */
+    private static final class FilterTask<E> extends RecursiveTask<List<E>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<? extends E> spliterator;
+        private final Predicate<? super E>     predicate;
+        private final int                      chunkSize;
+
+        FilterTask(final Spliterator<? extends E> spliterator, final Predicate<? super E> predicate, final int chunkSize) {
+            this.spliterator = spliterator;
+            this.predicate = predicate;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected List<E> compute() {
+            final Spliterator<? extends E> prefix = spliterator.estimateSize() > chunkSize ? spliterator.trySplit() : null;
+            if (prefix != null) {
+                final FilterTask<E> left = new FilterTask<>(prefix, predicate, chunkSize);
+                left.fork();
+                final List<E> right   = new FilterTask<E>(spliterator, predicate, chunkSize).compute();
+                final List<E> results = left.join();
+                results.addAll(right);
+                return results;
+            }
+            final List<E> results = new ArrayList<>();
+            spliterator.forEachRemaining(object -> {
+                if (predicate.test(object)) {
+                    results.add(object);
+                }
+            });
+            return results;
+        }
+    }
+
+    /**
+     * Counts the matching objects of a chunk of a collection, or splits it in two tasks
+     *
+     * @param <E> the object type
+     */
+    private static final class CountTask<E> extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<? extends E> spliterator;
+        private final Predicate<? super E>     predicate;
+        private final int                      chunkSize;
+
+        CountTask(final Spliterator<? extends E> spliterator, final Predicate<? super E> predicate, final int chunkSize) {
+            this.spliterator = spliterator;
+            this.predicate = predicate;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected Long compute() {
+            final Spliterator<? extends E> prefix = spliterator.estimateSize() > chunkSize ? spliterator.trySplit() : null;
+            if (prefix != null) {
+                final CountTask<E> left = new CountTask<>(prefix, predicate, chunkSize);
+                left.fork();
+                final long right = new CountTask<E>(spliterator, predicate, chunkSize).compute();
+                return left.join() + right;
+            }
+            final long[] count = {0};
+            spliterator.forEachRemaining(object -> {
+                if (predicate.test(object)) {
+                    count[0]++;
+                }
+            });
+            return count[0];
+        }
+    }
+}
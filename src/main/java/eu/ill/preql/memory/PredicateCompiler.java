@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.AbstractQueryParser;
+import eu.ill.preql.parser.ParsedQuery;
+import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.parser.ValueParsers;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.support.FieldDescriptor;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.Metamodel;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compiles queries into predicates that filter objects in memory, without a database round trip,
+ * and order fields into comparators that sort them.
+ * The queries have the same grammar, fields and parameter coercion as the filter queries. The attribute paths
+ * of the fields are resolved once per attribute (with the JPA metamodel when it is given) into generated accessors.
+ * A compiler is thread safe and can be shared between concurrent requests
+ *
+ * @param <E> the root object type
+ * @author Jamie Hall
+ */
+public final class PredicateCompiler<E> {
+
+    private final Class<E>                       objectType;
+    private final Map<String, FieldDescriptor>   fields;
+    private final Metamodel                      metamodel;
+    private final ValueParsers                   valueParsers = new ValueParsers();
+    private final Map<String, AttributeAccessor> accessors    = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectType the root object type
+     * @param fields     the field descriptors indexed by field name
+     */
+    public PredicateCompiler(final Class<E> objectType, final Map<String, FieldDescriptor> fields) {
+        this(objectType, fields, null);
+    }
+
+    /**
+     * @param objectType the root object type
+     * @param fields     the field descriptors indexed by field name
+     * @param metamodel  the metamodel used to resolve the attributes of the managed types (can be null)
+     */
+    public PredicateCompiler(final Class<E> objectType, final Map<String, FieldDescriptor> fields, final Metamodel metamodel) {
+        this.objectType = requireNonNull(objectType, "Object type cannot be null");
+        this.fields = requireNonNull(fields, "Fields cannot be null");
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * Create a new in memory query
+     *
+     * @param preql the query (null for a query that matches every object)
+     * @return the query
+     */
+    public InMemoryQuery<E> createQuery(final String preql) {
+        return new InMemoryQuery<>(this, QueryParser.parseQuery(preql));
+    }
+
+    /**
+     * Create a new snapshot index of the objects returned by a loader
+     * The snapshot is loaded on the first query
+     *
+     * @param loader the loader of the objects
+     * @return the snapshot index
+     */
+    public SnapshotIndex<E> createSnapshotIndex(final Supplier<? extends Collection<? extends E>> loader) {
+        return new SnapshotIndex<>(this, loader);
+    }
+
+    /**
+     * Compile a query into a predicate
+     *
+     * @param preql      the query (null for a predicate that matches every object)
+     * @param parameters the parameter values
+     * @return the predicate
+     */
+    public CompiledPredicate<E> compile(final String preql, final Map<String, Object> parameters) {
+        return compile(QueryParser.parseQuery(preql), parameters);
+    }
+
+    /**
+     * Compile a parsed query into a predicate
+     *
+     * @param query      the parsed query
+     * @param parameters the parameter values
+     * @return the predicate
+     */
+    public CompiledPredicate<E> compile(final ParsedQuery query, final Map<String, Object> parameters) {
+        if (query.isEmpty()) {
+            return new CompiledPredicate<>(query, new JoinPoint[0], null);
+        }
+        try {
+            final Node expression = query.getExpression();
+            AbstractQueryParser.checkMaxExpressions(expression);
+
+            final QueryEvent       event     = QueryObservers.start(QueryPhase.COMPILE);
+            final ConditionVisitor visitor   = new ConditionVisitor(this, parameters == null ? emptyMap() : parameters);
+            final Condition        condition = expression.accept(visitor);
+            QueryObservers.complete(event, query, null, -1);
+            return new CompiledPredicate<>(query, visitor.getJoinPoints(), condition);
+        } catch (InvalidQueryException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new InvalidQueryException("Failed to parse query", exception);
+        }
+    }
+
+    /**
+     * Compile an order field into a comparator
+     * Null values are ordered before the other values. The objects with the same value are ordered
+     * by their identifier (in the same direction) when the root object type is an entity
+     *
+     * @param name      order field name
+     * @param direction the direction (asc or desc)
+     * @return the comparator
+     */
+    public Comparator<E> compileOrder(final String name, final String direction) {
+        if (!direction.matches("^(asc|desc)$")) {
+            throw new InvalidQueryException("Order direction must be asc or desc");
+        }
+        final FieldDescriptor field = fields.get(name);
+        if (field == null || !field.isOrderable()) {
+            throw new InvalidQueryException(format("Order field %s does not exist", name));
+        }
+        Comparator<Object> comparator = createComparator(getAccessor(field));
+        final String id = getIdAttribute();
+        if (id != null && !id.equals(field.getAttribute())) {
+            comparator = comparator.thenComparing(createComparator(getAccessor(id)));
+        }
+        final Comparator<Object> ordered = "asc".equals(direction) ? comparator : comparator.reversed();
+        return ordered::compare;
+    }
+
+    /**
+     * Read the values of all the fields of objects, so that they can be queried in memory once they are detached:
+     * the lazy associations and collections that the fields go through are initialized
+     *
+     * @param objects the objects
+     */
+    public void initialize(final Collection<? extends E> objects) {
+        for (final FieldDescriptor field : fields.values()) {
+            final AttributeAccessor accessor = getAccessor(field);
+            for (final E object : objects) {
+                accessor.load(object);
+            }
+        }
+    }
+
+    /**
+     * Get the root object type
+     *
+     * @return the object type
+     */
+    public Class<E> getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * Get the fields
+     *
+     * @return the field descriptors
+     */
+    Collection<FieldDescriptor> getFields() {
+        return fields.values();
+    }
+
+    /**
+     * Get a field for a given name
+     *
+     * @param name the name of the field
+     * @return the field descriptor
+     */
+    FieldDescriptor getField(final String name) {
+        final FieldDescriptor field = fields.get(name);
+        if (field == null) {
+            throw new InvalidQueryException(format("Field %s does not exist", name));
+        }
+        return field;
+    }
+
+    /**
+     * Get the accessor of the attribute of a field
+     * The accessors are resolved once per attribute
+     *
+     * @param field the field
+     * @return the accessor
+     */
+    AttributeAccessor getAccessor(final FieldDescriptor field) {
+        return getAccessor(field.getAttribute());
+    }
+
+    /**
+     * Get the accessor of an attribute path
+     *
+     * @param attribute the attribute path
+     * @return the accessor
+     */
+    private AttributeAccessor getAccessor(final String attribute) {
+        return accessors.computeIfAbsent(attribute, path -> AttributeAccessor.resolve(metamodel, objectType, path));
+    }
+
+    /**
+     * Get the name of the identifier attribute of the root object type
+     *
+     * @return the name or null if the type is not an entity with a single identifier attribute
+     */
+    private String getIdAttribute() {
+        if (metamodel == null) {
+            return null;
+        }
+        try {
+            final EntityType<E> entity = metamodel.entity(objectType);
+            if (!entity.hasSingleIdAttribute()) {
+                return null;
+            }
+            return entity.getId(entity.getIdType().getJavaType()).getName();
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the comparator of the values of an attribute path in ascending order, with the null values first
+     * Primitive attributes are compared without being boxed
+     *
+     * @param accessor the accessor of the attribute path
+     * @return the comparator of the root objects
+     */
+    private static Comparator<Object> createComparator(final AttributeAccessor accessor) {
+        if (accessor.isCollection()) {
+            throw new InvalidQueryException(format("Cannot order by the collection attribute %s", accessor.getAttribute()));
+        }
+        final int                        size    = accessor.getSegments().size();
+        final Function<Object, Object>[] owners  = accessor.getGetters(0, size - 1);
+        final ToLongFunction<Object>     longs   = accessor.getLeaf().getLongGetter();
+        final ToDoubleFunction<Object>   doubles = accessor.getLeaf().getDoubleGetter();
+        if (longs != null) {
+            return (first, second) -> {
+                final Object firstOwner  = AttributeAccessor.navigate(owners, first);
+                final Object secondOwner = AttributeAccessor.navigate(owners, second);
+                if (firstOwner == null || secondOwner == null) {
+                    return compareNullable(firstOwner, secondOwner);
+                }
+                return Long.compare(longs.applyAsLong(firstOwner), longs.applyAsLong(secondOwner));
+            };
+        }
+        if (doubles != null) {
+            return (first, second) -> {
+                final Object firstOwner  = AttributeAccessor.navigate(owners, first);
+                final Object secondOwner = AttributeAccessor.navigate(owners, second);
+                if (firstOwner == null || secondOwner == null) {
+                    return compareNullable(firstOwner, secondOwner);
+                }
+                return Double.compare(doubles.applyAsDouble(firstOwner), doubles.applyAsDouble(secondOwner));
+            };
+        }
+        final Function<Object, Object>[] getters = accessor.getGetters(0, size);
+        return (first, second) -> compareNullable(AttributeAccessor.navigate(getters, first), AttributeAccessor.navigate(getters, second));
+    }
+
+    /**
+     * Compare two values that can be null, the null values first
+     *
+     * @param first  the first value
+     * @param second the second value
+     * @return a negative integer, zero, or a positive integer as the first value is less than, equal to, or greater than the second
+     */
+    private static int compareNullable(final Object first, final Object second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        if (second == null) {
+            return 1;
+        }
+        return Values.compareTo(first, second);
+    }
+
+    /**
+     * Get the value parsers used to coerce the parameter values
+     *
+     * @return the value parsers
+     */
+    ValueParsers getValueParsers() {
+        return valueParsers;
+    }
+}
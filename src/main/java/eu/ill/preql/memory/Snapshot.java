@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.support.FieldDescriptor;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * An immutable snapshot of objects: the objects and a column of values for every field that is not a collection
+ *
+ * @author Jamie Hall
+ */
+final class Snapshot {
+
+    private final Object[]            rows;
+    private final Map<String, Column> columns;
+
+    private Snapshot(final Object[] rows, final Map<String, Column> columns) {
+        this.rows = rows;
+        this.columns = unmodifiableMap(columns);
+    }
+
+    /**
+     * Load a snapshot of objects
+     *
+     * @param compiler the compiler that resolves the fields
+     * @param fields   the fields indexed by name
+     * @param objects  the objects
+     * @return the snapshot
+     */
+    static Snapshot load(final PredicateCompiler<?> compiler, final Collection<FieldDescriptor> fields, final Collection<?> objects) {
+        final Object[]            rows    = objects.toArray();
+        final Map<String, Column> columns = new HashMap<>();
+        for (final FieldDescriptor field : fields) {
+            final AttributeAccessor accessor = compiler.getAccessor(field);
+            if (accessor.isCollection()) {
+                continue;
+            }
+            final Function<Object, Object>[] getters = accessor.getGetters(0, accessor.getSegments().size());
+            final Object[] values = new Object[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                values[i] = AttributeAccessor.navigate(getters, rows[i]);
+            }
+            final Column column = Column.create(accessor.getType(), values);
+            if (column != null) {
+                columns.put(field.getName(), column);
+            }
+        }
+        return new Snapshot(rows, columns);
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * Get the object of a row
+     *
+     * @param index the index of the row
+     * @return the object
+     */
+    Object getRow(final int index) {
+        return rows[index];
+    }
+
+    /**
+     * Get the column of a field
+     *
+     * @param name the name of the field
+     * @return the column or null if the values of the field are not held in a column
+     */
+    Column getColumn(final String name) {
+        return columns.get(name);
+    }
+
+    /**
+     * Get all the rows
+     *
+     * @return the bitmap of all the rows
+     */
+    BitSet getAll() {
+        final BitSet all = new BitSet(rows.length);
+        all.set(0, rows.length);
+        return all;
+    }
+}
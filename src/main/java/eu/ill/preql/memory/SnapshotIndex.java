@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.ParsedQuery;
+import eu.ill.preql.parser.QueryParser;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An index that holds a snapshot of objects as columns of the values of the registered fields:
+ * the integral and floating point values in primitive arrays, the booleans and the null values in bitmaps
+ * and the other comparable values (strings, dates, enums...) in dictionary encoded columns.
+ * The comparisons, BETWEEN, IN, LIKE and NULL expressions of a query are evaluated on the whole columns as bitmap operations,
+ * the expressions that cannot be evaluated on a column are evaluated row by row.
+ * <p>
+ * The snapshot is loaded on the first query and is not updated when the objects change: it is reloaded by {@link #refresh()},
+ * or on the next query after {@link #invalidate()}. The index can be shared between threads
+ *
+ * @param <E> the root object type
+ * @author Jamie Hall
+ */
+public final class SnapshotIndex<E> {
+
+    private final    PredicateCompiler<E>                        compiler;
+    private final    Supplier<? extends Collection<? extends E>> loader;
+    private final    Object                                      loading = new Object();
+    private volatile Snapshot                                    snapshot;
+    private          long                                        generation;
+
+    /**
+     * @param compiler the compiler of the queries
+     * @param loader   the loader of the objects of the snapshot
+     */
+    SnapshotIndex(final PredicateCompiler<E> compiler, final Supplier<? extends Collection<? extends E>> loader) {
+        this.compiler = compiler;
+        this.loader = requireNonNull(loader, "Loader cannot be null");
+    }
+
+    /**
+     * Reload the snapshot from the loader
+     * The loaded snapshot is discarded if the index has been invalidated or refreshed again while it was loaded
+     *
+     * @return this
+     */
+    public SnapshotIndex<E> refresh() {
+        load();
+        return this;
+    }
+
+    /**
+     * Replace the snapshot with the given objects
+     *
+     * @param objects the objects
+     * @return this
+     */
+    public SnapshotIndex<E> refresh(final Collection<? extends E> objects) {
+        final Snapshot loaded = Snapshot.load(compiler, compiler.getFields(), requireNonNull(objects, "Objects cannot be null"));
+        synchronized (this) {
+            generation++;
+            snapshot = loaded;
+        }
+        return this;
+    }
+
+    /**
+     * Invalidate the snapshot: it is reloaded from the loader on the next query.
+     * A snapshot that is being loaded is discarded once loaded
+     */
+    public synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    /**
+     * Get the number of objects of the snapshot (the snapshot is loaded if it has been invalidated)
+     *
+     * @return the number of objects
+     */
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    /**
+     * Get the objects of the snapshot that match a query, in the order of the snapshot
+     *
+     * @param preql      the query (null for every object)
+     * @param parameters the parameter values
+     * @return the matching objects
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> getResultList(final String preql, final Map<String, Object> parameters) {
+        final Snapshot snapshot = getSnapshot();
+        final BitSet   matches  = filter(snapshot, preql, parameters);
+        final List<E>  results  = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            results.add((E) snapshot.getRow(i));
+        }
+        return results;
+    }
+
+    /**
+     * Count the objects of the snapshot that match a query
+     *
+     * @param preql      the query (null for every object)
+     * @param parameters the parameter values
+     * @return the number of matching objects
+     */
+    public long count(final String preql, final Map<String, Object> parameters) {
+        return filter(getSnapshot(), preql, parameters).cardinality();
+    }
+
+    /**
+     * Get the snapshot, loading it if it has been invalidated
+     * The queries that find the snapshot invalidated wait for a single load
+     *
+     * @return the snapshot
+     */
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (loading) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Load a snapshot from the loader and replace the current snapshot with it, unless the index has been
+     * invalidated or refreshed since the load started: the loaded snapshot would then be older than the change
+     *
+     * @return the loaded snapshot
+     */
+    private Snapshot load() {
+        final long started;
+        synchronized (this) {
+            started = ++generation;
+        }
+        final Snapshot loaded = Snapshot.load(compiler, compiler.getFields(), requireNonNull(loader.get(), "Objects cannot be null"));
+        synchronized (this) {
+            if (generation == started) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Filter the rows of a snapshot
+     * The query is compiled first so that it is validated as an in memory query. A query that joins a collection
+     * is evaluated row by row, because its expressions are evaluated on the same combinations of elements
+     *
+     * @param snapshot   the snapshot
+     * @param preql      the query
+     * @param parameters the parameter values
+     * @return the matching rows
+     */
+    @SuppressWarnings("unchecked")
+    private BitSet filter(final Snapshot snapshot, final String preql, final Map<String, Object> parameters) {
+        final ParsedQuery          query     = QueryParser.parseQuery(preql);
+        final Map<String, Object>  values    = parameters == null ? emptyMap() : parameters;
+        final CompiledPredicate<E> predicate = compiler.compile(query, values);
+        if (query.isEmpty()) {
+            return snapshot.getAll();
+        }
+        final QueryEvent event = QueryObservers.start(QueryPhase.SELECT);
+        final BitSet     matches;
+        if (predicate.isJoined()) {
+            matches = new BitSet(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (predicate.test((E) snapshot.getRow(i))) {
+                    matches.set(i);
+                }
+            }
+        } else {
+            matches = query.getExpression().accept(new BitmapVisitor(compiler, values, snapshot)).getMatches();
+        }
+        QueryObservers.complete(event, query, null, matches.cardinality());
+        return matches;
+    }
+}
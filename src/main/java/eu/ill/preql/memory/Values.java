@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ast.ComparisonOperator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Evaluates the operators of a query on attribute values with the semantics of SQL:
+ * a comparison with a null value is unknown (null)
+ *
+ * @author Jamie Hall
+ */
+final class Values {
+
+    private static final String REGEX_META_CHARACTERS = "\\.[]{}()<>*+-=!?^$|";
+
+    private Values() {
+    }
+
+    /**
+     * Compare a value with a parameter value
+     *
+     * @param operator  the comparison operator
+     * @param value     the attribute value
+     * @param parameter the parsed parameter value
+     * @return TRUE, FALSE or null if the value is null
+     */
+    static Boolean compare(final ComparisonOperator operator, final Object value, final Object parameter) {
+        if (value == null) {
+            return null;
+        }
+        switch (operator) {
+            case EQ:
+                return isEqual(value, parameter);
+            case NOT_EQ:
+                return !isEqual(value, parameter);
+            case GT:
+                return compareTo(value, parameter) > 0;
+            case GT_EQ:
+                return compareTo(value, parameter) >= 0;
+            case LT:
+                return compareTo(value, parameter) < 0;
+            case LT_EQ:
+                return compareTo(value, parameter) <= 0;
+            default:
+                throw new InvalidQueryException("Unexpected comparison operator");
+        }
+    }
+
+    /**
+     * Check if the result of a comparison satisfies a comparison operator
+     *
+     * @param operator   the comparison operator
+     * @param comparison a negative integer, zero, or a positive integer as the value is less than, equal to, or greater than the parameter
+     * @return true if the comparison satisfies the operator
+     */
+    static boolean matches(final ComparisonOperator operator, final int comparison) {
+        switch (operator) {
+            case EQ:
+                return comparison == 0;
+            case NOT_EQ:
+                return comparison != 0;
+            case GT:
+                return comparison > 0;
+            case GT_EQ:
+                return comparison >= 0;
+            case LT:
+                return comparison < 0;
+            case LT_EQ:
+                return comparison <= 0;
+            default:
+                throw new InvalidQueryException("Unexpected comparison operator");
+        }
+    }
+
+    /**
+     * Check if a value is between two parameter values (inclusive)
+     *
+     * @param value the attribute value
+     * @param lower the lower bound
+     * @param upper the upper bound
+     * @return TRUE, FALSE or null if the value is null
+     */
+    static Boolean between(final Object value, final Object lower, final Object upper) {
+        if (value == null) {
+            return null;
+        }
+        return compareTo(value, lower) >= 0 && compareTo(value, upper) <= 0;
+    }
+
+    /**
+     * Check if a value is equal to one of the parameter values
+     *
+     * @param value      the attribute value
+     * @param parameters the parsed parameter values
+     * @return TRUE, FALSE or null if the value is null
+     */
+    static Boolean in(final Object value, final List<Object> parameters) {
+        if (value == null) {
+            return null;
+        }
+        for (final Object parameter : parameters) {
+            if (isEqual(value, parameter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a value matches a LIKE pattern
+     *
+     * @param value   the attribute value
+     * @param pattern the pattern created by {@link #toPattern(String)}
+     * @return TRUE, FALSE or null if the value is null
+     */
+    static Boolean like(final Object value, final Pattern pattern) {
+        if (value == null) {
+            return null;
+        }
+        return pattern.matcher(value.toString()).matches();
+    }
+
+    /**
+     * Convert a LIKE pattern into a regular expression
+     * The % wildcard matches any sequence of characters, the _ wildcard matches a single character
+     * and a wildcard preceded by a backslash matches itself
+     *
+     * @param like the LIKE pattern
+     * @return the regular expression
+     */
+    static Pattern toPattern(final String like) {
+        final StringBuilder regex = new StringBuilder(like.length() + 8);
+        for (int i = 0; i < like.length(); i++) {
+            final char character = like.charAt(i);
+            if (character == '\\' && i + 1 < like.length()) {
+                appendLiteral(regex, like.charAt(++i));
+            } else if (character == '%') {
+                regex.append(".*");
+            } else if (character == '_') {
+                regex.append('.');
+            } else {
+                appendLiteral(regex, character);
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Negate a result
+     *
+     * @param result TRUE, FALSE or null
+     * @return FALSE, TRUE or null
+     */
+    static Boolean not(final Boolean result) {
+        return result == null ? null : !result;
+    }
+
+    /**
+     * Check if two non null values are equal
+     * Comparable values are compared so that numbers of different types, decimals of different scales
+     * and timestamps are equal when they represent the same value
+     *
+     * @param value     the attribute value
+     * @param parameter the parameter value
+     * @return true if the values are equal, otherwise false
+     */
+    static boolean isEqual(final Object value, final Object parameter) {
+        if (value instanceof Comparable && parameter instanceof Comparable) {
+            return compareTo(value, parameter) == 0;
+        }
+        return value.equals(parameter);
+    }
+
+    /**
+     * Compare two non null values
+     *
+     * @param value     the attribute value
+     * @param parameter the parameter value
+     * @return a negative integer, zero, or a positive integer as the value is less than, equal to, or greater than the parameter
+     */
+    @SuppressWarnings("unchecked")
+    static int compareTo(final Object value, final Object parameter) {
+        if (value instanceof Number && parameter instanceof Number && value.getClass() != parameter.getClass()) {
+            return compareNumbers((Number) value, (Number) parameter);
+        }
+        try {
+            return ((Comparable<Object>) value).compareTo(parameter);
+        } catch (ClassCastException exception) {
+            throw new InvalidQueryException(format("Cannot compare %s with %s", value.getClass().getName(),
+                    parameter.getClass().getName()));
+        }
+    }
+
+    /**
+     * Compare two numbers of different types
+     *
+     * @param value     the attribute value
+     * @param parameter the parameter value
+     * @return a negative integer, zero, or a positive integer as the value is less than, equal to, or greater than the parameter
+     */
+    private static int compareNumbers(final Number value, final Number parameter) {
+        if (isDecimal(value) || isDecimal(parameter)) {
+            return toBigDecimal(value).compareTo(toBigDecimal(parameter));
+        }
+        if (isFloatingPoint(value) || isFloatingPoint(parameter)) {
+            return Double.compare(value.doubleValue(), parameter.doubleValue());
+        }
+        return Long.compare(value.longValue(), parameter.longValue());
+    }
+
+    /**
+     * Check if a value is an integral number that can be widened to a long
+     *
+     * @param value the value
+     * @return true if the value is a Long, Integer, Short or Byte
+     */
+    static boolean isIntegral(final Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Check if a value is a floating point number
+     *
+     * @param value the value
+     * @return true if the value is a Double or Float
+     */
+    static boolean isFloatingPoint(final Object value) {
+        return value instanceof Double || value instanceof Float;
+    }
+
+    private static boolean isDecimal(final Number number) {
+        return number instanceof BigDecimal || number instanceof BigInteger;
+    }
+
+    private static BigDecimal toBigDecimal(final Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (isFloatingPoint(number)) {
+            return BigDecimal.valueOf(number.doubleValue());
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    private static void appendLiteral(final StringBuilder regex, final char character) {
+        if (REGEX_META_CHARACTERS.indexOf(character) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(character);
+    }
+}
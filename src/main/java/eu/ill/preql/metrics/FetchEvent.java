@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder event of the {@link QueryPhase#SELECT} phase
+ *
+ * @author Jamie Hall
+ */
+@Name("eu.ill.preql.Fetch")
+@Label("Preql Fetch")
+@Description("Execution of a select query and fetching of its results")
+public final class FetchEvent extends QueryEvent {
+
+    @Override
+    QueryPhase getPhase() {
+        return QueryPhase.SELECT;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * An observer that records the durations of the phases of the filter queries in histograms,
+ * which can be read at any time, for example to expose them to a metrics endpoint
+ *
+ * @author Jamie Hall
+ */
+public final class HistogramQueryObserver implements QueryObserver {
+
+    private final Map<QueryPhase, LatencyHistogram> durations;
+    private final LatencyHistogram                  rows = new LatencyHistogram();
+
+    public HistogramQueryObserver() {
+        final Map<QueryPhase, LatencyHistogram> histograms = new EnumMap<>(QueryPhase.class);
+        for (final QueryPhase phase : QueryPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        this.durations = unmodifiableMap(histograms);
+    }
+
+    @Override
+    public void onPhase(final QueryPhaseEvent event) {
+        durations.get(event.getPhase()).record(event.getDuration());
+        if (event.getPhase() == QueryPhase.SELECT && event.getRows() >= 0) {
+            rows.record(event.getRows());
+        }
+    }
+
+    /**
+     * Get the histogram of the durations of a phase
+     *
+     * @param phase the phase
+     * @return the histogram of the durations in nanoseconds
+     */
+    public LatencyHistogram getHistogram(final QueryPhase phase) {
+        return durations.get(phase);
+    }
+
+    /**
+     * Get the histogram of the number of rows returned by the select queries
+     *
+     * @return the histogram of the number of rows
+     */
+    public LatencyHistogram getRowsHistogram() {
+        return rows;
+    }
+
+    /**
+     * Remove all of the recorded values
+     */
+    public void reset() {
+        for (final LatencyHistogram histogram : durations.values()) {
+            histogram.reset();
+        }
+        rows.reset();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("durations", durations)
+                .append("rows", rows)
+                .toString();
+    }
+}
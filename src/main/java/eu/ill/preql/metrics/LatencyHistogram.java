@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non negative values (for example durations in nanoseconds).
+ * The values are counted in log-linear buckets: values below 128 are counted exactly and every power of two
+ * above is divided into 64 buckets, so the values reported by the histogram are within 1/64 of the recorded values.
+ * Recording a value is wait free; the statistics that are read while values are recorded are approximate
+ *
+ * @author Jamie Hall
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS  = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT     = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong      count  = new AtomicLong();
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    /**
+     * Record a value
+     *
+     * @param value the value (negative values are recorded as 0)
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(value, 0);
+        counts.incrementAndGet(indexOf(recorded));
+        count.incrementAndGet();
+        total.addAndGet(recorded);
+        long current = max.get();
+        while (recorded > current && !max.compareAndSet(current, recorded)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the number of recorded values
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the sum of the recorded values
+     *
+     * @return the sum
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Get the largest recorded value
+     *
+     * @return the largest value or 0 if no value has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values
+     *
+     * @return the mean or 0 if no value has been recorded
+     */
+    public double getMean() {
+        final long values = count.get();
+        return values == 0 ? 0 : (double) total.get() / values;
+    }
+
+    /**
+     * Get the value below which a percentage of the recorded values fall
+     *
+     * @param percentile the percentile (between 0 and 100)
+     * @return the value or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long values = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values += counts.get(i);
+        }
+        if (values == 0) {
+            return 0;
+        }
+        final double clamped = Math.min(Math.max(percentile, 0), 100);
+        final long   rank    = Math.max(1, (long) Math.ceil(clamped / 100 * values));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Remove all of the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Get the index of the bucket of a value
+     *
+     * @param value the value
+     * @return the index
+     */
+    static int indexOf(final long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Get the highest value that is counted in a bucket
+     *
+     * @param index the index of the bucket
+     * @return the highest value
+     */
+    static long highestValueOf(final int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int  shift = index / SUB_BUCKET_COUNT - 1;
+        final long lower = (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("count", getCount())
+                .append("mean", getMean())
+                .append("p50", getValueAtPercentile(50))
+                .append("p99", getValueAtPercentile(99))
+                .append("max", getMax())
+                .toString();
+    }
+}
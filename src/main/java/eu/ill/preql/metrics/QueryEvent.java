@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The base of the JDK Flight Recorder events of the phases of the filter queries.
+ * The events are created and committed by {@link QueryObservers} and are only filled when they are recorded
+ *
+ * @author Jamie Hall
+ */
+@Category("Preql")
+@StackTrace(false)
+public abstract class QueryEvent extends Event {
+
+    @Label("Query")
+    String query;
+
+    @Label("Expression Count")
+    int expressionCount;
+
+    @Label("Join Count")
+    int joinCount;
+
+    @Label("Row Count")
+    long rowCount;
+
+    /**
+     * The start time in nanoseconds for the observer (0 if the query is not observed)
+     */
+    transient long start;
+
+    /**
+     * Get the phase of the event
+     *
+     * @return the phase
+     */
+    abstract QueryPhase getPhase();
+}
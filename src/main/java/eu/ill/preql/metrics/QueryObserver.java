@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+/**
+ * Observes the phases of the execution of filter queries (see {@link QueryObservers#setObserver(QueryObserver)}).
+ * An observer is called synchronously by the thread that executes the query, so it must be thread safe and fast
+ *
+ * @author Jamie Hall
+ */
+@FunctionalInterface
+public interface QueryObserver {
+
+    /**
+     * Called when a phase has completed successfully
+     *
+     * @param event the event describing the phase
+     */
+    void onPhase(QueryPhaseEvent event);
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import eu.ill.preql.parser.ParsedQuery;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.Root;
+
+import static eu.ill.preql.support.AttributeMapper.countJoins;
+
+/**
+ * Holds the observer of the filter queries and reports the phases to it and to the JDK Flight Recorder.
+ * When no observer is set and the events are not recorded, the phases are not timed and the events are not filled
+ *
+ * @author Jamie Hall
+ */
+public final class QueryObservers {
+
+    private static volatile QueryObserver observer;
+
+    private QueryObservers() {
+    }
+
+    /**
+     * Get the observer of the filter queries
+     *
+     * @return the observer or null if the queries are not observed
+     */
+    public static QueryObserver getObserver() {
+        return observer;
+    }
+
+    /**
+     * Set the observer of the filter queries
+     *
+     * @param observer the observer (null to stop observing the queries)
+     */
+    public static void setObserver(final QueryObserver observer) {
+        QueryObservers.observer = observer;
+    }
+
+    /**
+     * Start a phase
+     * The returned event is recorded by the JDK Flight Recorder when the recording of its type is enabled
+     *
+     * @param phase the phase
+     * @return the event of the phase
+     */
+    public static QueryEvent start(final QueryPhase phase) {
+        final QueryEvent event = createEvent(phase);
+        event.begin();
+        if (observer != null) {
+            event.start = System.nanoTime();
+        }
+        return event;
+    }
+
+    /**
+     * Complete a phase: commit its event and report it to the observer
+     *
+     * @param event    the event returned by {@link #start(QueryPhase)}
+     * @param query    the parsed query
+     * @param criteria the criteria query whose joins are counted (can be null)
+     * @param rows     the number of rows or -1
+     */
+    public static void complete(final QueryEvent event, final ParsedQuery query, final AbstractQuery<?> criteria, final long rows) {
+        event.end();
+        final QueryObserver current  = observer;
+        final boolean       observed = current != null && event.start != 0;
+        final boolean       recorded = event.shouldCommit();
+        if (!observed && !recorded) {
+            return;
+        }
+        final long duration = System.nanoTime() - event.start;
+        int joinCount = 0;
+        if (criteria != null) {
+            for (final Root<?> root : criteria.getRoots()) {
+                joinCount += countJoins(root);
+            }
+        }
+        final int expressionCount = query.isEmpty() ? 0 : query.getExpression().getExpressionCount();
+        if (recorded) {
+            event.query = query.toString();
+            event.expressionCount = expressionCount;
+            event.joinCount = joinCount;
+            event.rowCount = rows;
+            event.commit();
+        }
+        if (observed) {
+            current.onPhase(new QueryPhaseEvent(event.getPhase(), query.toString(), expressionCount, joinCount, rows, duration));
+        }
+    }
+
+    /**
+     * Create the flight recorder event of a phase
+     *
+     * @param phase the phase
+     * @return the event
+     */
+    private static QueryEvent createEvent(final QueryPhase phase) {
+        switch (phase) {
+            case PARSE:
+                return new ParseEvent();
+            case COMPILE:
+                return new CompileEvent();
+            case TRANSLATE:
+                return new TranslateEvent();
+            case SELECT:
+                return new FetchEvent();
+            default:
+                return new CountEvent();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+/**
+ * The phases of the execution of a filter query that are reported to the {@link QueryObserver}
+ *
+ * @author Jamie Hall
+ */
+public enum QueryPhase {
+
+    /**
+     * The lexing and parsing of the query text into its abstract syntax tree (only when the parsed query is not cached)
+     */
+    PARSE,
+
+    /**
+     * The conversion of the abstract syntax tree into criteria predicates, including the resolution of the
+     * attribute paths and the coercion of the parameter values
+     */
+    COMPILE,
+
+    /**
+     * The creation of the typed query from the criteria query by the persistence provider
+     */
+    TRANSLATE,
+
+    /**
+     * The execution of the select query and the fetching of its results
+     */
+    SELECT,
+
+    /**
+     * The execution of the count query
+     */
+    COUNT
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Describes a completed phase of the execution of a filter query
+ *
+ * @author Jamie Hall
+ */
+public final class QueryPhaseEvent {
+
+    private final QueryPhase phase;
+    private final String     fingerprint;
+    private final int        expressionCount;
+    private final int        joinCount;
+    private final long       rows;
+    private final long       duration;
+
+    /**
+     * @param phase           the phase
+     * @param fingerprint     the normalized query, which does not contain the parameter values
+     * @param expressionCount the number of expressions of the query
+     * @param joinCount       the number of joins of the criteria query
+     * @param rows            the number of rows returned by a select (-1 for a stream), the number of counted rows for a count, otherwise -1
+     * @param duration        the duration of the phase in nanoseconds
+     */
+    public QueryPhaseEvent(final QueryPhase phase, final String fingerprint, final int expressionCount,
+                           final int joinCount, final long rows, final long duration) {
+        this.phase = requireNonNull(phase, "Phase cannot be null");
+        this.fingerprint = requireNonNull(fingerprint, "Fingerprint cannot be null");
+        this.expressionCount = expressionCount;
+        this.joinCount = joinCount;
+        this.rows = rows;
+        this.duration = duration;
+    }
+
+    public QueryPhase getPhase() {
+        return phase;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getExpressionCount() {
+        return expressionCount;
+    }
+
+    public int getJoinCount() {
+        return joinCount;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the duration of the phase
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("phase", phase)
+                .append("fingerprint", fingerprint)
+                .append("expressionCount", expressionCount)
+                .append("joinCount", joinCount)
+                .append("rows", rows)
+                .append("duration", duration)
+                .toString();
+    }
+}
@@ -16,19 +16,32 @@
 package eu.ill.preql.parser;
 
 import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.support.CollectionField;
 import eu.ill.preql.support.Field;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.AbstractQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Subquery;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static org.apache.commons.lang3.ClassUtils.primitiveToWrapper;
 
 /**
  * @author Jamie Hall
@@ -42,11 +55,16 @@ public abstract class AbstractQueryParser {
         }
     };
     protected static int maxExpressions = -1;
+    protected static boolean parameterBinding = true;
     protected final Map<String, Object> parameters;
     protected final CriteriaBuilder criteriaBuilder;
+    protected final AbstractQuery<?> query;
     protected final Map<String, Field> fields;
     protected final List<Predicate> expressions;
     protected final ValueParsers valueParsers;
+    protected final Map<Object, Object> parsedValues;
+    protected final Map<ParameterExpression<?>, Object> bindings = new LinkedHashMap<>();
+    protected final Map<Path<?>, Subquery<Integer>> subqueries = new IdentityHashMap<>();
 
     /**
      * Create a new instance
@@ -55,10 +73,12 @@ public abstract class AbstractQueryParser {
      */
     public AbstractQueryParser(final QueryParserContext context) {
         this.criteriaBuilder = context.getCriteriaBuilder();
+        this.query = context.getQuery();
         this.fields = context.getFields();
         this.parameters = context.getParameters();
         this.expressions = context.getExpressions();
         this.valueParsers = context.getValueParsers();
+        this.parsedValues = context.getParsedValues();
     }
 
     /**
@@ -78,12 +98,59 @@ public abstract class AbstractQueryParser {
      * @return the parsed value
      */
     public Object parseValue(final Field field, final String parameter, final Object value) {
-        final Class<?> valueType = field.getPath().getJavaType();
+        return parseValue(field, field.getPath(), parameter, value);
+    }
+
+    /**
+     * Parse a parameter value
+     * The parsed values are shared by the parsers of the same query, so a value is only coerced once
+     *
+     * @param field     The field
+     * @param path      The path of the field the value is compared with
+     * @param parameter The name of the parameter
+     * @param value     The value of the parameter
+     * @return the parsed value
+     */
+    public Object parseValue(final Field field, final Path<?> path, final String parameter, final Object value) {
+        final List<Object> key = asList(field.getName(), parameter, value);
+        Object parsedValue = parsedValues.get(key);
+        if (parsedValue == null) {
+            parsedValue = coerceValue(field, path, parameter, value);
+            parsedValues.put(key, parsedValue);
+        }
+        return parsedValue;
+    }
+
+    /**
+     * Coerce a parameter value to the type of a field
+     *
+     * @param field     The field
+     * @param path      The path of the field the value is compared with
+     * @param parameter The name of the parameter
+     * @param value     The value of the parameter
+     * @return the parsed value
+     */
+    private Object coerceValue(final Field field, final Path<?> path, final String parameter, final Object value) {
+        return coerceValue(valueParsers, field.getValueParser(), path.getJavaType(), parameter, value);
+    }
+
+    /**
+     * Coerce a parameter value to a type
+     * The value parser of the field takes precedence over the value parser registered for the type
+     *
+     * @param valueParsers     The value parsers
+     * @param fieldValueParser The value parser of the field (can be null)
+     * @param valueType        The type of the attribute the value is compared with
+     * @param parameter        The name of the parameter
+     * @param value            The value of the parameter
+     * @return the parsed value
+     */
+    public static Object coerceValue(final ValueParsers valueParsers, final FieldValueParser fieldValueParser,
+                                     final Class<?> valueType, final String parameter, final Object value) {
         try {
             if (value == null) {
                 throw new InvalidQueryException("Parameter cannot be null");
             }
-            final FieldValueParser fieldValueParser = field.getValueParser();
             if (fieldValueParser == null) {
                 final ValueParser<?> valueParser = valueParsers.getParser(valueType, value);
                 return valueParser.parse(value);
@@ -97,6 +164,99 @@ public abstract class AbstractQueryParser {
 
     }
 
+    /**
+     * Get the path of a field for a new expression
+     * A {@link CollectionField} is resolved in a new subquery correlated to the query root,
+     * which must be passed to {@link #restrict(Path, Predicate)} once the predicate has been created
+     *
+     * @param field the field
+     * @return the path of the field
+     */
+    public Path<?> getPath(final Field field) {
+        if (query != null && field instanceof CollectionField) {
+            final Subquery<Integer> subquery = query.subquery(Integer.class);
+            final Path<?>           path     = ((CollectionField) field).correlate(subquery);
+            subqueries.put(path, subquery);
+            return path;
+        }
+        return field.getPath();
+    }
+
+    /**
+     * Complete the predicate of an expression
+     * If the path was resolved in a subquery, the predicate restricts the subquery and is wrapped in an EXISTS expression
+     *
+     * @param path      the path returned by {@link #getPath(Field)}
+     * @param predicate the predicate created on the path
+     * @return the predicate to add to the query
+     */
+    public Predicate restrict(final Path<?> path, final Predicate predicate) {
+        final Subquery<Integer> subquery = subqueries.remove(path);
+        if (subquery == null) {
+            return predicate;
+        }
+        subquery.select(criteriaBuilder.literal(1)).where(predicate);
+        return criteriaBuilder.exists(subquery);
+    }
+
+    /**
+     * Create the criteria expression for a parsed parameter value
+     * When parameter binding is enabled the value is bound to a new parameter expression,
+     * otherwise it is added to the criteria as a literal
+     *
+     * @param path  the path of the field the value is compared with
+     * @param value the parsed value
+     * @return the expression representing the value
+     */
+    public Expression<?> createValueExpression(final Path<?> path, final Object value) {
+        if (!parameterBinding) {
+            return criteriaBuilder.literal(value);
+        }
+        Class<?> type = primitiveToWrapper(path.getJavaType());
+        if (type == null || !type.isInstance(value)) {
+            type = value.getClass();
+        }
+        final ParameterExpression<?> parameter = criteriaBuilder.parameter(type);
+        bindings.put(parameter, value);
+        return parameter;
+    }
+
+    /**
+     * Create the criteria expression for a list of parsed parameter values
+     * The values are bound as a single collection parameter, which the persistence provider expands into one SQL
+     * parameter per value (see the hibernate.query.in_clause_parameter_padding property of Hibernate)
+     *
+     * @param values the parsed values
+     * @return the expression representing the values
+     */
+    @SuppressWarnings("unchecked")
+    public Expression<Collection<?>> createValuesExpression(final List<Object> values) {
+        final ParameterExpression<Collection<?>> parameter = (ParameterExpression) criteriaBuilder.parameter(Collection.class);
+        bindings.put(parameter, values);
+        return parameter;
+    }
+
+    /**
+     * Bind the parameter values of the last parsed query to the given typed query
+     *
+     * @param query the typed query created from the criteria query
+     */
+    @SuppressWarnings("unchecked")
+    public void bindParameters(final TypedQuery<?> query) {
+        for (final Map.Entry<ParameterExpression<?>, Object> binding : bindings.entrySet()) {
+            query.setParameter((ParameterExpression<Object>) binding.getKey(), binding.getValue());
+        }
+    }
+
+    /**
+     * Get the parameter values bound by the last parsed query
+     *
+     * @return the parameter expressions and their bound values
+     */
+    public Map<ParameterExpression<?>, Object> getBindings() {
+        return bindings;
+    }
+
     /**
      * Merge the parsed expressions and pre defined expressions
      *
@@ -136,6 +296,18 @@ public abstract class AbstractQueryParser {
         throw new InvalidQueryException("Parameter " + name + " not found in the bound parameters");
     }
 
+    /**
+     * Check that an expression does not exceed the maximum number of expressions
+     *
+     * @param expression the root node of a parsed query
+     */
+    public static void checkMaxExpressions(final Node expression) {
+        if (maxExpressions != -1 && expression.getExpressionCount() > maxExpressions) {
+            throw new InvalidQueryException(format("Exceeded maximum number of expressions. " +
+                    "Number of expressions can not exceed: %d", maxExpressions));
+        }
+    }
+
     /**
      * Get the maximum number of expressions
      *
@@ -157,6 +329,26 @@ public abstract class AbstractQueryParser {
         maxExpressions = max;
     }
 
+    /**
+     * Check if parsed parameter values are bound as query parameters
+     *
+     * @return true if parameter binding is enabled, otherwise false
+     */
+    public boolean isParameterBinding() {
+        return parameterBinding;
+    }
+
+    /**
+     * Enable or disable the binding of parsed parameter values as query parameters.
+     * When disabled the values are added to the criteria as literals, which produces
+     * different SQL for every distinct value
+     *
+     * @param enabled true to bind the values as query parameters
+     */
+    public static void setParameterBinding(final boolean enabled) {
+        parameterBinding = enabled;
+    }
+
     /**
      * Get a field for a given name
      *
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NodeVisitor;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+import eu.ill.preql.support.Field;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Lowers the abstract syntax tree of a query to JPA criteria predicates on the root of a parser
+ *
+ * @author Jamie Hall
+ */
+public class CriteriaVisitor implements NodeVisitor<Predicate> {
+
+    private final AbstractQueryParser parser;
+    private final CriteriaBuilder     cb;
+
+    public CriteriaVisitor(final AbstractQueryParser parser) {
+        this.parser = parser;
+        this.cb = parser.getCriteriaBuilder();
+    }
+
+    /**
+     * Lower a comparison expression
+     *
+     * @param node the comparison node
+     * @return the predicate
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Predicate visit(final ComparisonNode node) {
+        final String     identifier = node.getParameter();
+        final Field      field      = parser.getField(node.getField());
+        final Path<?>    path       = parser.getPath(field);
+        final Object     value      = parser.parseValue(field, path, identifier, parser.getParameter(identifier));
+        final Expression expression = parser.createValueExpression(path, value);
+
+        switch (node.getOperator()) {
+            case GT:
+                return parser.restrict(path, cb.greaterThan((Expression) path, expression));
+            case GT_EQ:
+                return parser.restrict(path, cb.greaterThanOrEqualTo((Expression) path, expression));
+            case LT:
+                return parser.restrict(path, cb.lessThan((Expression) path, expression));
+            case LT_EQ:
+                return parser.restrict(path, cb.lessThanOrEqualTo((Expression) path, expression));
+            case EQ:
+                return parser.restrict(path, cb.equal(path, expression));
+            case NOT_EQ:
+                return parser.restrict(path, cb.notEqual(path, expression));
+            default:
+                throw new RuntimeException("Unexpected comparison operator");
+        }
+    }
+
+    /**
+     * Lower a BETWEEN expression
+     *
+     * @param node the between node
+     * @return the predicate
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Predicate visit(final BetweenNode node) {
+        final Field      field      = parser.getField(node.getField());
+        final Path<?>    path       = parser.getPath(field);
+        final Comparable lowerValue = (Comparable) parser.parseValue(field, path, node.getLower(), parser.getParameter(node.getLower()));
+        final Comparable upperValue = (Comparable) parser.parseValue(field, path, node.getUpper(), parser.getParameter(node.getUpper()));
+        final Expression lower      = parser.createValueExpression(path, lowerValue);
+        final Expression upper      = parser.createValueExpression(path, upperValue);
+        final Predicate  between    = cb.between((Expression) path, lower, upper);
+        return parser.restrict(path, node.isNegated() ? cb.not(between) : between);
+    }
+
+    /**
+     * Lower an IN expression
+     *
+     * @param node the in node
+     * @return the predicate
+     */
+    @Override
+    public Predicate visit(final InNode node) {
+        final String identifier = node.getParameter();
+        final Field  field      = parser.getField(node.getField());
+        final Object parameter  = parser.getParameter(identifier);
+        if (parameter instanceof List) {
+            final Path<?>      path   = parser.getPath(field);
+            final List<Object> values = new ArrayList<>();
+            for (Object value : (List) parameter) {
+                values.add(parser.parseValue(field, path, identifier, value));
+            }
+            final Predicate predicate = parser.isParameterBinding() ? path.in(parser.createValuesExpression(values)) : path.in(values);
+            return parser.restrict(path, node.isNegated() ? cb.not(predicate) : predicate);
+        } else {
+            throw new InvalidQueryException(format("Expected a list of parameters for parameter: '%s'", field.getName()));
+        }
+    }
+
+    /**
+     * Lower a LIKE expression
+     *
+     * @param node the like node
+     * @return the predicate
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Predicate visit(final LikeNode node) {
+        final String     identifier = node.getParameter();
+        final Field      field      = parser.getField(node.getField());
+        final Path<?>    path       = parser.getPath(field);
+        final String     value      = (String) parser.parseValue(field, path, identifier, parser.getParameter(identifier));
+        final Expression pattern    = parser.createValueExpression(path, value);
+        if (node.isNegated()) {
+            return parser.restrict(path, cb.notLike((Expression) path, pattern));
+        }
+        return parser.restrict(path, cb.like((Expression) path, pattern));
+    }
+
+    /**
+     * Lower a NULL expression
+     *
+     * @param node the null node
+     * @return the predicate
+     */
+    @Override
+    public Predicate visit(final NullNode node) {
+        final Field   field = parser.getField(node.getField());
+        final Path<?> path  = parser.getPath(field);
+        return parser.restrict(path, node.isNegated() ? cb.isNotNull(path) : cb.isNull(path));
+    }
+
+    /**
+     * Lower an AND expression
+     *
+     * @param node the and node
+     * @return the predicate
+     */
+    @Override
+    public Predicate visit(final AndNode node) {
+        return cb.and(lower(node.getChildren()));
+    }
+
+    /**
+     * Lower an OR expression
+     *
+     * @param node the or node
+     * @return the predicate
+     */
+    @Override
+    public Predicate visit(final OrNode node) {
+        return cb.or(lower(node.getChildren()));
+    }
+
+    /**
+     * Lower a list of expressions
+     *
+     * @param nodes the nodes
+     * @return the predicates
+     */
+    private Predicate[] lower(final List<Node> nodes) {
+        final Predicate[] predicates = new Predicate[nodes.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = nodes.get(i).accept(this);
+        }
+        return predicates;
+    }
+}
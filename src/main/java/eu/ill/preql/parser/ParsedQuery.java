@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.parser.ast.Node;
+
+/**
+ * A query that has been lexed and parsed once into an immutable abstract syntax tree.
+ * The tree can be converted into criteria expressions for any number of query roots
+ * (for example the select and the count query of a filter query)
+ *
+ * @author Jamie Hall
+ */
+public final class ParsedQuery {
+
+    private final String query;
+    private final Node   expression;
+    private       String normalized;
+
+    /**
+     * @param query      the query
+     * @param expression the root node of the query (null if the query is empty)
+     */
+    public ParsedQuery(final String query, final Node expression) {
+        this.query = query;
+        this.expression = expression;
+    }
+
+    /**
+     * Get the query
+     *
+     * @return the query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Check if the query is empty
+     *
+     * @return true if the query has no expressions
+     */
+    public boolean isEmpty() {
+        return expression == null;
+    }
+
+    /**
+     * Get the root node of the query
+     *
+     * @return the root node or null if the query is empty
+     */
+    public Node getExpression() {
+        return expression;
+    }
+
+    /**
+     * The normalized query, which does not depend on the white spaces, comments, case of the keywords
+     * or redundant parentheses of the query text
+     *
+     * @return the normalized query
+     */
+    @Override
+    public String toString() {
+        String result = normalized;
+        if (result == null) {
+            result = expression == null ? "" : expression.toString();
+            normalized = result;
+        }
+        return result;
+    }
+}
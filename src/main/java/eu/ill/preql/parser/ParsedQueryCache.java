@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of parsed queries keyed by the query text, evicting the queries in an approximate least recently
+ * used order.
+ * The cache is bounded by a maximum number of queries and by a maximum weight,
+ * the weight of a query being the length of its text.
+ * It is safe for use by multiple threads: a hit only reads the map and marks the query as referenced, without taking
+ * any lock, and the eviction (CLOCK algorithm) gives a second chance to the queries referenced since the last pass
+ *
+ * @author Jamie Hall
+ */
+public final class ParsedQueryCache {
+
+    private final int                                  maxSize;
+    private final long                                 maxWeight;
+    private final Map<String, Entry>                   queries   = new ConcurrentHashMap<>();
+    private final ReentrantLock                        lock      = new ReentrantLock();
+    private final AtomicLong                           hits      = new AtomicLong();
+    private final AtomicLong                           misses    = new AtomicLong();
+    private final AtomicLong                           evictions = new AtomicLong();
+    private volatile long                              weight;
+    private       Iterator<Map.Entry<String, Entry>>   hand;
+
+    /**
+     * @param maxSize   the maximum number of queries
+     * @param maxWeight the maximum total length of the cached queries
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    public ParsedQueryCache(final int maxSize, final long maxWeight) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be a positive number");
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be a positive number");
+        }
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Get the parsed query for a given query text, parsing and caching it if it is not in the cache
+     * A query that fails to parse is not cached
+     *
+     * @param query  the query text
+     * @param parser the function used to parse the query on a cache miss
+     * @return the parsed query
+     */
+    public ParsedQuery get(final String query, final Function<String, ParsedQuery> parser) {
+        final Entry entry = queries.get(query);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.incrementAndGet();
+            return entry.parsedQuery;
+        }
+        misses.incrementAndGet();
+        final ParsedQuery parsedQuery = parser.apply(query);
+        if (query.length() <= maxWeight) {
+            put(query, parsedQuery);
+        }
+        return parsedQuery;
+    }
+
+    /**
+     * Add a parsed query and evict the queries that were not referenced since the last pass of the clock hand
+     * until the cache is within its bounds. The added query is never evicted by its own insertion
+     *
+     * @param query       the query text
+     * @param parsedQuery the parsed query
+     */
+    private void put(final String query, final ParsedQuery parsedQuery) {
+        lock.lock();
+        try {
+            if (queries.putIfAbsent(query, new Entry(parsedQuery)) != null) {
+                return;
+            }
+            weight += query.length();
+            while (queries.size() > maxSize || weight > maxWeight) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = queries.entrySet().iterator();
+                }
+                final Map.Entry<String, Entry> candidate = hand.next();
+                if (candidate.getKey().equals(query)) {
+                    continue;
+                }
+                if (candidate.getValue().referenced) {
+                    candidate.getValue().referenced = false;
+                    continue;
+                }
+                hand.remove();
+                weight -= candidate.getKey().length();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all of the cached queries
+     * The statistics are not reset
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            queries.clear();
+            weight = 0;
+            hand = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of cached queries
+     *
+     * @return the number of cached queries
+     */
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Get the total length of the cached queries
+     *
+     * @return the weight of the cache
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the number of lookups that found a cached query
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that had to parse the query
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of queries that were evicted to keep the cache within its bounds
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", size())
+                .append("weight", getWeight())
+                .append("hits", hits.get())
+                .append("misses", misses.get())
+                .append("evictions", evictions.get())
+                .toString();
+    }
+
+    private static final class Entry {
+
+        private final    ParsedQuery parsedQuery;
+        private volatile boolean     referenced;
+
+        private Entry(final ParsedQuery parsedQuery) {
+            this.parsedQuery = parsedQuery;
+        }
+    }
+}
@@ -18,33 +18,44 @@ package eu.ill.preql.parser;
 import eu.ill.preql.FilterBaseListener;
 import eu.ill.preql.FilterLexer;
 import eu.ill.preql.FilterParser;
-import eu.ill.preql.exception.InvalidQueryException;
-import eu.ill.preql.support.Field;
-import org.antlr.v4.runtime.ParserRuleContext;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.ComparisonOperator;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
 
-import jakarta.persistence.criteria.CriteriaBuilder;
-import jakarta.persistence.criteria.Expression;
-import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-
-import static java.lang.String.format;
 
 /**
+ * Builds the abstract syntax tree of a query from its parse tree
+ *
  * @author Jamie Hall
  */
 public class QueryListener extends FilterBaseListener {
 
-    private final QueryParser                                  parser;
-    private final Map<ParserRuleContext, ArrayList<Predicate>> expressions = new HashMap<>();
-    private final CriteriaBuilder                              cb;
+    private final Deque<Node> nodes = new ArrayDeque<>();
+    private final QueryParser parser;
 
+    public QueryListener() {
+        this.parser = null;
+    }
+
+    /**
+     * @param parser the parser that the expressions are lowered to criteria predicates with (see {@link #getExpressions()})
+     * @deprecated the listener only builds the abstract syntax tree: use {@link #QueryListener()} and {@link #getExpression()},
+     * and lower the expression with a {@link CriteriaVisitor}
+     */
+    @Deprecated
     public QueryListener(final QueryParser parser) {
         this.parser = parser;
-        this.cb = parser.getCriteriaBuilder();
     }
 
     /**
@@ -53,37 +64,10 @@ public class QueryListener extends FilterBaseListener {
      * @param context the comparator expression context
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void exitComparatorExpression(final FilterParser.ComparatorExpressionContext context) {
-        final String     identifier = context.parameter().IDENTIFIER().getText();
-        final Field field      = parser.getField(context.field().getText());
-        final Expression path  = field.getPath();
-        final Object     value      = parser.parseValue(field, identifier, parser.getParameter(identifier));
-        final Expression expression = cb.literal(value);
-
-        switch (context.operator.getType()) {
-            case FilterLexer.GT:
-                addExpression(context, cb.greaterThan(path, expression));
-                break;
-            case FilterLexer.GT_EQ:
-                addExpression(context, cb.greaterThanOrEqualTo(path, expression));
-                break;
-            case FilterLexer.LT:
-                addExpression(context, cb.lessThan(path, expression));
-                break;
-            case FilterLexer.LT_EQ:
-                addExpression(context, cb.lessThanOrEqualTo(path, expression));
-                break;
-            case FilterLexer.EQ:
-                addExpression(context, cb.equal(path, expression));
-                break;
-            case FilterLexer.NOT_EQ1:
-            case FilterLexer.NOT_EQ2:
-                addExpression(context, cb.notEqual(path, expression));
-                break;
-            default:
-                throw new RuntimeException("Unexpected comparison operator");
-        }
+        final String identifier = context.parameter().IDENTIFIER().getText();
+        final String field      = context.field().getText();
+        nodes.push(new ComparisonNode(field, getOperator(context.operator.getType()), identifier));
     }
 
     /**
@@ -93,13 +77,14 @@ public class QueryListener extends FilterBaseListener {
      */
     @Override
     public void exitBinaryExpression(final FilterParser.BinaryExpressionContext context) {
-        final Predicate[] expressions = this.expressions.get(context).toArray((new Predicate[0]));
+        final Node right = nodes.pop();
+        final Node left  = nodes.pop();
         switch (context.operator.getType()) {
             case FilterLexer.AND:
-                addExpression(context, cb.and(expressions));
+                nodes.push(new AndNode(left, right));
                 break;
             case FilterLexer.OR:
-                addExpression(context, cb.or(expressions));
+                nodes.push(new OrNode(left, right));
                 break;
             default:
                 throw new RuntimeException("Unexpected binary operator: " + context.operator.getText());
@@ -112,19 +97,11 @@ public class QueryListener extends FilterBaseListener {
      * @param context the between expression content
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void exitBetweenExpression(final FilterParser.BetweenExpressionContext context) {
-        final Field      field       = parser.getField(context.field().getText());
-        final String     identifier1 = context.parameter(0).IDENTIFIER().getText();
-        final String     identifier2 = context.parameter(1).IDENTIFIER().getText();
-        final Expression path   = field.getPath();
-        final Comparable lowerValue  = (Comparable) parser.parseValue(field, identifier1, parser.getParameter(identifier1));
-        final Comparable upperValue  = (Comparable) parser.parseValue(field, identifier2, parser.getParameter(identifier2));
-        if (context.NOT() == null) {
-            addExpression(context, cb.between(path, lowerValue, upperValue));
-        } else {
-            addExpression(context, cb.not(cb.between(path, lowerValue, upperValue)));
-        }
+        final String field       = context.field().getText();
+        final String identifier1 = context.parameter(0).IDENTIFIER().getText();
+        final String identifier2 = context.parameter(1).IDENTIFIER().getText();
+        nodes.push(new BetweenNode(field, identifier1, identifier2, context.NOT() != null));
     }
 
     /**
@@ -134,23 +111,8 @@ public class QueryListener extends FilterBaseListener {
      */
     @Override
     public void exitInExpression(final FilterParser.InExpressionContext context) {
-        final String  identifier = context.parameter().IDENTIFIER().getText();
-        final Field   field      = parser.getField(context.field().getText());
-        final Path<?> path  = field.getPath();
-        final Object  parameter  = parser.getParameter(identifier);
-        if (parameter instanceof List) {
-            final List<Object> values = new ArrayList<>();
-            for (Object value : (List) parameter) {
-                values.add(parser.parseValue(field, identifier, value));
-            }
-            if (context.NOT() == null) {
-                addExpression(context, path.in(values));
-            } else {
-                addExpression(context, cb.not(path.in(values)));
-            }
-        } else {
-            throw new InvalidQueryException(format("Expected a list of parameters for parameter: '%s'", field.getName()));
-        }
+        final String identifier = context.parameter().IDENTIFIER().getText();
+        nodes.push(new InNode(context.field().getText(), identifier, context.NOT() != null));
     }
 
     /**
@@ -160,13 +122,7 @@ public class QueryListener extends FilterBaseListener {
      */
     @Override
     public void exitNullExpression(final FilterParser.NullExpressionContext context) {
-        final Field   field     = parser.getField(context.field().getText());
-        final Path<?> path = field.getPath();
-        if (context.NOT() == null) {
-            addExpression(context, cb.isNull(path));
-        } else {
-            addExpression(context, cb.isNotNull(path));
-        }
+        nodes.push(new NullNode(context.field().getText(), context.NOT() != null));
     }
 
     /**
@@ -175,65 +131,66 @@ public class QueryListener extends FilterBaseListener {
      * @param context the like expression context
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void exitLikeExpression(final FilterParser.LikeExpressionContext context) {
-        final String     identifier = context.parameter().IDENTIFIER().getText();
-        final Field      field      = parser.getField(context.field().getText());
-        final Expression path  = field.getPath();
-        final String     value      = (String) parser.parseValue(field, identifier, parser.getParameter(identifier));
-        if (context.NOT() == null) {
-            addExpression(context, cb.like(path, value));
-        } else {
-            addExpression(context, cb.notLike(path, value));
-        }
+        final String identifier = context.parameter().IDENTIFIER().getText();
+        nodes.push(new LikeNode(context.field().getText(), identifier, context.NOT() != null));
     }
 
     /**
-     * Adds the given query to a list of child queries which have not yet been wrapped in a parent query.
+     * Get the comparison operator for a token type
      *
-     * @param currentContext the current context
-     * @param predicate      the predicate to be added
+     * @param type the token type
+     * @return the comparison operator
      */
-    private void addExpression(final ParserRuleContext currentContext, final Predicate predicate) {
-        // Retrieve the possibly null parent query...
-        final ParserRuleContext    parentContext    = getParentContextOfType(currentContext, FilterParser.BinaryExpressionContext.class);
-        final ArrayList<Predicate> childrenOfParent = expressions.computeIfAbsent(parentContext, k -> new ArrayList<>());
-        childrenOfParent.add(predicate);
-        if (parser.getMaxExpressions() != -1) {
-            if (this.expressions.size() > parser.getMaxExpressions()) {
-                throw new InvalidQueryException(format("Exceeded maximum number of expressions. " +
-                        "Number of expressions can not exceed: %d", parser.getMaxExpressions()));
-            }
+    private ComparisonOperator getOperator(final int type) {
+        switch (type) {
+            case FilterLexer.GT:
+                return ComparisonOperator.GT;
+            case FilterLexer.GT_EQ:
+                return ComparisonOperator.GT_EQ;
+            case FilterLexer.LT:
+                return ComparisonOperator.LT;
+            case FilterLexer.LT_EQ:
+                return ComparisonOperator.LT_EQ;
+            case FilterLexer.EQ:
+                return ComparisonOperator.EQ;
+            case FilterLexer.NOT_EQ1:
+            case FilterLexer.NOT_EQ2:
+                return ComparisonOperator.NOT_EQ;
+            default:
+                throw new RuntimeException("Unexpected comparison operator");
         }
     }
 
     /**
-     * Gets the parent context of a given type
+     * Returns the expression of the query
      *
-     * @param currentContext     the current context
-     * @param parentContextTypes the parent content types
-     * @return a parser rule context
+     * @return the root node of the query or null if the query is empty
      */
-    private ParserRuleContext getParentContextOfType(ParserRuleContext currentContext, final Class<?>... parentContextTypes) {
-        while (currentContext != null) {
-            currentContext = currentContext.getParent();
-            if (currentContext != null) {
-                for (Class<?> parentContextType : parentContextTypes) {
-                    if (parentContextType.isAssignableFrom(currentContext.getClass())) {
-                        return currentContext;
-                    }
-                }
-            }
-        }
-        return null;
+    public Node getExpression() {
+        return nodes.peek();
     }
 
     /**
-     * Returns a list of parsed expressions
+     * Returns a list of parsed expressions, lowered to criteria predicates with the parser of the listener.
+     * The parameter values must be bound to the query with the bindings of the parser (see {@link QueryParser#getBindings()})
+     * unless parameter binding is disabled
      *
-     * @return a list of predicates
+     * @return a list with the predicate of the query or null if the query is empty
+     * @deprecated use {@link #getExpression()} and lower the expression with a {@link CriteriaVisitor}
      */
+    @Deprecated
     public List<Predicate> getExpressions() {
-        return expressions.get(null);
+        if (parser == null) {
+            throw new IllegalStateException("The listener has been created without a parser");
+        }
+        final Node expression = getExpression();
+        if (expression == null) {
+            return null;
+        }
+        AbstractQueryParser.checkMaxExpressions(expression);
+        final List<Predicate> expressions = new ArrayList<>();
+        expressions.add(expression.accept(new CriteriaVisitor(parser)));
+        return expressions;
     }
 }
@@ -18,6 +18,10 @@ package eu.ill.preql.parser;
 import eu.ill.preql.FilterLexer;
 import eu.ill.preql.FilterParser;
 import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.metrics.QueryEvent;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.parser.ast.Node;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStream;
@@ -28,6 +32,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNull;
 import static org.antlr.v4.runtime.CharStreams.fromStream;
 
 /**
@@ -37,6 +43,9 @@ import static org.antlr.v4.runtime.CharStreams.fromStream;
  */
 public class QueryParser extends AbstractQueryParser {
 
+    private static volatile ParsedQueryCache queryCache   = new ParsedQueryCache(512, 256 * 1024);
+    private static volatile SyntaxParser     syntaxParser = SyntaxParser.ANTLR;
+
     public QueryParser(final QueryParserContext context) {
         super(context);
     }
@@ -49,21 +58,126 @@ public class QueryParser extends AbstractQueryParser {
      */
     @Override
     public Predicate[] parse(final String preql) {
+        return parse(parseQuery(preql));
+    }
+
+    /**
+     * Convert a parsed query into predicates for the root of this parser
+     *
+     * @param query the parsed query
+     * @return a list of predicates
+     */
+    public Predicate[] parse(final ParsedQuery query) {
         try {
-            if (preql == null) {
+            bindings.clear();
+            subqueries.clear();
+            if (query.isEmpty()) {
                 return mergeExpressions();
             }
 
+            final Node expression = query.getExpression();
+            checkMaxExpressions(expression);
+
+            final QueryEvent event = QueryObservers.start(QueryPhase.COMPILE);
+            final Predicate predicate = expression.accept(new CriteriaVisitor(this));
+            QueryObservers.complete(event, query, this.query, -1);
+            return mergeExpressions(singletonList(predicate));
+        } catch (InvalidQueryException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new InvalidQueryException("Failed to parse query", exception);
+        }
+    }
+
+    /**
+     * Lex and parse a query
+     * The parsed query does not depend on any query root and can be converted into predicates
+     * by any number of parsers. Parsed queries are cached by query text (see {@link #setQueryCache(ParsedQueryCache)})
+     *
+     * @param preql the query to be parsed
+     * @return the parsed query
+     */
+    public static ParsedQuery parseQuery(final String preql) {
+        if (preql == null) {
+            return new ParsedQuery(null, null);
+        }
+        final ParsedQueryCache cache = queryCache;
+        final SyntaxParser parser = syntaxParser;
+        if (cache == null) {
+            return parseQuery(parser, preql);
+        }
+        return cache.get(preql, query -> parseQuery(parser, query));
+    }
+
+    /**
+     * Lex and parse a query with the given parser
+     *
+     * @param parser the syntax parser
+     * @param preql  the query to be parsed
+     * @return the parsed query
+     */
+    private static ParsedQuery parseQuery(final SyntaxParser parser, final String preql) {
+        final QueryEvent event = QueryObservers.start(QueryPhase.PARSE);
+        final ParsedQuery query = parser.parse(preql);
+        QueryObservers.complete(event, query, null, -1);
+        return query;
+    }
+
+    /**
+     * Get the cache of parsed queries
+     *
+     * @return the cache or null if the parsed queries are not cached
+     */
+    public static ParsedQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Set the cache of parsed queries
+     * By default, up to 512 queries with a total length of 256K characters are cached
+     *
+     * @param cache the cache (null to disable the caching of parsed queries)
+     */
+    public static void setQueryCache(final ParsedQueryCache cache) {
+        queryCache = cache;
+    }
+
+    /**
+     * Get the parser used to lex and parse the queries
+     *
+     * @return the syntax parser
+     */
+    public static SyntaxParser getSyntaxParser() {
+        return syntaxParser;
+    }
+
+    /**
+     * Set the parser used to lex and parse the queries
+     * By default, the parser generated by ANTLR is used
+     *
+     * @param parser the syntax parser
+     */
+    public static void setSyntaxParser(final SyntaxParser parser) {
+        syntaxParser = requireNonNull(parser, "Syntax parser cannot be null");
+    }
+
+    /**
+     * Lex and parse a query with the ANTLR parser, without using the cache
+     *
+     * @param preql the query to be parsed
+     * @return the parsed query
+     */
+    static ParsedQuery parseWithAntlr(final String preql) {
+        try {
             final CharStream stream = createStream(preql);
             final FilterLexer lexer = createLexer(stream);
             final FilterParser parser = createParser(new CommonTokenStream(lexer));
             final FilterParser.QueryContext queryContext = parser.query();
-            final ParseTreeWalker walker = new ParseTreeWalker();
-            final QueryListener listener = new QueryListener(this);
+            final QueryListener listener = new QueryListener();
 
-            walker.walk(listener, queryContext);
+            new ParseTreeWalker().walk(listener, queryContext);
 
-            return mergeExpressions(listener.getExpressions());
+            return new ParsedQuery(preql, listener.getExpression());
         } catch (InvalidQueryException exception) {
             throw exception;
         } catch (Exception exception) {
@@ -77,7 +191,7 @@ public class QueryParser extends AbstractQueryParser {
      * @param stream the character stream
      * @return the lexer
      */
-    private FilterLexer createLexer(final CharStream stream) {
+    private static FilterLexer createLexer(final CharStream stream) {
         final FilterLexer lexer = new FilterLexer(stream);
         lexer.removeErrorListeners();
         lexer.addErrorListener(SYNTAX_ERROR_LISTENER);
@@ -91,7 +205,7 @@ public class QueryParser extends AbstractQueryParser {
      * @param input the query input
      * @return the parser
      */
-    private FilterParser createParser(final TokenStream input) {
+    private static FilterParser createParser(final TokenStream input) {
         final FilterParser parser = new FilterParser(input);
         parser.removeErrorListeners();
         parser.addErrorListener(SYNTAX_ERROR_LISTENER);
@@ -104,7 +218,7 @@ public class QueryParser extends AbstractQueryParser {
      * @param preql the query
      * @return a character stream
      */
-    private CharStream createStream(final String preql) throws IOException {
+    private static CharStream createStream(final String preql) throws IOException {
         final InputStream stream = new ByteArrayInputStream(preql.getBytes());
         return fromStream(stream);
     }
@@ -17,8 +17,10 @@ package eu.ill.preql.parser;
 
 import eu.ill.preql.support.Field;
 
+import jakarta.persistence.criteria.AbstractQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Predicate;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,10 +32,12 @@ import java.util.Map;
 public class QueryParserContext {
 
     private final CriteriaBuilder criteriaBuilder;
+    private final AbstractQuery<?> query;
     private final List<Predicate> expressions;
     private final Map<String, Object> parameters;
     private final ValueParsers valueParsers;
     private final Map<String, Field> fields;
+    private final Map<Object, Object> parsedValues;
 
     /**
      * Create a new context
@@ -49,11 +53,53 @@ public class QueryParserContext {
                               final Map<String, Object> parameters,
                               final List<Predicate> expressions,
                               final ValueParsers valueParsers) {
+        this(criteriaBuilder, null, fields, parameters, expressions, valueParsers);
+    }
+
+    /**
+     * Create a new context
+     *
+     * @param criteriaBuilder the criteria builder {@link CriteriaBuilder}
+     * @param query           the query the expressions are created for (used to create subqueries)
+     * @param fields          the defined fields
+     * @param parameters      the bound parameters
+     * @param expressions     the predefined expressions
+     * @param valueParsers    the value parsers for coercing parameter values
+     */
+    public QueryParserContext(final CriteriaBuilder criteriaBuilder,
+                              final AbstractQuery<?> query,
+                              final Map<String, Field> fields,
+                              final Map<String, Object> parameters,
+                              final List<Predicate> expressions,
+                              final ValueParsers valueParsers) {
+        this(criteriaBuilder, query, fields, parameters, expressions, valueParsers, new HashMap<>());
+    }
+
+    /**
+     * Create a new context
+     *
+     * @param criteriaBuilder the criteria builder {@link CriteriaBuilder}
+     * @param query           the query the expressions are created for (used to create subqueries)
+     * @param fields          the defined fields
+     * @param parameters      the bound parameters
+     * @param expressions     the predefined expressions
+     * @param valueParsers    the value parsers for coercing parameter values
+     * @param parsedValues    the coerced parameter values, which can be shared by the parsers of the same parameters
+     */
+    public QueryParserContext(final CriteriaBuilder criteriaBuilder,
+                              final AbstractQuery<?> query,
+                              final Map<String, Field> fields,
+                              final Map<String, Object> parameters,
+                              final List<Predicate> expressions,
+                              final ValueParsers valueParsers,
+                              final Map<Object, Object> parsedValues) {
         this.criteriaBuilder = criteriaBuilder;
+        this.query = query;
         this.parameters = parameters;
         this.fields = fields;
         this.expressions = expressions;
         this.valueParsers = valueParsers;
+        this.parsedValues = parsedValues;
     }
 
 
@@ -61,6 +107,10 @@ public class QueryParserContext {
         return criteriaBuilder;
     }
 
+    public AbstractQuery<?> getQuery() {
+        return query;
+    }
+
     public List<Predicate> getExpressions() {
         return expressions;
     }
@@ -77,5 +127,9 @@ public class QueryParserContext {
         return fields;
     }
 
+    public Map<Object, Object> getParsedValues() {
+        return parsedValues;
+    }
+
 
 }
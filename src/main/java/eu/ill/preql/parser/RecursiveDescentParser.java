@@ -0,0 +1,363 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.ComparisonOperator;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.Node;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+
+import static java.lang.String.format;
+
+/**
+ * A hand written, single pass parser for the language defined in <code>Filter.g4</code>.
+ * The tokens are read on demand from the query text, without building a token stream or a parse tree,
+ * and the abstract syntax tree is created directly.
+ * As in the grammar, AND and OR have the same precedence and are evaluated from left to right
+ *
+ * @author Jamie Hall
+ */
+final class RecursiveDescentParser {
+
+    private static final int EOF        = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int COLON      = 2;
+    private static final int OPEN_PAR   = 3;
+    private static final int CLOSE_PAR  = 4;
+    private static final int LT         = 5;
+    private static final int LT_EQ      = 6;
+    private static final int GT         = 7;
+    private static final int GT_EQ      = 8;
+    private static final int EQ         = 9;
+    private static final int NOT_EQ     = 10;
+    private static final int AND        = 11;
+    private static final int OR         = 12;
+    private static final int NOT        = 13;
+    private static final int BETWEEN    = 14;
+    private static final int IN         = 15;
+    private static final int LIKE       = 16;
+    private static final int IS         = 17;
+    private static final int NULL       = 18;
+
+    private final String query;
+    private final int    length;
+    private       int    position;
+    private       int    line      = 1;
+    private       int    lineStart = 0;
+
+    private int type;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;
+    private int tokenColumn;
+
+    private RecursiveDescentParser(final String query) {
+        this.query = query;
+        this.length = query.length();
+    }
+
+    /**
+     * Parse a query
+     *
+     * @param preql the query to be parsed
+     * @return the parsed query
+     * @throws InvalidQueryException if the query is not valid
+     */
+    static ParsedQuery parse(final String preql) {
+        final RecursiveDescentParser parser = new RecursiveDescentParser(preql);
+        parser.next();
+        if (parser.type == EOF) {
+            return new ParsedQuery(preql, null);
+        }
+        final Node expression = parser.parseExpression();
+        if (parser.type != EOF) {
+            throw parser.error("extraneous input");
+        }
+        return new ParsedQuery(preql, expression);
+    }
+
+    /**
+     * expression : primary ((AND | OR) primary)*
+     *
+     * @return the node of the expression
+     */
+    private Node parseExpression() {
+        Node left = parsePrimary();
+        while (type == AND || type == OR) {
+            final int operator = type;
+            next();
+            final Node right = parsePrimary();
+            left = operator == AND ? new AndNode(left, right) : new OrNode(left, right);
+        }
+        return left;
+    }
+
+    /**
+     * primary : '(' expression ')' | field operator parameter | field NOT? BETWEEN parameter AND parameter
+     * | field NOT? IN parameter | field NOT? LIKE parameter | field IS NOT? NULL
+     *
+     * @return the node of the expression
+     */
+    private Node parsePrimary() {
+        if (type == OPEN_PAR) {
+            next();
+            final Node expression = parseExpression();
+            expect(CLOSE_PAR);
+            return expression;
+        }
+        if (type != IDENTIFIER) {
+            throw error("expected a field or '('");
+        }
+        final String field = text();
+        next();
+        switch (type) {
+            case LT:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.LT, parseParameter());
+            case LT_EQ:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.LT_EQ, parseParameter());
+            case GT:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.GT, parseParameter());
+            case GT_EQ:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.GT_EQ, parseParameter());
+            case EQ:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.EQ, parseParameter());
+            case NOT_EQ:
+                next();
+                return new ComparisonNode(field, ComparisonOperator.NOT_EQ, parseParameter());
+            case IS:
+                next();
+                final boolean notNull = accept(NOT);
+                expect(NULL);
+                return new NullNode(field, notNull);
+            default:
+                final boolean negated = accept(NOT);
+                if (accept(BETWEEN)) {
+                    final String lower = parseParameter();
+                    expect(AND);
+                    return new BetweenNode(field, lower, parseParameter(), negated);
+                }
+                if (accept(IN)) {
+                    return new InNode(field, parseParameter(), negated);
+                }
+                if (accept(LIKE)) {
+                    return new LikeNode(field, parseParameter(), negated);
+                }
+                throw error("expected an operator");
+        }
+    }
+
+    /**
+     * parameter : ':' IDENTIFIER
+     *
+     * @return the name of the parameter
+     */
+    private String parseParameter() {
+        expect(COLON);
+        if (type != IDENTIFIER) {
+            throw error("expected a parameter name");
+        }
+        final String parameter = text();
+        next();
+        return parameter;
+    }
+
+    private boolean accept(final int expected) {
+        if (type == expected) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final int expected) {
+        if (!accept(expected)) {
+            throw error("mismatched input");
+        }
+    }
+
+    private String text() {
+        return query.substring(tokenStart, tokenEnd);
+    }
+
+    private InvalidQueryException error(final String message) {
+        final String input = type == EOF ? "<EOF>" : text();
+        return new InvalidQueryException(format("Failed to parse query at line %d:%d: %s '%s'", tokenLine, tokenColumn, message, input));
+    }
+
+    /**
+     * Read the next token, skipping white spaces and comments
+     */
+    private void next() {
+        skipHidden();
+        tokenStart = position;
+        tokenLine = line;
+        tokenColumn = position - lineStart;
+        if (position >= length) {
+            type = EOF;
+            tokenEnd = position;
+            return;
+        }
+        final char c = query.charAt(position++);
+        if (isIdentifierStart(c)) {
+            while (position < length && isIdentifierPart(query.charAt(position))) {
+                position++;
+            }
+            type = keyword(tokenStart, position);
+        } else if (c == ':') {
+            type = COLON;
+        } else if (c == '(') {
+            type = OPEN_PAR;
+        } else if (c == ')') {
+            type = CLOSE_PAR;
+        } else if (c == '=') {
+            type = EQ;
+        } else if (c == '<') {
+            type = peek('=') ? LT_EQ : peek('>') ? NOT_EQ : LT;
+        } else if (c == '>') {
+            type = peek('=') ? GT_EQ : GT;
+        } else if (c == '!' && peek('=')) {
+            type = NOT_EQ;
+        } else if (c == '&' && peek('&')) {
+            type = AND;
+        } else if (c == '|' && peek('|')) {
+            type = OR;
+        } else {
+            tokenEnd = position;
+            type = -1;
+            throw error("unexpected character");
+        }
+        tokenEnd = position;
+    }
+
+    /**
+     * Consume the next character if it is the expected one
+     *
+     * @param expected the expected character
+     * @return true if the character was consumed
+     */
+    private boolean peek(final char expected) {
+        if (position < length && query.charAt(position) == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skip the white spaces, single line comments (<code>--</code>) and multi line comments (<code>/* *&#47;</code>)
+     */
+    private void skipHidden() {
+        while (position < length) {
+            final char c = query.charAt(position);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\u000B') {
+                position++;
+            } else if (c == '\n') {
+                newLine(++position);
+            } else if (c == '-' && position + 1 < length && query.charAt(position + 1) == '-') {
+                position += 2;
+                while (position < length && query.charAt(position) != '\n' && query.charAt(position) != '\r') {
+                    position++;
+                }
+            } else if (c == '/' && position + 1 < length && query.charAt(position + 1) == '*') {
+                position += 2;
+                while (position < length && !(query.charAt(position) == '*' && position + 1 < length && query.charAt(position + 1) == '/')) {
+                    if (query.charAt(position++) == '\n') {
+                        newLine(position);
+                    }
+                }
+                position = Math.min(position + 2, length);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void newLine(final int start) {
+        line++;
+        lineStart = start;
+    }
+
+    /**
+     * Get the type of an identifier token, keywords being case insensitive
+     *
+     * @param start the start of the token
+     * @param end   the end of the token
+     * @return the keyword type or {@link #IDENTIFIER}
+     */
+    private int keyword(final int start, final int end) {
+        switch (end - start) {
+            case 2:
+                if (matches(start, "OR")) {
+                    return OR;
+                }
+                if (matches(start, "IN")) {
+                    return IN;
+                }
+                if (matches(start, "IS")) {
+                    return IS;
+                }
+                return IDENTIFIER;
+            case 3:
+                if (matches(start, "AND")) {
+                    return AND;
+                }
+                if (matches(start, "NOT")) {
+                    return NOT;
+                }
+                return IDENTIFIER;
+            case 4:
+                if (matches(start, "LIKE")) {
+                    return LIKE;
+                }
+                if (matches(start, "NULL")) {
+                    return NULL;
+                }
+                return IDENTIFIER;
+            case 7:
+                return matches(start, "BETWEEN") ? BETWEEN : IDENTIFIER;
+            default:
+                return IDENTIFIER;
+        }
+    }
+
+    private boolean matches(final int start, final String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if ((query.charAt(start + i) & ~0x20) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierStart(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9') || c == '.';
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+/**
+ * The parsers that can be used to lex and parse Preql queries (see {@link QueryParser#setSyntaxParser(SyntaxParser)}).
+ * Both parsers accept the same language and produce the same parsed queries
+ *
+ * @author Jamie Hall
+ */
+public enum SyntaxParser {
+
+    /**
+     * The parser generated by ANTLR from the <code>Filter.g4</code> grammar
+     */
+    ANTLR {
+        @Override
+        public ParsedQuery parse(final String preql) {
+            return QueryParser.parseWithAntlr(preql);
+        }
+    },
+
+    /**
+     * A hand written recursive descent parser that reads the query in a single pass
+     * without building a token stream or a parse tree
+     */
+    RECURSIVE_DESCENT {
+        @Override
+        public ParsedQuery parse(final String preql) {
+            return RecursiveDescentParser.parse(preql);
+        }
+    };
+
+    /**
+     * Lex and parse a query without using the cache of parsed queries
+     *
+     * @param preql the query to be parsed
+     * @return the parsed query
+     * @throws eu.ill.preql.exception.InvalidQueryException if the query is not valid
+     */
+    public abstract ParsedQuery parse(final String preql);
+}
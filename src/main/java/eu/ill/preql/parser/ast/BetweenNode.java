@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A range expression: <code>field [NOT] BETWEEN :lower AND :upper</code>
+ *
+ * @author Jamie Hall
+ */
+public final class BetweenNode implements Node {
+
+    private final String             field;
+    private final String             lower;
+    private final String             upper;
+    private final boolean            negated;
+
+    /**
+     * @param field   the name of the field
+     * @param lower   the name of the parameter of the lower bound
+     * @param upper   the name of the parameter of the upper bound
+     * @param negated true if the expression is negated
+     */
+    public BetweenNode(final String field, final String lower, final String upper, final boolean negated) {
+        this.field = requireNonNull(field, "Field cannot be null");
+        this.lower = requireNonNull(lower, "Lower cannot be null");
+        this.upper = requireNonNull(upper, "Upper cannot be null");
+        this.negated = negated;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getLower() {
+        return lower;
+    }
+
+    public String getUpper() {
+        return upper;
+    }
+
+    public boolean isNegated() {
+        return negated;
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public int getExpressionCount() {
+        return 1;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof BetweenNode)) {
+            return false;
+        }
+        final BetweenNode that = (BetweenNode) object;
+        return field.equals(that.field) && lower.equals(that.lower) && upper.equals(that.upper) && negated == that.negated;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, lower, upper, negated);
+    }
+
+    @Override
+    public String toString() {
+        return field + (negated ? " NOT" : "") + " BETWEEN :" + lower + " AND :" + upper;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A comparison of a field with a parameter: <code>field &gt;= :parameter</code>
+ *
+ * @author Jamie Hall
+ */
+public final class ComparisonNode implements Node {
+
+    private final String             field;
+    private final ComparisonOperator operator;
+    private final String             parameter;
+
+    /**
+     * @param field     the name of the field
+     * @param operator  the comparison operator
+     * @param parameter the name of the parameter
+     */
+    public ComparisonNode(final String field, final ComparisonOperator operator, final String parameter) {
+        this.field = requireNonNull(field, "Field cannot be null");
+        this.operator = requireNonNull(operator, "Operator cannot be null");
+        this.parameter = requireNonNull(parameter, "Parameter cannot be null");
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public ComparisonOperator getOperator() {
+        return operator;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public int getExpressionCount() {
+        return 1;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof ComparisonNode)) {
+            return false;
+        }
+        final ComparisonNode that = (ComparisonNode) object;
+        return field.equals(that.field) && operator.equals(that.operator) && parameter.equals(that.parameter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, operator, parameter);
+    }
+
+    @Override
+    public String toString() {
+        return field + " " + operator.getSymbol() + " :" + parameter;
+    }
+}
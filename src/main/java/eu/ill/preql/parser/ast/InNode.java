@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A membership expression: <code>field [NOT] IN :parameter</code>
+ *
+ * @author Jamie Hall
+ */
+public final class InNode implements Node {
+
+    private final String             field;
+    private final String             parameter;
+    private final boolean            negated;
+
+    /**
+     * @param field     the name of the field
+     * @param parameter the name of the parameter (a list of values)
+     * @param negated   true if the expression is negated
+     */
+    public InNode(final String field, final String parameter, final boolean negated) {
+        this.field = requireNonNull(field, "Field cannot be null");
+        this.parameter = requireNonNull(parameter, "Parameter cannot be null");
+        this.negated = negated;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public boolean isNegated() {
+        return negated;
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public int getExpressionCount() {
+        return 1;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof InNode)) {
+            return false;
+        }
+        final InNode that = (InNode) object;
+        return field.equals(that.field) && parameter.equals(that.parameter) && negated == that.negated;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, parameter, negated);
+    }
+
+    @Override
+    public String toString() {
+        return field + (negated ? " NOT" : "") + " IN :" + parameter;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A logical combination of expressions
+ * Nested combinations with the same operator are flattened, as AND and OR are associative
+ *
+ * @author Jamie Hall
+ */
+public abstract class LogicalNode implements Node {
+
+    private final List<Node> children;
+    private final int        expressionCount;
+
+    /**
+     * @param children the combined expressions
+     */
+    LogicalNode(final List<Node> children) {
+        final List<Node> flattened = new ArrayList<>();
+        int count = 0;
+        for (final Node child : children) {
+            if (child.getClass() == getClass()) {
+                flattened.addAll(((LogicalNode) child).getChildren());
+            } else {
+                flattened.add(child);
+            }
+            count += child.getExpressionCount();
+        }
+        if (flattened.size() < 2) {
+            throw new IllegalArgumentException("A logical expression requires at least two expressions");
+        }
+        this.children = unmodifiableList(flattened);
+        this.expressionCount = count;
+    }
+
+    /**
+     * Get the combined expressions
+     *
+     * @return the expressions
+     */
+    public List<Node> getChildren() {
+        return children;
+    }
+
+    @Override
+    public int getExpressionCount() {
+        return expressionCount;
+    }
+
+    /**
+     * Get the keyword of the operator in a query
+     *
+     * @return the operator keyword
+     */
+    protected abstract String getOperator();
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (object == null || object.getClass() != getClass()) {
+            return false;
+        }
+        return children.equals(((LogicalNode) object).children);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getClass().hashCode() + children.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                builder.append(' ').append(getOperator()).append(' ');
+            }
+            builder.append(children.get(i));
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+/**
+ * A node of the abstract syntax tree of a query.
+ * Nodes are immutable and only reference field names and parameter names, so a tree does not depend
+ * on any query root or parameter values and can be cached, rewritten or lowered by different backends
+ *
+ * @author Jamie Hall
+ */
+public interface Node {
+
+    /**
+     * Accept a visitor
+     *
+     * @param visitor the visitor
+     * @param <R>     the result type of the visitor
+     * @return the result of the visitor
+     */
+    <R> R accept(NodeVisitor<R> visitor);
+
+    /**
+     * Get the number of field expressions of the node
+     *
+     * @return the number of field expressions
+     */
+    int getExpressionCount();
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+/**
+ * A visitor of the nodes of a query
+ *
+ * @param <R> the result type of the visitor
+ * @author Jamie Hall
+ */
+public interface NodeVisitor<R> {
+
+    R visit(ComparisonNode node);
+
+    R visit(BetweenNode node);
+
+    R visit(InNode node);
+
+    R visit(LikeNode node);
+
+    R visit(NullNode node);
+
+    R visit(AndNode node);
+
+    R visit(OrNode node);
+}
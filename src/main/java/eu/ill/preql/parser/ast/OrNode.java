@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser.ast;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * A disjunction of expressions: <code>a OR b</code>
+ *
+ * @author Jamie Hall
+ */
+public final class OrNode extends LogicalNode {
+
+    /**
+     * @param children the combined expressions
+     */
+    public OrNode(final List<Node> children) {
+        super(children);
+    }
+
+    /**
+     * @param children the combined expressions
+     */
+    public OrNode(final Node... children) {
+        super(asList(children));
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    protected String getOperator() {
+        return "OR";
+    }
+}
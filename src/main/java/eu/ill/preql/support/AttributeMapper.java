@@ -15,6 +15,7 @@
  */
 package eu.ill.preql.support;
 
+import eu.ill.preql.exception.InvalidQueryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,10 +23,13 @@ import jakarta.persistence.criteria.From;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
 import jakarta.persistence.metamodel.ManagedType;
 import jakarta.persistence.metamodel.Metamodel;
 import jakarta.persistence.metamodel.PluralAttribute;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import static java.lang.String.format;
@@ -40,9 +44,10 @@ import static jakarta.persistence.metamodel.Attribute.PersistentAttributeType.EM
  */
 public class AttributeMapper<E> {
 
-    private static final Logger    logger = LoggerFactory.getLogger(AttributeMapper.class);
-    private final        Root<E>   root;
-    private final        Metamodel metamodel;
+    private static final    Logger             logger                    = LoggerFactory.getLogger(AttributeMapper.class);
+    private static volatile CollectionStrategy defaultCollectionStrategy = CollectionStrategy.JOIN;
+    private final           Root<E>            root;
+    private final           Metamodel          metamodel;
 
     /**
      * @param root      the root type in the from clause.
@@ -65,6 +70,177 @@ public class AttributeMapper<E> {
         return traverse(attribute);
     }
 
+    /**
+     * Get the path for a given attribute in a subquery correlated to the root
+     *
+     * @param attribute the name of the represented attribute
+     * @param subquery  the subquery
+     * @return the path for the property in the subquery
+     */
+    public Path<?> correlate(final String attribute, final Subquery<?> subquery) {
+        requireNonNull(attribute, "Attribute cannot be null");
+        return new AttributeMapper<>(subquery.correlate(root), metamodel).get(attribute);
+    }
+
+    /**
+     * Check if the path of a given attribute goes through a collection (plural attribute)
+     * The check only uses the metamodel, no join is created
+     *
+     * @param attribute the name of the represented attribute
+     * @return true if the attribute belongs to a collection, otherwise false
+     */
+    public boolean isCollection(final String attribute) {
+        requireNonNull(attribute, "Attribute cannot be null");
+        ManagedType<?> metadata = metamodel.managedType(root.getJavaType());
+        for (final String name : splitAttributes(attribute)) {
+            hasAttributeName(name, metadata);
+            if (metadata.getAttribute(name).isCollection()) {
+                return true;
+            }
+            if (!isAssociation(name, metadata) && !isEmbedded(name, metadata)) {
+                return false;
+            }
+            metadata = metamodel.managedType(getType(name, metadata));
+        }
+        return false;
+    }
+
+    /**
+     * Get the entity types of the path of a given attribute: the entity of the root and the entities of its associations
+     * The types only come from the metamodel, no join is created
+     *
+     * @param attribute the name of the represented attribute
+     * @return the entity types
+     */
+    public Set<Class<?>> getEntityTypes(final String attribute) {
+        requireNonNull(attribute, "Attribute cannot be null");
+        final Set<Class<?>> types = new LinkedHashSet<>();
+        ManagedType<?> metadata = metamodel.managedType(root.getJavaType());
+        types.add(metadata.getJavaType());
+        for (final String name : splitAttributes(attribute)) {
+            hasAttributeName(name, metadata);
+            if (!isAssociation(name, metadata) && !isEmbedded(name, metadata)) {
+                break;
+            }
+            metadata = metamodel.managedType(getType(name, metadata));
+            if (metadata instanceof EntityType) {
+                types.add(metadata.getJavaType());
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Get the Java type of a given attribute (the type of its elements for a collection)
+     * The type only comes from the metamodel, no join is created
+     *
+     * @param attribute the name of the represented attribute
+     * @return the Java type
+     * @throws IllegalArgumentException if an attribute of the path does not exist
+     */
+    public Class<?> getJavaType(final String attribute) {
+        return getJavaType(metamodel, root.getJavaType(), attribute);
+    }
+
+    /**
+     * Get the Java type of an attribute of a managed type (the type of its elements for a collection),
+     * checking that every attribute of the path exists
+     *
+     * @param metamodel the metamodel of the persistence unit
+     * @param type      the managed type that declares the first attribute of the path
+     * @param attribute the name of the represented attribute
+     * @return the Java type
+     * @throws IllegalArgumentException if an attribute of the path does not exist
+     */
+    public static Class<?> getJavaType(final Metamodel metamodel, final Class<?> type, final String attribute) {
+        requireNonNull(attribute, "Attribute cannot be null");
+        ManagedType<?> metadata = metamodel.managedType(type);
+        Class<?>       current  = type;
+        for (final String name : splitAttributes(attribute)) {
+            if (metadata == null) {
+                throw new IllegalArgumentException(format("Unknown attribute %s on %s", name, current));
+            }
+            hasAttributeName(name, metadata);
+            current = getType(name, metadata);
+            metadata = isAssociation(name, metadata) || isEmbedded(name, metadata) ? metamodel.managedType(current) : null;
+        }
+        return current;
+    }
+
+    /**
+     * Get the collection strategy to use for a field
+     *
+     * @param strategy the strategy of the field (can be null)
+     * @return the strategy of the field or the default strategy if it is null
+     */
+    public CollectionStrategy getCollectionStrategy(final CollectionStrategy strategy) {
+        return strategy == null ? defaultCollectionStrategy : strategy;
+    }
+
+    /**
+     * Get the default strategy for fields that belong to a collection
+     *
+     * @return the default collection strategy
+     */
+    public static CollectionStrategy getDefaultCollectionStrategy() {
+        return defaultCollectionStrategy;
+    }
+
+    /**
+     * Set the default strategy for fields that belong to a collection
+     * The default strategy is {@link CollectionStrategy#JOIN}
+     *
+     * @param strategy the default collection strategy
+     */
+    public static void setDefaultCollectionStrategy(final CollectionStrategy strategy) {
+        defaultCollectionStrategy = requireNonNull(strategy, "Collection strategy cannot be null");
+    }
+
+    /**
+     * Check if a collection (plural attribute) has been joined to the given path.
+     * A collection join can return the same entity more than once
+     *
+     * @param from the path to check
+     * @return true if a collection join exists, otherwise false
+     */
+    public static boolean hasCollectionJoin(final From<?, ?> from) {
+        for (final Join<?, ?> join : from.getJoins()) {
+            if (join.getAttribute().isCollection() || hasCollectionJoin(join)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the joins of a path and of its joins
+     *
+     * @param from the path
+     * @return the number of joins
+     */
+    public static int countJoins(final From<?, ?> from) {
+        int count = 0;
+        for (final Join<?, ?> join : from.getJoins()) {
+            count += 1 + countJoins(join);
+        }
+        return count;
+    }
+
+    /**
+     * Get the name of the identifier attribute of the entity of a root
+     *
+     * @param root the root
+     * @return the name of the identifier attribute
+     * @throws InvalidQueryException if the entity does not have a single identifier attribute
+     */
+    public static String getIdAttribute(final Root<?> root) {
+        final EntityType<?> model = root.getModel();
+        if (!model.hasSingleIdAttribute()) {
+            throw new InvalidQueryException(format("Entity %s does not have a single identifier attribute", model.getName()));
+        }
+        return model.getId(model.getIdType().getJavaType()).getName();
+    }
+
     /**
      * Traverse the attribute
      *
@@ -82,7 +258,7 @@ public class AttributeMapper<E> {
      * @param attribute the name of the represented attribute
      * @return an array of attribute names
      */
-    private String[] splitAttributes(final String attribute) {
+    private static String[] splitAttributes(final String attribute) {
         return attribute.split("\\.");
     }
 
@@ -145,7 +321,7 @@ public class AttributeMapper<E> {
      * @param attribute the name of the represented attribute
      * @param metadata  the metadata that represents the entity, mapped superclass or embeddable for the given attribute
      */
-    private <T> void hasAttributeName(final String attribute, final ManagedType<T> metadata) {
+    private static <T> void hasAttributeName(final String attribute, final ManagedType<T> metadata) {
         final Set<Attribute<? super T, ?>> names = metadata.getAttributes();
         for (final Attribute<? super T, ?> name : names) {
             if (name.getName().equals(attribute)) {
@@ -162,7 +338,7 @@ public class AttributeMapper<E> {
      * @param metadata  the metadata that represents the entity, mapped superclass or embeddable for the given attribute
      * @return the Java type of the represented attribute.
      */
-    private <T> Class<?> getType(final String attribute, final ManagedType<T> metadata) {
+    private static <T> Class<?> getType(final String attribute, final ManagedType<T> metadata) {
         if (metadata.getAttribute(attribute).isCollection()) {
             return ((PluralAttribute) metadata.getAttribute(attribute)).getBindableJavaType();
         }
@@ -176,7 +352,7 @@ public class AttributeMapper<E> {
      * @param metadata  the metadata that represents the entity of the given property
      * @return true if it is an association, otherwise false
      */
-    private <T> boolean isAssociation(final String attribute, final ManagedType<T> metadata) {
+    private static <T> boolean isAssociation(final String attribute, final ManagedType<T> metadata) {
         return metadata.getAttribute(attribute).isAssociation();
     }
 
@@ -185,7 +361,7 @@ public class AttributeMapper<E> {
      * @param metadata  the metadata that represents the entity, mapped superclass or embeddable for the given attribute
      * @return true if it is embedded otherwise false
      */
-    private <T> boolean isEmbedded(final String attribute, final ManagedType<T> metadata) {
+    private static <T> boolean isEmbedded(final String attribute, final ManagedType<T> metadata) {
         return metadata.getAttribute(attribute).getPersistentAttributeType() == EMBEDDED;
     }
 
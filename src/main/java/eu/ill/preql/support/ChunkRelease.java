@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+/**
+ * How the entities of a processed chunk of a chunked result stream are released from the persistence context
+ *
+ * @author Jamie Hall
+ */
+public enum ChunkRelease {
+
+    /**
+     * Detach the root entities of the chunk, keeping the other entities of the persistence context.
+     * The associated entities and collections loaded with the chunk stay in the persistence context
+     * (unless the detach operation is cascaded to them), so the memory used grows with the number of results
+     */
+    DETACH,
+
+    /**
+     * Clear the whole persistence context, also releasing the associated entities loaded with the chunk.
+     * The entities loaded by the entity manager before the stream are detached too. When the entity manager is joined
+     * to a transaction, its pending changes are flushed before the persistence context is cleared; otherwise the changes
+     * that have not been flushed are lost, so flush them before streaming or use {@link #DETACH}
+     */
+    CLEAR
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import eu.ill.preql.parser.FieldValueParser;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Subquery;
+
+import static eu.ill.preql.support.CollectionStrategy.EXISTS;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a field that belongs to a collection and uses the {@link CollectionStrategy#EXISTS} strategy.
+ * The field is resolved in a correlated subquery for every expression, so no join is added to the query root.
+ * A collection field cannot be ordered
+ *
+ * @author Jamie Hall
+ */
+public class CollectionField implements Field {
+
+    private final String             attribute;
+    private final String             name;
+    private final AttributeMapper<?> mapper;
+    private final FieldValueParser   valueParser;
+    private       Path<?>            path;
+
+    /**
+     * Create a new collection field
+     *
+     * @param attribute   - the attribute of the field
+     * @param name        - the name of the field
+     * @param mapper      - the attribute mapper of the query root
+     * @param valueParser - a custom value parser for the field
+     */
+    public CollectionField(final String attribute, final String name, final AttributeMapper<?> mapper, final FieldValueParser valueParser) {
+        this.attribute = requireNonNull(attribute, "Attribute cannot be null");
+        this.name = requireNonNull(name, "Name cannot be null");
+        this.mapper = requireNonNull(mapper, "Mapper cannot be null");
+        this.valueParser = valueParser;
+    }
+
+    @Override
+    public String getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The path of the field joined to the query root.
+     * The join is only created if the path is requested
+     *
+     * @return path to the attribute of the field
+     */
+    @Override
+    public Path<?> getPath() {
+        if (path == null) {
+            path = mapper.get(attribute);
+        }
+        return path;
+    }
+
+    @Override
+    public FieldValueParser getValueParser() {
+        return valueParser;
+    }
+
+    @Override
+    public CollectionStrategy getCollectionStrategy() {
+        return EXISTS;
+    }
+
+    /**
+     * Create the path of the field in a subquery correlated to the query root
+     *
+     * @param subquery the subquery
+     * @return the path to the attribute of the field in the subquery
+     */
+    public Path<?> correlate(final Subquery<?> subquery) {
+        return mapper.correlate(attribute, subquery);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("attribute", attribute)
+                .append("name", name)
+                .append("valueParser", valueParser)
+                .toString();
+    }
+}
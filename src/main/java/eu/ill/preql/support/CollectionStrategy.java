@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+/**
+ * Defines how the expressions on a field that belongs to a collection (plural attribute) are translated
+ *
+ * @author Jamie Hall
+ */
+public enum CollectionStrategy {
+    /**
+     * The collection is joined to the query root. The rows are grouped by the root to remove duplicates
+     */
+    JOIN,
+
+    /**
+     * Every expression on the field is translated into a correlated EXISTS subquery.
+     * The query returns one row per root entity and does not need to be grouped
+     */
+    EXISTS
+}
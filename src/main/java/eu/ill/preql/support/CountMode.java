@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+/**
+ * How the total of a page is counted when it cannot be derived from the page
+ *
+ * @author Jamie Hall
+ */
+public enum CountMode {
+
+    /**
+     * Count all of the results of the query
+     */
+    EXACT,
+
+    /**
+     * Count the results of the query up to a maximum count, by fetching a limited number of identifiers,
+     * so that a broad query never counts its whole set of results
+     */
+    CAPPED,
+
+    /**
+     * Do not count the results: the page only reports if there is a next page
+     */
+    NONE,
+
+    /**
+     * Select the total with the results of the page, in one statement, using the window function count(*) over ().
+     * The results are counted exactly when the window count is not supported (see {@link eu.ill.preql.FilterQuery#setWindowCount})
+     */
+    WINDOW
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.ClassUtils.primitiveToWrapper;
+
+/**
+ * The position of a row in an ordered query, used for keyset pagination.
+ * A cursor holds the values of the sort key of a row (the order field and the identifier of the root entity)
+ * and is exchanged with clients as an opaque, url safe token
+ *
+ * @author Jamie Hall
+ */
+public final class Cursor {
+
+    private final String       order;
+    private final List<String> values;
+
+    /**
+     * @param order  the order of the query that the cursor belongs to
+     * @param values the formatted values of the sort key of the row
+     */
+    private Cursor(final String order, final List<String> values) {
+        this.order = requireNonNull(order, "Order cannot be null");
+        this.values = unmodifiableList(values);
+    }
+
+    /**
+     * Create a cursor for the sort key of a row
+     * The values are formatted by their runtime type
+     *
+     * @param order  the order of the query that the cursor belongs to
+     * @param values the values of the sort key of the row (can contain null values)
+     * @return the cursor
+     * @throws InvalidQueryException if the type of a value is not supported
+     */
+    public static Cursor of(final String order, final List<?> values) {
+        final List<String> formatted = new ArrayList<>();
+        for (final Object value : values) {
+            formatted.add(value == null ? null : format(value, value.getClass()));
+        }
+        return new Cursor(order, formatted);
+    }
+
+    /**
+     * Create a cursor for the sort key of a row
+     * The values are formatted by the declared types of their paths, so that they are decoded with the same types
+     * (for example a java.sql.Timestamp returned for a java.util.Date attribute)
+     *
+     * @param order  the order of the query that the cursor belongs to
+     * @param values the values of the sort key of the row (can contain null values)
+     * @param types  the declared types of the values
+     * @return the cursor
+     * @throws InvalidQueryException if a type is not supported
+     */
+    public static Cursor of(final String order, final List<?> values, final List<Class<?>> types) {
+        if (values.size() != types.size()) {
+            throw new IllegalArgumentException("A type must be given for every value");
+        }
+        final List<String> formatted = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            final Object value = values.get(i);
+            formatted.add(value == null ? null : format(value, types.get(i)));
+        }
+        return new Cursor(order, formatted);
+    }
+
+    /**
+     * Decode a cursor token
+     *
+     * @param token the token
+     * @return the cursor
+     * @throws InvalidQueryException if the token is not a valid cursor
+     */
+    public static Cursor decode(final String token) {
+        try {
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+            final String order = input.readUTF();
+            final int size = input.readUnsignedByte();
+            final List<String> values = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                values.add(input.readBoolean() ? input.readUTF() : null);
+            }
+            if (input.available() > 0) {
+                throw new InvalidQueryException("Invalid cursor");
+            }
+            return new Cursor(order, values);
+        } catch (IOException | IllegalArgumentException exception) {
+            throw new InvalidQueryException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Encode the cursor as an opaque token
+     *
+     * @return the token
+     */
+    public String encode() {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(bytes);
+            output.writeUTF(order);
+            output.writeByte(values.size());
+            for (final String value : values) {
+                output.writeBoolean(value != null);
+                if (value != null) {
+                    output.writeUTF(value);
+                }
+            }
+            output.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Get the order of the query that the cursor belongs to
+     *
+     * @return the order
+     */
+    public String getOrder() {
+        return order;
+    }
+
+    /**
+     * Get the number of values of the sort key
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Get a value of the sort key
+     *
+     * @param index the index of the value
+     * @param type  the type of the value
+     * @return the value (null if the row has no value)
+     * @throws InvalidQueryException if the value cannot be converted to the given type
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object getValue(final int index, final Class<?> type) {
+        final String value = values.get(index);
+        if (value == null) {
+            return null;
+        }
+        final Class<?> wrapper = primitiveToWrapper(type);
+        try {
+            if (wrapper == String.class) {
+                return value;
+            } else if (wrapper == Long.class) {
+                return Long.valueOf(value);
+            } else if (wrapper == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (wrapper == Short.class) {
+                return Short.valueOf(value);
+            } else if (wrapper == Byte.class) {
+                return Byte.valueOf(value);
+            } else if (wrapper == Double.class) {
+                return Double.valueOf(value);
+            } else if (wrapper == Float.class) {
+                return Float.valueOf(value);
+            } else if (wrapper == BigDecimal.class) {
+                return new BigDecimal(value);
+            } else if (wrapper == BigInteger.class) {
+                return new BigInteger(value);
+            } else if (wrapper == Boolean.class) {
+                return Boolean.valueOf(value);
+            } else if (wrapper == Character.class && value.length() == 1) {
+                return value.charAt(0);
+            } else if (wrapper == UUID.class) {
+                return UUID.fromString(value);
+            } else if (wrapper.isEnum()) {
+                return Enum.valueOf((Class<Enum>) wrapper, value);
+            } else if (wrapper == Timestamp.class) {
+                return Timestamp.from(Instant.parse(value));
+            } else if (wrapper == java.sql.Date.class) {
+                return new java.sql.Date(Long.parseLong(value));
+            } else if (wrapper == Date.class) {
+                return parseDate(value);
+            } else if (wrapper == LocalDate.class) {
+                return LocalDate.parse(value);
+            } else if (wrapper == LocalDateTime.class) {
+                return LocalDateTime.parse(value);
+            } else if (wrapper == LocalTime.class) {
+                return LocalTime.parse(value);
+            } else if (wrapper == Instant.class) {
+                return Instant.parse(value);
+            } else if (wrapper == OffsetDateTime.class) {
+                return OffsetDateTime.parse(value);
+            } else if (wrapper == ZonedDateTime.class) {
+                return ZonedDateTime.parse(value);
+            }
+        } catch (RuntimeException exception) {
+            throw new InvalidQueryException("Invalid cursor");
+        }
+        throw new InvalidQueryException("Invalid cursor");
+    }
+
+    /**
+     * Format a value of the sort key by its declared type
+     *
+     * @param value the value
+     * @param type  the declared type of the value
+     * @return the formatted value
+     */
+    private static String format(final Object value, final Class<?> type) {
+        if (type == java.sql.Date.class) {
+            return String.valueOf(((Date) value).getTime());
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            // a java.util.Date attribute can be loaded as a java.sql.Timestamp, whose nanoseconds are kept
+            return value instanceof Timestamp ? ((Timestamp) value).toInstant().toString() : Instant.ofEpochMilli(((Date) value).getTime()).toString();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof Number || value instanceof String || value instanceof Boolean || value instanceof Character
+                || value instanceof UUID || value instanceof LocalDate || value instanceof LocalDateTime || value instanceof LocalTime
+                || value instanceof Instant || value instanceof OffsetDateTime || value instanceof ZonedDateTime) {
+            return value.toString();
+        }
+        throw new InvalidQueryException(String.format("A cursor cannot be created for a value of type %s", type.getName()));
+    }
+
+    /**
+     * Parse a java.util.Date value: a java.sql.Timestamp is returned when the instant has sub millisecond precision
+     *
+     * @param value the formatted value (an instant, or the number of milliseconds since the epoch)
+     * @return the date
+     */
+    private static Date parseDate(final String value) {
+        if (value.matches("^-?\\d+$")) {
+            return new Date(Long.parseLong(value));
+        }
+        final Instant instant = Instant.parse(value);
+        return instant.getNano() % 1_000_000 == 0 ? Date.from(instant) : Timestamp.from(instant);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("order", order)
+                .append("values", values)
+                .toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A page of results fetched with keyset pagination
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+public final class CursorPage<E> {
+
+    private final List<E> results;
+    private final String  nextCursor;
+
+    /**
+     * @param results    the results of the page
+     * @param nextCursor the cursor of the next page (null if this is the last page)
+     */
+    public CursorPage(final List<E> results, final String nextCursor) {
+        this.results = unmodifiableList(results);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the results of the page
+     *
+     * @return the results
+     */
+    public List<E> getResults() {
+        return results;
+    }
+
+    /**
+     * Gets the cursor token of the next page
+     *
+     * @return the cursor token or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Check if there is a page after this one
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("results", results.size())
+                .append("nextCursor", nextCursor)
+                .toString();
+    }
+}
@@ -52,4 +52,13 @@ public interface Field {
      * @return the value parser
      */
     FieldValueParser getValueParser();
+
+    /**
+     * The strategy used when the field belongs to a collection
+     *
+     * @return the collection strategy or null to use the default strategy
+     */
+    default CollectionStrategy getCollectionStrategy() {
+        return null;
+    }
 }
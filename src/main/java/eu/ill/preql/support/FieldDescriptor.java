@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import eu.ill.preql.parser.FieldValueParser;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import static eu.ill.preql.support.CollectionStrategy.EXISTS;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Describes a field independently of any criteria query root.
+ * A descriptor is immutable and can be bound to the root of any number of queries
+ *
+ * @author Jamie Hall
+ */
+public final class FieldDescriptor {
+
+    private final String             attribute;
+    private final String             name;
+    private final FieldValueParser   valueParser;
+    private final boolean            orderable;
+    private final CollectionStrategy collectionStrategy;
+
+    /**
+     * Create a new field descriptor
+     *
+     * @param attribute   the name of the represented attribute
+     * @param name        the name of the field that is used in the query expressions
+     * @param valueParser the custom value parser for the field (can be null)
+     * @param orderable   true if the field can be ordered
+     */
+    public FieldDescriptor(final String attribute, final String name, final FieldValueParser valueParser, final boolean orderable) {
+        this(attribute, name, valueParser, orderable, null);
+    }
+
+    /**
+     * Create a new field descriptor
+     *
+     * @param attribute          the name of the represented attribute
+     * @param name               the name of the field that is used in the query expressions
+     * @param valueParser        the custom value parser for the field (can be null)
+     * @param orderable          true if the field can be ordered
+     * @param collectionStrategy the strategy used when the field belongs to a collection (null for the default strategy)
+     */
+    public FieldDescriptor(final String attribute, final String name, final FieldValueParser valueParser,
+                           final boolean orderable, final CollectionStrategy collectionStrategy) {
+        this.attribute = requireNonNull(attribute, "Attribute cannot be null");
+        this.name = requireNonNull(name, "Name cannot be null");
+        this.valueParser = valueParser;
+        this.orderable = orderable;
+        this.collectionStrategy = collectionStrategy;
+    }
+
+    /**
+     * Create a descriptor for an existing field
+     *
+     * @param field the field
+     * @return the field descriptor
+     */
+    public static FieldDescriptor of(final Field field) {
+        return new FieldDescriptor(field.getAttribute(), field.getName(), field.getValueParser(),
+                field instanceof OrderableField, field.getCollectionStrategy());
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FieldValueParser getValueParser() {
+        return valueParser;
+    }
+
+    public boolean isOrderable() {
+        return orderable;
+    }
+
+    public CollectionStrategy getCollectionStrategy() {
+        return collectionStrategy;
+    }
+
+    /**
+     * Bind the descriptor to the root of an attribute mapper
+     * A field that belongs to a collection and uses the {@link CollectionStrategy#EXISTS} strategy
+     * is bound to a {@link CollectionField}
+     *
+     * @param mapper the attribute mapper of the query root
+     * @return the field
+     */
+    public Field bind(final AttributeMapper<?> mapper) {
+        if (mapper.getCollectionStrategy(collectionStrategy) == EXISTS && mapper.isCollection(attribute)) {
+            return new CollectionField(attribute, name, mapper, valueParser);
+        }
+        if (orderable) {
+            return new OrderableField(attribute, name, mapper.get(attribute), valueParser);
+        }
+        return new SimpleField(attribute, name, mapper.get(attribute), valueParser);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("attribute", attribute)
+                .append("name", name)
+                .append("valueParser", valueParser)
+                .append("orderable", orderable)
+                .append("collectionStrategy", collectionStrategy)
+                .toString();
+    }
+}
@@ -33,4 +33,8 @@ public class OrderableField extends SimpleField {
     public OrderableField(String attribute, String name, final Path<?> path, FieldValueParser valueParser) {
         super(attribute, name, path, valueParser);
     }
+
+    public OrderableField(String attribute, String name, FieldValueParser valueParser, final AttributeMapper<?> mapper) {
+        super(attribute, name, valueParser, mapper);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A page of results with the total number of results of the query
+ *
+ * @param <E> the root entity type
+ * @author Jamie Hall
+ */
+public final class Page<E> {
+
+    private final List<E> results;
+    private final Long    total;
+    private final boolean totalExact;
+    private final boolean hasNext;
+
+    /**
+     * @param results    the results of the page
+     * @param total      the total number of results of the query (null if it has not been counted)
+     * @param totalExact true if the total is exact, false if it is a lower bound
+     * @param hasNext    true if there is a page after this one
+     */
+    public Page(final List<E> results, final Long total, final boolean totalExact, final boolean hasNext) {
+        this.results = unmodifiableList(results);
+        this.total = total;
+        this.totalExact = total != null && totalExact;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * Gets the results of the page
+     *
+     * @return the results
+     */
+    public List<E> getResults() {
+        return results;
+    }
+
+    /**
+     * Gets the total number of results of the query
+     * When the total is not exact (see {@link #isTotalExact()}), it is a lower bound of the number of results
+     *
+     * @return the total or null if it has not been counted
+     */
+    public Long getTotal() {
+        return total;
+    }
+
+    /**
+     * Check if the total is the exact number of results of the query
+     *
+     * @return true if the total is exact
+     */
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    /**
+     * Check if there is a page after this one
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("results", results.size())
+                .append("total", total)
+                .append("totalExact", totalExact)
+                .append("hasNext", hasNext)
+                .toString();
+    }
+}
@@ -35,7 +35,9 @@ public class SimpleField implements Field {
     private String           attribute;
     private String           name;
     private Path<?>          path;
+    private AttributeMapper<?> mapper;
     private FieldValueParser valueParser = null;
+    private CollectionStrategy collectionStrategy = null;
 
     /**
      * Create a new field
@@ -65,6 +67,22 @@ public class SimpleField implements Field {
         this.valueParser = valueParser;
     }
 
+    /**
+     * Create a new field whose path is resolved on first use, so that its joins are only created
+     * when the field is referenced by a query
+     *
+     * @param attribute   - the attribute of the field
+     * @param name        - the name of the field
+     * @param valueParser - a custom value parser for the field (can be null)
+     * @param mapper      - the attribute mapper that resolves the path of the field
+     */
+    public SimpleField(final String attribute, final String name, final FieldValueParser valueParser, final AttributeMapper<?> mapper) {
+        this.attribute = requireNonNull(attribute, "Attribute cannot be null");
+        this.name = requireNonNull(name, "Name cannot be null");
+        this.mapper = requireNonNull(mapper, "Mapper cannot be null");
+        this.valueParser = valueParser;
+    }
+
     @Override
     public String getAttribute() {
         return attribute;
@@ -77,6 +95,9 @@ public class SimpleField implements Field {
 
     @Override
     public Path<?> getPath() {
+        if (path == null) {
+            path = mapper.get(attribute);
+        }
         return path;
     }
 
@@ -85,6 +106,22 @@ public class SimpleField implements Field {
         return valueParser;
     }
 
+    @Override
+    public CollectionStrategy getCollectionStrategy() {
+        return collectionStrategy;
+    }
+
+    /**
+     * Set the strategy used when the field belongs to a collection
+     *
+     * @param collectionStrategy the collection strategy or null to use the default strategy
+     * @return this
+     */
+    public SimpleField setCollectionStrategy(final CollectionStrategy collectionStrategy) {
+        this.collectionStrategy = collectionStrategy;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -113,8 +150,10 @@ public class SimpleField implements Field {
     public String toString() {
         return new ToStringBuilder(this)
                 .append("name", name)
+                .append("attribute", attribute)
                 .append("path", path)
                 .append("valueParser", valueParser)
+                .append("collectionStrategy", collectionStrategy)
                 .toString();
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Creates the window function that counts all of the rows of a query (count(*) over ()), so that a page
+ * and its total can be selected in one statement.
+ * JPA does not define window functions: they are created with the criteria builder of the persistence provider
+ *
+ * @author Jamie Hall
+ */
+public interface WindowCount {
+
+    /**
+     * Check if the database of an entity manager supports window functions
+     *
+     * @param entityManager the entity manager
+     * @return true if the window count can be selected
+     */
+    boolean isSupported(EntityManager entityManager);
+
+    /**
+     * Create the window function that counts all of the rows of a query
+     *
+     * @param criteriaBuilder the criteria builder of the query
+     * @param root            the root of the query
+     * @return the count expression
+     */
+    Expression<Long> create(CriteriaBuilder criteriaBuilder, Root<?> root);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Creates the default executor of the asynchronous queries on Java 21 and later
+ *
+ * @author Jamie Hall
+ */
+final class DefaultExecutor {
+
+    private DefaultExecutor() {
+    }
+
+    /**
+     * Create the default executor: a new virtual thread for every query, of which at most
+     * {@link QueryConcurrency#MAXIMUM_QUERIES} execute their query at the same time.
+     * The other virtual threads wait for a permit of a fair semaphore
+     *
+     * @return the executor
+     */
+    static Executor create() {
+        final Executor  threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("preql-async-", 1).factory());
+        final Semaphore permits = new Semaphore(QueryConcurrency.MAXIMUM_QUERIES, true);
+        return task -> threads.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+}
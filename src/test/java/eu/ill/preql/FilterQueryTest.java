@@ -21,10 +21,44 @@ import com.github.database.rider.junit5.DBUnitExtension;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import eu.ill.preql.builder.CourseFilterQueryProvider;
+import eu.ill.preql.hibernate.HibernateWindowCount;
 import eu.ill.preql.domain.Course;
+import eu.ill.preql.domain.Teacher;
+import eu.ill.preql.cache.CountCache;
+import eu.ill.preql.cache.QueryCaches;
+import eu.ill.preql.cache.ResultCache;
 import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.memory.SnapshotIndex;
+import eu.ill.preql.metrics.QueryObservers;
+import eu.ill.preql.metrics.QueryPhase;
+import eu.ill.preql.metrics.QueryPhaseEvent;
+import eu.ill.preql.parser.QueryListener;
 import eu.ill.preql.parser.QueryParser;
+import eu.ill.preql.parser.QueryParserContext;
+import eu.ill.preql.parser.ValueParsers;
+import eu.ill.preql.support.AttributeMapper;
+import eu.ill.preql.support.ChunkRelease;
+import eu.ill.preql.support.CollectionStrategy;
+import eu.ill.preql.support.CountMode;
+import eu.ill.preql.support.CursorPage;
+import eu.ill.preql.support.Field;
+import eu.ill.preql.support.Page;
 import eu.ill.preql.support.Pagination;
+import eu.ill.preql.support.SimpleField;
+import eu.ill.preql.support.StatementRecorder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Parameter;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -33,8 +67,19 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static com.github.database.rider.core.util.EntityManagerProvider.em;
@@ -238,6 +283,68 @@ public class FilterQueryTest {
         assertThat(query.getResultStream()).isInstanceOf(Stream.class).hasSize(5);
     }
 
+    @Test
+    @DisplayName("should stream the results in chunks and release the consumed chunks from the persistence context")
+    @DataSet("data.yml")
+    void chunkedResultStream() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final List<Course>  courses  = new ArrayList<>();
+        final List<Teacher> teachers = new ArrayList<>();
+        try (Stream<Course> stream = provider.createQuery().setOrder("credits", "desc").setFetchSize(2).getChunkedResultStream(2)) {
+            stream.forEach(course -> {
+                // the associations loaded with a chunk are released with it
+                assertThat(teachers).noneMatch(teacher -> em().contains(teacher));
+                assertThat(course.getTeacher().getName()).isNotNull();
+                // the courses of the previous chunks have been detached, the ones of the current chunk are managed
+                final int chunkStart = courses.size() - courses.size() % 2;
+                assertThat(courses.subList(0, chunkStart)).noneMatch(previous -> em().contains(previous));
+                assertThat(courses.subList(chunkStart, courses.size())).allMatch(previous -> em().contains(previous));
+                courses.add(course);
+                if (courses.size() % 2 == 0) {
+                    teachers.add(course.getTeacher());
+                }
+            });
+        }
+        assertThat(courses).extracting(Course::getId).containsExactly(5L, 4L, 3L, 2L, 1L);
+        assertThat(courses).noneMatch(course -> em().contains(course));
+        assertThat(teachers).noneMatch(teacher -> em().contains(teacher));
+
+        final FilterQuery<Course> detached = provider.createQuery().setOrder("credits", "desc");
+        try (Stream<Course> stream = detached.getChunkedResultStream(2, ChunkRelease.DETACH)) {
+            assertThat(stream).extracting(Course::getId).containsExactly(5L, 4L, 3L, 2L, 1L);
+        }
+
+        final FilterQuery<Course> query = provider.createQuery("credits >= :credits").setParameter("credits", 2000);
+        assertThat(query.getChunkedResultStream(2, ChunkRelease.CLEAR)).extracting(Course::getId).containsExactly(3L, 4L, 5L);
+
+        final FilterQuery<Course> twoPhase = provider.createQuery("tags IN :tags").setParameter("tags", ImmutableList.of("computing", "programming"));
+        assertThat(twoPhase.setTwoPhase(true).getChunkedResultStream(1)).extracting(Course::getId).containsExactly(1L);
+        assertThat(provider.createQuery().setTwoPhase(true).setOrder("teacher.name", "asc").getChunkedResultStream(2))
+                .extracting(Course::getId).containsExactly(1L, 3L, 5L, 2L, 4L);
+
+        assertThrows(InvalidQueryException.class, () -> provider.createQuery().getChunkedResultStream(0));
+        assertThrows(InvalidQueryException.class, () -> provider.createQuery().setFetchSize(0));
+
+        // the pending changes of a transaction are flushed before the persistence context is cleared
+        final Teacher teacher = em().find(Teacher.class, 3L);
+        em().getTransaction().begin();
+        try {
+            teacher.setName("Jane Smith");
+            assertThat(provider.createQuery().getChunkedResultStream(2)).hasSize(5);
+            assertThat(em().contains(teacher)).isFalse();
+            em().getTransaction().commit();
+            em().clear();
+            assertThat(em().find(Teacher.class, 3L).getName()).isEqualTo("Jane Smith");
+        } finally {
+            if (em().getTransaction().isActive()) {
+                em().getTransaction().rollback();
+            }
+            em().getTransaction().begin();
+            em().find(Teacher.class, 3L).setName("Jane Doe");
+            em().getTransaction().commit();
+        }
+    }
+
     @Test
     @DisplayName("should fail to execute query because expressions exceeds maximum expressions")
     void maximumExpressions() {
@@ -272,6 +379,688 @@ public class FilterQueryTest {
                 .isEqualTo(1L);
     }
 
+    @Test
+    @DisplayName("should bind the parameter values as query parameters")
+    @DataSet("data.yml")
+    void parameterBinding() {
+        final FilterQuery<Course> query = createFilterQuery(
+                "credits BETWEEN :lowerBound AND :upperBound AND id IN :ids",
+                ImmutableMap.of("lowerBound", 1000, "upperBound", 10000, "ids", ImmutableList.of(1, 2, 3, 4)));
+        assertThat(query.getResultList()).hasSize(4);
+        assertThat(query.getParser().getBindings()).hasSize(3);
+        assertThat(query.getParser().getBindings().values()).contains(1000, 10000);
+    }
+
+    @Test
+    @DisplayName("should produce the same SQL for IN lists of similar sizes when the parameters are padded")
+    @DataSet("data.yml")
+    void inClauseParameterPadding() {
+        StatementRecorder.clear();
+        assertThat(execute("id IN :ids", of("ids", ImmutableList.of(1, 2, 3)))).hasSize(3);
+        assertThat(execute("id IN :ids", of("ids", ImmutableList.of(2, 3, 4, 5)))).hasSize(4);
+        assertThat(execute("id IN :ids", of("ids", ImmutableList.of(1, 2, 3, 4, 5)))).hasSize(5);
+        final List<String> statements = StatementRecorder.getStatements();
+        assertThat(statements).hasSize(3);
+        assertThat(statements.get(0)).isEqualTo(statements.get(1));
+        assertThat(statements.get(2)).isNotEqualTo(statements.get(1));
+    }
+
+    @Test
+    @DisplayName("should successfully execute queries when the parameter values are added as literals")
+    @DataSet("data.yml")
+    void literalParameterValues() {
+        QueryParser.setParameterBinding(false);
+        try {
+            assertThat(execute("code = :code", of("code", "C-JAVA"))).hasSize(1);
+            assertThat(execute("id IN :ids", of("ids", ImmutableList.of(1, 2, 3, 4)))).hasSize(4);
+            assertThat(execute("description LIKE :description", of("description", "%discovering web%"))).hasSize(1);
+            assertThat(executeCount("credits BETWEEN :lowerBound AND :upperBound", of("lowerBound", 1000, "upperBound", 10000))).isEqualTo(5);
+        } finally {
+            QueryParser.setParameterBinding(true);
+        }
+    }
+
+    @Test
+    @DisplayName("should create independent queries from the same provider")
+    @DataSet("data.yml")
+    void independentQueries() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final FilterQuery<Course> query1 = provider.createQuery("teacher.name = :name");
+        final FilterQuery<Course> query2 = provider.createQuery("code = :code");
+        query1.setParameter("name", "Jamie Hall").setOrder("id", "desc");
+        query2.setParameter("code", "C-JAVA");
+        assertThat(query2.getResultList()).hasSize(1);
+        assertThat(query1.getResultList())
+                .hasSize(2)
+                .first()
+                .hasFieldOrPropertyWithValue("id", 3L);
+        assertThat(query2.count()).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("should successfully execute queries from a compiled provider")
+    @DataSet("data.yml")
+    void compiledProvider() {
+        final CompiledFilterQueryProvider<Course> provider = new CourseFilterQueryProvider(em()).compile();
+        assertThat(provider.getFields()).containsKeys("id", "tags", "teacher.name");
+        assertThat(provider.getFields().get("id").isOrderable()).isTrue();
+        assertThat(provider.getFields().get("tags").isOrderable()).isFalse();
+
+        final FilterQuery<Course> query = provider.createQuery(em(), "tags IN :tags");
+        query.setParameter("tags", ImmutableList.of("computing", "programming"));
+        assertThat(query.getResultList()).hasSize(1);
+        assertThat(query.count()).isEqualTo(1L);
+        assertThat(provider.createQuery(em()).getResultList()).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("should successfully execute collection queries with the exists strategy")
+    @DataSet("data.yml")
+    void existsCollectionStrategy() {
+        final long withoutTags = executeCount("tags IS NULL");
+        AttributeMapper.setDefaultCollectionStrategy(CollectionStrategy.EXISTS);
+        try {
+            assertThat(execute("tags = :tags", of("tags", "programming"))).hasSize(1);
+            assertThat(execute("tags IN :tags", of("tags", ImmutableList.of("computing", "programming")))).hasSize(1);
+            assertThat(execute("tags = :tag1 AND tags = :tag2", of("tag1", "computing", "tag2", "programming"))).hasSize(1);
+            assertThat(execute("tags IS NOT NULL")).hasSize(1);
+            assertThat(executeCount("tags IS NULL")).isEqualTo(withoutTags);
+            assertThat(execute("attachments.size >= :size", of("size", 2000))).hasSize(1);
+            assertThat(executeCount("attachments.name = :name", of("name", "1.pdf"))).isEqualTo(1);
+            assertThat(executeCount("id = :id AND tags = :tag", ImmutableMap.of("id", 1, "tag", "computing"))).isEqualTo(1);
+        } finally {
+            AttributeMapper.setDefaultCollectionStrategy(CollectionStrategy.JOIN);
+        }
+    }
+
+    @Test
+    @DisplayName("should only execute the count query when the total cannot be derived from the page")
+    @DataSet("data.yml")
+    void page() {
+        final List<QueryPhase> phases = new ArrayList<>();
+        QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+        try {
+            assertPage(createPageQuery(null), 5, 5L, true, false, false, phases);
+            assertPage(createPageQuery(new Pagination(2, 0)), 2, 5L, true, true, true, phases);
+            assertPage(createPageQuery(new Pagination(2, 4)), 1, 5L, true, false, false, phases);
+            assertPage(createPageQuery(new Pagination(5, 0)), 5, 5L, true, false, false, phases);
+            assertPage(createPageQuery(new Pagination(2, 10)), 0, 5L, true, false, true, phases);
+        } finally {
+            QueryObservers.setObserver(null);
+        }
+    }
+
+    @Test
+    @DisplayName("should count the total of a page up to a maximum or not count it")
+    @DataSet("data.yml")
+    void pageCountModes() {
+        final List<QueryPhase> phases = new ArrayList<>();
+        QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+        try {
+            assertPage(createPageQuery(new Pagination(2, 0)).setCountMode(CountMode.CAPPED).setMaxCount(3),
+                    2, 3L, false, true, true, phases);
+            assertPage(createPageQuery(new Pagination(2, 0)).setCountMode(CountMode.CAPPED).setMaxCount(5),
+                    2, 5L, true, true, true, phases);
+            assertPage(createPageQuery(new Pagination(2, 2)).setCountMode(CountMode.CAPPED).setMaxCount(2),
+                    2, 5L, false, true, true, phases);
+            assertPage(createPageQuery(new Pagination(2, 0)).setCountMode(CountMode.NONE),
+                    2, null, false, true, false, phases);
+            assertPage(createPageQuery(new Pagination(2, 4)).setCountMode(CountMode.NONE),
+                    1, 5L, true, false, false, phases);
+        } finally {
+            QueryObservers.setObserver(null);
+        }
+        final FilterQuery<Course> query = new CourseFilterQueryProvider(em()).createQuery("tags IN :tags");
+        query.setParameter("tags", ImmutableList.of("computing", "programming"));
+        query.setPagination(new Pagination(1, 0));
+        final Page<Course> page = query.setCountMode(CountMode.CAPPED).setMaxCount(10).getPage();
+        assertThat(page.getTotal()).isEqualTo(1L);
+        assertThat(page.hasNext()).isFalse();
+        assertThrows(InvalidQueryException.class, () -> query.setMaxCount(0));
+    }
+
+    @Test
+    @DisplayName("should select a page and its total in one statement with a window count")
+    @DataSet("data.yml")
+    void pageWindowCount() {
+        final List<QueryPhase> phases = new ArrayList<>();
+        QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+        try {
+            assertThat(createPageQuery(null).setCountMode(CountMode.WINDOW).isWindowCountSupported()).isFalse();
+            assertPage(createPageQuery(new Pagination(2, 0)).setCountMode(CountMode.WINDOW),
+                    2, 5L, true, true, true, phases);
+
+            FilterQuery.setWindowCount(new HibernateWindowCount());
+            assertThat(createPageQuery(null).isWindowCountSupported()).isTrue();
+            assertThat(createPageQuery(null).setTwoPhase(true).isWindowCountSupported()).isFalse();
+            assertPage(createPageQuery(new Pagination(2, 0)).setCountMode(CountMode.WINDOW),
+                    2, 5L, true, true, false, phases);
+            assertThat(phases).containsExactly(QueryPhase.TRANSLATE, QueryPhase.SELECT);
+            assertPage(createPageQuery(new Pagination(2, 4)).setCountMode(CountMode.WINDOW),
+                    1, 5L, true, false, false, phases);
+            assertPage(createPageQuery(new Pagination(2, 10)).setCountMode(CountMode.WINDOW),
+                    0, 5L, true, false, true, phases);
+
+            final FilterQuery<Course> query = new CourseFilterQueryProvider(em()).createQuery("credits >= :credits");
+            query.setParameter("credits", 2000);
+            query.setOrder("credits", "desc");
+            query.setPagination(new Pagination(2, 0));
+            final Page<Course> page = query.setCountMode(CountMode.WINDOW).getPage();
+            assertThat(page.getResults()).extracting(Course::getCredits).containsOnly(2000);
+            assertThat(page.getTotal()).isEqualTo(3L);
+            assertThat(page.hasNext()).isTrue();
+
+            final FilterQuery<Course> tags = new CourseFilterQueryProvider(em()).createQuery("tags IN :tags");
+            tags.setParameter("tags", ImmutableList.of("computing", "programming"));
+            final Page<Course> tagPage = tags.setCountMode(CountMode.WINDOW).getPage();
+            assertThat(tagPage.getResults()).hasSize(1);
+            assertThat(tagPage.getTotal()).isEqualTo(1L);
+        } finally {
+            FilterQuery.setWindowCount(null);
+            QueryObservers.setObserver(null);
+        }
+    }
+
+    @Test
+    @DisplayName("should execute the select and the count concurrently with their own entity managers")
+    @DataSet("data.yml")
+    void pageAsync() throws InterruptedException, ExecutionException, TimeoutException {
+        final AtomicInteger submitted = new AtomicInteger();
+        final Executor executor = task -> {
+            submitted.incrementAndGet();
+            new Thread(task).start();
+        };
+        final Page<Course> page = createPageQuery(new Pagination(2, 0)).setOrder("id", "asc").setExecutor(executor)
+                .getPageAsync().get(10, TimeUnit.SECONDS);
+        assertThat(page.getResults()).extracting(Course::getId).containsExactly(1L, 2L);
+        assertThat(page.getTotal()).isEqualTo(5L);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.getResults()).noneMatch(course -> em().contains(course));
+        assertThat(submitted.get()).isEqualTo(2);
+
+        submitted.set(0);
+        final Page<Course> capped = createPageQuery(new Pagination(2, 0)).setTwoPhase(true).setCountMode(CountMode.CAPPED).setMaxCount(3)
+                .setExecutor(executor).getPageAsync().get(10, TimeUnit.SECONDS);
+        assertThat(capped.getResults()).hasSize(2);
+        assertThat(capped.getTotal()).isEqualTo(3L);
+        assertThat(capped.isTotalExact()).isFalse();
+        assertThat(submitted.get()).isEqualTo(1);
+
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        assertThat(provider.createQuery("credits >= :credits").setParameter("credits", 2000).countAsync().get(10, TimeUnit.SECONDS)).isEqualTo(3L);
+        assertThat(provider.createQuery("credits >= :credits").setParameter("credits", 2000).getResultListAsync().get(10, TimeUnit.SECONDS)).hasSize(3);
+        assertThrows(InvalidQueryException.class, () -> provider.createQuery("unknown = :value").setParameter("value", 1).getPageAsync());
+    }
+
+    @Test
+    @DisplayName("should publish the results in batches driven by the demand of the subscriber")
+    @DataSet("data.yml")
+    void resultPublisher() {
+        final List<Long> rows = new ArrayList<>();
+        QueryObservers.setObserver(event -> {
+            if (event.getPhase() == QueryPhase.SELECT) {
+                rows.add(event.getRows());
+            }
+        });
+        try {
+            final RecordingSubscriber subscriber = new RecordingSubscriber();
+            createPageQuery(null).setOrder("id", "asc").setExecutor(Runnable::run).getResultPublisher(3).subscribe(subscriber);
+            assertThat(rows).isEmpty();
+            subscriber.subscription.request(2);
+            assertThat(subscriber.ids).containsExactly(1L, 2L);
+            subscriber.subscription.request(2);
+            assertThat(subscriber.ids).containsExactly(1L, 2L, 3L, 4L);
+            assertThat(subscriber.completed).isFalse();
+            subscriber.subscription.request(5);
+            assertThat(subscriber.ids).containsExactly(1L, 2L, 3L, 4L, 5L);
+            assertThat(subscriber.completed).isTrue();
+            assertThat(rows).containsExactly(2L, 2L, 1L);
+
+            rows.clear();
+            final RecordingSubscriber cancelled = new RecordingSubscriber();
+            createPageQuery(new Pagination(4, 1)).setOrder("id", "asc").setExecutor(Runnable::run).getResultPublisher(3).subscribe(cancelled);
+            cancelled.subscription.request(Long.MAX_VALUE);
+            assertThat(cancelled.ids).containsExactly(2L, 3L, 4L, 5L);
+            assertThat(rows).containsExactly(3L, 1L);
+            cancelled.subscription.cancel();
+            cancelled.subscription.request(1);
+            assertThat(cancelled.ids).hasSize(4);
+
+            final RecordingSubscriber invalid = new RecordingSubscriber();
+            createPageQuery(null).setExecutor(Runnable::run).getResultPublisher(3).subscribe(invalid);
+            invalid.subscription.request(0);
+            assertThat(invalid.error).isInstanceOf(IllegalArgumentException.class);
+
+            final RecordingSubscriber failed = new RecordingSubscriber();
+            new CourseFilterQueryProvider(em()).createQuery("unknown = :value").setParameter("value", 1).getResultPublisher(3).subscribe(failed);
+            assertThat(failed.error).isInstanceOf(InvalidQueryException.class);
+            assertThrows(InvalidQueryException.class, () -> createPageQuery(null).getResultPublisher(0));
+        } finally {
+            QueryObservers.setObserver(null);
+        }
+    }
+
+    @Test
+    @DisplayName("should filter objects in memory with the same results as the database")
+    @DataSet("data.yml")
+    void inMemoryPredicate() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final List<Course> courses = provider.createQuery().getResultList();
+        assertFiltered(provider, courses, null, of());
+        assertFiltered(provider, courses, "code = :code", of("code", "C-JAVA"));
+        assertFiltered(provider, courses, "description NOT LIKE :description", of("description", "%discovering web%"));
+        assertFiltered(provider, courses, "price <= :price", of("price", "90GBP"));
+        assertFiltered(provider, courses, "summary IS NULL");
+        assertFiltered(provider, courses, "duration <= :duration", of("duration", "45MINS"));
+        assertFiltered(provider, courses, "credits < :credits OR active = :active", of("credits", 2000, "active", false));
+        assertFiltered(provider, courses, "id NOT IN :ids", of("ids", ImmutableList.of(1, 2, 3, 4)));
+        assertFiltered(provider, courses, "tags IS NULL");
+        assertFiltered(provider, courses, "tags = :tag1 AND tags = :tag2", of("tag1", "computing", "tag2", "programming"));
+        assertFiltered(provider, courses, "tags != :tag AND attachments.size >= :size", of("tag", "computing", "size", "1MB"));
+        assertFiltered(provider, courses, "teacher.name = :name AND credits <= :credits", of("name", "Jamie Hall", "credits", 1000));
+        assertFiltered(provider, courses, "teacher.affiliation.name IS NULL");
+        assertFiltered(provider, courses, "startDate BETWEEN :startDate AND :endDate", of("startDate", "2017-01-01", "endDate", "2018-03-01"));
+
+        AttributeMapper.setDefaultCollectionStrategy(CollectionStrategy.EXISTS);
+        try {
+            final CourseFilterQueryProvider exists = new CourseFilterQueryProvider(em());
+            assertFiltered(exists, courses, "tags = :tag1 AND tags = :tag2", of("tag1", "computing", "tag2", "programming"));
+            assertFiltered(exists, courses, "tags != :tag", of("tag", "computing"));
+        } finally {
+            AttributeMapper.setDefaultCollectionStrategy(CollectionStrategy.JOIN);
+        }
+
+        assertThrows(InvalidQueryException.class, () -> provider.createPredicate("unknown = :value", of("value", 1)));
+        assertThrows(InvalidQueryException.class, () -> provider.createPredicate("credits = :credits", of()));
+        assertThrows(InvalidQueryException.class, () -> provider.createPredicate("id IN :ids", of("ids", 1)));
+        assertThrows(InvalidQueryException.class, () -> provider.createPredicate("credits = :credits", of("credits", "many")));
+    }
+
+    @Test
+    @DisplayName("should filter, order and paginate objects in memory with the same results as the database")
+    @DataSet("data.yml")
+    void inMemoryQuery() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final List<Course> courses = provider.createQuery().getResultList();
+
+        final FilterQuery<Course> query = provider.createQuery("credits >= :credits").setParameter("credits", 2000).setOrder("name", "desc");
+        query.setPagination(new Pagination(2, 1));
+        assertThat(provider.createInMemoryQuery("credits >= :credits").setParameter("credits", 2000).setOrder("name", "desc")
+                .setPagination(new Pagination(2, 1)).getResultList(courses)).containsExactlyElementsOf(query.getResultList());
+        assertThat(provider.createInMemoryQuery(null).setOrder("startDate", "asc").getResultList(courses))
+                .containsExactlyElementsOf(provider.createQuery().setOrder("startDate", "asc").getResultList());
+        assertThat(provider.createInMemoryQuery("teacher.name = :name").setParameter("name", "Jamie Hall").setOrder("teacher.name", "asc")
+                .getResultList(courses)).extracting(Course::getId).containsExactly(1L, 3L);
+        assertThat(provider.createInMemoryQuery("tags = :tag").setParameter("tag", "computing").count(courses)).isEqualTo(1L);
+        assertThrows(InvalidQueryException.class, () -> provider.createInMemoryQuery(null).setOrder("tags", "asc"));
+    }
+
+    @Test
+    @DisplayName("should lower the expressions of the deprecated query listener to criteria predicates")
+    @DataSet("data.yml")
+    @SuppressWarnings({"deprecation", "unchecked"})
+    void deprecatedQueryListener() {
+        final CriteriaBuilder       cb       = em().getCriteriaBuilder();
+        final CriteriaQuery<Course> criteria = cb.createQuery(Course.class);
+        final Root<Course>          root     = criteria.from(Course.class);
+        final Map<String, Field>    fields   = of("credits", new SimpleField("credits", "credits", root.get("credits")));
+        final QueryParser parser = new QueryParser(new QueryParserContext(cb, fields, of("credits", 2000), new ArrayList<>(), new ValueParsers()));
+
+        final QueryListener listener = new QueryListener(parser);
+        final FilterParser  filter   = new FilterParser(new CommonTokenStream(new FilterLexer(CharStreams.fromString("credits >= :credits"))));
+        new ParseTreeWalker().walk(listener, filter.query());
+
+        final List<Predicate> expressions = listener.getExpressions();
+        assertThat(expressions).hasSize(1);
+        final TypedQuery<Course> query = em().createQuery(criteria.select(root).where(expressions.get(0)).orderBy(cb.asc(root.get("id"))));
+        parser.getBindings().forEach((parameter, value) -> query.setParameter((Parameter<Object>) parameter, value));
+        assertThat(query.getResultList()).extracting(Course::getId).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    @DisplayName("should successfully evaluate queries on a snapshot index")
+    @DataSet("data.yml")
+    void snapshotIndex() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final SnapshotIndex<Course> index = provider.createSnapshotIndex();
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(index.getResultList("credits >= :credits", of("credits", 2000))).extracting(Course::getId).containsExactly(3L, 4L, 5L);
+        assertThat(index.getResultList("teacher.name in :names", of("names", ImmutableList.of("Jamie Hall", "Jane Doe"))))
+                .extracting(Course::getId).containsExactly(1L, 3L, 5L);
+        assertThat(index.count("summary is null and credits between :lower and :upper", of("lower", 500, "upper", 1500))).isEqualTo(1L);
+        assertThat(index.count("tags = :tag", of("tag", "computing"))).isEqualTo(1L);
+        // the snapshot is loaded by its own entity manager, closed once the fields have been loaded
+        assertThat(index.getResultList(null, null)).hasSize(5).noneMatch(em()::contains);
+    }
+
+    @Test
+    @DisplayName("should cache the results until an entity they depend on changes")
+    @DataSet("data.yml")
+    void resultCache() {
+        final ResultCache cache = new ResultCache(100, Duration.ofMinutes(1));
+        QueryCaches.setResultCache(cache);
+        try {
+            final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+            final String preql = "teacher.name = :name";
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList())
+                    .extracting(Course::getId).containsExactly(5L);
+            // the entities of a cached result are loaded by their identifiers without translating the query
+            final List<QueryPhase> phases = new ArrayList<>();
+            QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList())
+                    .extracting(Course::getId).containsExactly(5L);
+            QueryObservers.setObserver(null);
+            assertThat(phases).containsExactly(QueryPhase.SELECT);
+            assertThat(provider.createQuery(preql).setParameter("name", "Jamie Hall").getResultList()).hasSize(2);
+            assertThat(cache.getHitCount()).isEqualTo(1);
+            assertThat(cache.getMissCount()).isEqualTo(2);
+
+            // the cached results are loaded by the entity manager of the query
+            final EntityManager other = em().getEntityManagerFactory().createEntityManager();
+            try {
+                final List<Course> courses = new CourseFilterQueryProvider(other).createQuery(preql).setParameter("name", "Jane Doe").getResultList();
+                assertThat(courses).extracting(Course::getId).containsExactly(5L);
+                assertThat(courses).allMatch(other::contains);
+                assertThat(cache.getHitCount()).isEqualTo(2);
+            } finally {
+                other.close();
+            }
+
+            assertThat(provider.createQuery("credits = :credits").setParameter("credits", 2000).count()).isEqualTo(3L);
+            assertThat(provider.createQuery("credits = :credits").setParameter("credits", "2000").count()).isEqualTo(3L);
+            assertThat(provider.createQuery("credits = :credits").setParameter("credits", 2000).setOrder("name", "asc")
+                    .getResultList()).hasSize(3);
+            assertThat(cache.getHitCount()).isEqualTo(3);
+            assertThat(cache.getMissCount()).isEqualTo(4);
+
+            final Course course = em().find(Course.class, 5L);
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jane Smith");
+            em().getTransaction().commit();
+            assertThat(cache.getInvalidationCount()).isEqualTo(4);
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList()).isEmpty();
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList()).isEmpty();
+            assertThat(cache.getHitCount()).isEqualTo(4);
+            assertThat(cache.getMissCount()).isEqualTo(5);
+
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jane Doe");
+            em().getTransaction().commit();
+        } finally {
+            QueryCaches.setResultCache(null);
+        }
+    }
+
+    @Test
+    @DisplayName("should invalidate the cached results again once the transaction has been committed")
+    @DataSet("data.yml")
+    void resultCacheAfterCommit() {
+        final ResultCache cache = new ResultCache(100, Duration.ofMinutes(1));
+        QueryCaches.setResultCache(cache);
+        final Course        course = em().find(Course.class, 5L);
+        final EntityManager other  = em().getEntityManagerFactory().createEntityManager();
+        try {
+            final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(other);
+            final String preql = "teacher.name = :name";
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jane Smith");
+            em().flush();
+            // a query executed between the flush and the commit caches the data of before the commit
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList()).hasSize(1);
+            em().getTransaction().commit();
+
+            other.clear();
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").getResultList()).isEmpty();
+            assertThat(cache.getHitCount()).isEqualTo(0);
+        } finally {
+            QueryCaches.setResultCache(null);
+            other.close();
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jane Doe");
+            em().getTransaction().commit();
+        }
+    }
+
+    @Test
+    @DisplayName("should cache the counts and refresh the stale counts in the background")
+    @DataSet("data.yml")
+    void countCache() throws InterruptedException {
+        final CountCache cache = new CountCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        QueryCaches.setCountCache(cache);
+        final Course course = em().find(Course.class, 1L);
+        try {
+            final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+            final String preql = "teacher.name = :name";
+            final List<QueryPhase> phases = new ArrayList<>();
+            QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+            assertThat(provider.createQuery(preql).setParameter("name", "Jamie Hall").count()).isEqualTo(2L);
+            assertThat(phases).containsOnlyOnce(QueryPhase.TRANSLATE, QueryPhase.COUNT);
+            // a cached count is returned without translating the query
+            phases.clear();
+            assertThat(provider.createQuery(preql).setParameter("name", "Jamie Hall").count()).isEqualTo(2L);
+            assertThat(phases).doesNotContain(QueryPhase.TRANSLATE, QueryPhase.COUNT);
+            QueryObservers.setObserver(null);
+            assertThat(provider.createQuery(preql).setParameter("name", "Jane Doe").count()).isEqualTo(1L);
+            assertThat(cache.getHitCount()).isEqualTo(1);
+            assertThat(cache.getMissCount()).isEqualTo(2);
+
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jamie Smith");
+            em().getTransaction().commit();
+            assertThat(cache.getInvalidationCount()).isEqualTo(2);
+
+            assertThat(provider.createQuery(preql).setParameter("name", "Jamie Hall").count()).isEqualTo(2L);
+            assertThat(cache.getStaleHitCount()).isEqualTo(1);
+            assertThat(cache.getRefreshCount()).isEqualTo(1);
+            long count = 2;
+            for (int i = 0; i < 100 && count != 0; i++) {
+                Thread.sleep(50);
+                count = provider.createQuery(preql).setParameter("name", "Jamie Hall").count();
+            }
+            assertThat(count).isEqualTo(0L);
+            assertThat(cache.getRefreshCount()).isEqualTo(1);
+        } finally {
+            QueryObservers.setObserver(null);
+            QueryCaches.setCountCache(null);
+            em().getTransaction().begin();
+            course.getTeacher().setName("Jamie Hall");
+            em().getTransaction().commit();
+        }
+    }
+
+    @Test
+    @DisplayName("should successfully page results with a cursor")
+    @DataSet("data.yml")
+    void cursorPagination() {
+        assertThat(fetchAllPages(null, null, "asc")).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(fetchAllPages(null, "credits", "asc")).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(fetchAllPages(null, "credits", "desc")).containsExactly(5L, 4L, 3L, 2L, 1L);
+        assertThat(fetchAllPages(null, "teacher.name", "asc")).containsExactly(1L, 3L, 5L, 2L, 4L);
+        assertThat(fetchAllPages("credits >= :credits", "credits", "asc")).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    @DisplayName("should successfully page results with a cursor ordered by a date or a nullable field")
+    @DataSet("data.yml")
+    void cursorPaginationDatesAndNulls() {
+        assertThat(fetchAllPages(null, "startDate", "asc")).containsExactly(2L, 3L, 4L, 5L, 1L);
+        assertThat(fetchAllPages(null, "startDate", "desc")).containsExactly(1L, 5L, 4L, 3L, 2L);
+        assertThat(fetchAllPages(null, "summary", "asc")).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(fetchAllPages(null, "summary", "desc")).containsExactly(5L, 4L, 3L, 2L, 1L);
+        assertThat(fetchAllPages(null, "endDate", "asc")).containsExactly(1L, 2L, 3L, 4L, 5L);
+
+        final List<QueryPhase> phases = new ArrayList<>();
+        QueryObservers.setObserver(event -> phases.add(event.getPhase()));
+        try (Stream<Course> stream = new CourseFilterQueryProvider(em()).createQuery().setOrder("startDate", "asc").getChunkedResultStream(2)) {
+            assertThat(stream).extracting(Course::getId).containsExactly(2L, 3L, 4L, 5L, 1L);
+            assertThat(phases).filteredOn(phase -> phase == QueryPhase.SELECT).hasSize(3);
+        } finally {
+            QueryObservers.setObserver(null);
+        }
+    }
+
+    @Test
+    @DisplayName("should fail to page results with a cursor of another order")
+    @DataSet("data.yml")
+    void invalidCursor() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final CursorPage<Course> page = provider.createQuery().setOrder("credits", "asc").getCursorPage(null, 2);
+        assertThat(page.hasNext()).isTrue();
+
+        final FilterQuery<Course> query = provider.createQuery().setOrder("name", "asc");
+        assertThrows(InvalidQueryException.class, () -> query.getCursorPage(page.getNextCursor(), 2));
+        assertThrows(InvalidQueryException.class, () -> provider.createQuery().getCursorPage("invalid", 2));
+    }
+
+    @Test
+    @DisplayName("should successfully page results over a collection join in two phases")
+    @DataSet("data.yml")
+    void twoPhaseResultList() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        final String preql = "tags IN :tags OR credits >= :credits";
+        final Map<String, Object> parameters = of("tags", ImmutableList.of("computing", "programming"), "credits", 2000);
+
+        final FilterQuery<Course> query1 = provider.createQuery(preql).setParameters(parameters).setOrder("teacher.name", "desc").setTwoPhase(true);
+        query1.setPagination(3, 0);
+        assertThat(query1.getResultList()).extracting("id").containsExactly(4L, 5L, 3L);
+
+        final FilterQuery<Course> query2 = provider.createQuery(preql).setParameters(parameters).setOrder("teacher.name", "desc").setTwoPhase(true);
+        query2.setPagination(3, 3);
+        assertThat(query2.getResultStream()).extracting("id").containsExactly(1L);
+        assertThat(query2.count()).isEqualTo(4L);
+
+        final FilterQuery<Course> query3 = provider.createQuery("code = :code").setParameter("code", "unknown").setTwoPhase(true);
+        assertThat(query3.getResultList()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should parse the query and coerce the parameter values once for the select and the count query")
+    @DataSet("data.yml")
+    void sharedQueryPlan() {
+        final AtomicInteger coercions = new AtomicInteger();
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        provider.addField(provider.field("credits", "counted", value -> {
+            coercions.incrementAndGet();
+            return Integer.valueOf(value.toString());
+        }));
+        final FilterQuery<Course> query = provider.createQuery("counted >= :credits AND tags IS NULL");
+        query.setParameter("credits", "2000").setTwoPhase(true);
+        assertThat(query.getResultList()).hasSize(3);
+        assertThat(query.count()).isEqualTo(3L);
+        assertThat(coercions.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should report the phases of the query to the observer")
+    @DataSet("data.yml")
+    void observedPhases() {
+        final List<QueryPhaseEvent> events = new ArrayList<>();
+        QueryObservers.setObserver(events::add);
+        try {
+            final FilterQuery<Course> query = new CourseFilterQueryProvider(em())
+                    .createQuery("teacher.name = :name and credits >= :credits -- observed");
+            query.setParameter("name", "Jamie Hall").setParameter("credits", 2000);
+            assertThat(query.getResultList()).hasSize(1);
+            assertThat(query.count()).isEqualTo(1L);
+        } finally {
+            QueryObservers.setObserver(null);
+        }
+        assertThat(events).extracting(QueryPhaseEvent::getPhase).containsExactly(
+                QueryPhase.PARSE, QueryPhase.COMPILE, QueryPhase.TRANSLATE, QueryPhase.SELECT,
+                QueryPhase.COMPILE, QueryPhase.TRANSLATE, QueryPhase.COUNT);
+        assertThat(events).extracting(QueryPhaseEvent::getFingerprint).containsOnly("(teacher.name = :name AND credits >= :credits)");
+        assertThat(events).extracting(QueryPhaseEvent::getExpressionCount).containsOnly(2);
+        assertThat(events).allMatch(event -> event.getDuration() >= 0);
+        assertThat(events.get(3).getJoinCount()).isEqualTo(1);
+        assertThat(events.get(3).getRows()).isEqualTo(1);
+        assertThat(events.get(6).getRows()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should record the phases of the query as flight recorder events")
+    @DataSet("data.yml")
+    void recordedEvents() throws IOException {
+        final Path file = Files.createTempFile("preql", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("eu.ill.preql.Parse").withThreshold(Duration.ZERO);
+            recording.enable("eu.ill.preql.Compile").withThreshold(Duration.ZERO);
+            recording.enable("eu.ill.preql.Translate").withThreshold(Duration.ZERO);
+            recording.enable("eu.ill.preql.Fetch").withThreshold(Duration.ZERO);
+            recording.enable("eu.ill.preql.Count").withThreshold(Duration.ZERO);
+            recording.start();
+            final FilterQuery<Course> query = new CourseFilterQueryProvider(em())
+                    .createQuery("credits >= :credits -- recorded");
+            query.setParameter("credits", 2000);
+            assertThat(query.getResultList()).hasSize(3);
+            assertThat(query.count()).isEqualTo(3L);
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertThat(events).extracting(event -> event.getEventType().getName())
+                    .containsExactly("eu.ill.preql.Parse", "eu.ill.preql.Compile", "eu.ill.preql.Translate", "eu.ill.preql.Fetch",
+                            "eu.ill.preql.Compile", "eu.ill.preql.Translate", "eu.ill.preql.Count");
+            assertThat(events).extracting(event -> event.getString("query")).containsOnly("credits >= :credits");
+            assertThat(events).extracting(event -> event.getInt("expressionCount")).containsOnly(1);
+            assertThat(events.get(3).getLong("rowCount")).isEqualTo(3);
+            assertThat(events.get(6).getLong("rowCount")).isEqualTo(3);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private FilterQuery<Course> createPageQuery(final Pagination pagination) {
+        final FilterQuery<Course> query = new CourseFilterQueryProvider(em()).createQuery();
+        if (pagination != null) {
+            query.setPagination(pagination);
+        }
+        return query;
+    }
+
+    private void assertPage(final FilterQuery<Course> query, final int size, final Long total, final boolean totalExact,
+                            final boolean hasNext, final boolean counted, final List<QueryPhase> phases) {
+        phases.clear();
+        final Page<Course> page = query.getPage();
+        assertThat(page.getResults()).hasSize(size);
+        assertThat(page.getTotal()).isEqualTo(total);
+        assertThat(page.isTotalExact()).isEqualTo(totalExact);
+        assertThat(page.hasNext()).isEqualTo(hasNext);
+        assertThat(phases.contains(QueryPhase.COUNT)).isEqualTo(counted);
+    }
+
+    private List<Long> fetchAllPages(final String preql, final String order, final String direction) {
+        final List<Long> ids = new ArrayList<>();
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em());
+        String cursor = null;
+        do {
+            final FilterQuery<Course> query = provider.createQuery(preql);
+            if (preql != null) {
+                query.setParameter("credits", 2000);
+            }
+            if (order != null) {
+                query.setOrder(order, direction);
+            }
+            final CursorPage<Course> page = query.getCursorPage(cursor, 2);
+            assertThat(page.getResults().size()).isLessThanOrEqualTo(2);
+            page.getResults().forEach(course -> ids.add(course.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private void assertFiltered(final CourseFilterQueryProvider provider, final List<Course> courses, final String preql) {
+        assertFiltered(provider, courses, preql, of());
+    }
+
+    private void assertFiltered(final CourseFilterQueryProvider provider, final List<Course> courses,
+                                final String preql, final Map<String, Object> parameters) {
+        final List<Long> expected = new ArrayList<>();
+        provider.createQuery(preql).setParameters(parameters).getResultList().forEach(course -> expected.add(course.getId()));
+        final List<Long> filtered = new ArrayList<>();
+        courses.stream().filter(provider.createPredicate(preql, parameters)).forEach(course -> filtered.add(course.getId()));
+        assertThat(filtered).as(preql).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
     private List<Course> execute(final String preql) {
         return execute(preql, of());
     }
@@ -315,5 +1104,30 @@ public class FilterQueryTest {
         return query.count();
     }
 
+    private static class RecordingSubscriber implements Flow.Subscriber<Course> {
+        private final List<Long>   ids = new ArrayList<>();
+        private Flow.Subscription  subscription;
+        private Throwable          error;
+        private boolean            completed;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final Course course) {
+            ids.add(course.getId());
+        }
 
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql;
+
+import eu.ill.preql.builder.CourseFilterQueryProvider;
+import eu.ill.preql.domain.Course;
+import eu.ill.preql.support.AttributeMapper;
+import eu.ill.preql.support.FieldDescriptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import java.util.HashMap;
+import java.util.Map;
+
+import static jakarta.persistence.Persistence.createEntityManagerFactory;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Lazy field map tests")
+@TestInstance(Lifecycle.PER_CLASS)
+class LazyFieldMapTest {
+
+    private EntityManager                em;
+    private Map<String, FieldDescriptor> descriptors;
+
+    @BeforeAll
+    public void setup() {
+        this.em = createEntityManagerFactory("persistenceUnit").createEntityManager();
+        this.descriptors = new HashMap<>();
+        this.descriptors.put("active", new FieldDescriptor("active", "active", null, true));
+        this.descriptors.put("teacher.name", new FieldDescriptor("teacher.name", "teacher.name", null, true));
+        this.descriptors.put("tags", new FieldDescriptor("tags.name", "tags", null, false));
+    }
+
+    @Test
+    @DisplayName("should only create joins for the fields that are referenced")
+    void joinsOnlyReferencedFields() {
+        final CriteriaQuery<Course> criteria = em.getCriteriaBuilder().createQuery(Course.class);
+        final Root<Course>          root     = criteria.from(Course.class);
+        final LazyFieldMap          fields   = new LazyFieldMap(descriptors, new AttributeMapper<>(root, em.getMetamodel()));
+
+        assertThat(fields.containsKey("tags")).isTrue();
+        assertThat(fields.get("active").getPath().getJavaType()).isEqualTo(Boolean.class);
+        assertThat(root.getJoins()).isEmpty();
+        assertThat(fields.getBoundFields()).containsOnlyKeys("active");
+
+        fields.get("teacher.name");
+        assertThat(root.getJoins()).hasSize(1);
+        assertThat(AttributeMapper.hasCollectionJoin(root)).isFalse();
+
+        fields.get("tags");
+        assertThat(root.getJoins()).hasSize(2);
+        assertThat(AttributeMapper.hasCollectionJoin(root)).isTrue();
+    }
+
+    @Test
+    @DisplayName("should return the same field when a field is referenced more than once")
+    void bindOnce() {
+        final CriteriaQuery<Course> criteria = em.getCriteriaBuilder().createQuery(Course.class);
+        final Root<Course>          root     = criteria.from(Course.class);
+        final LazyFieldMap          fields   = new LazyFieldMap(descriptors, new AttributeMapper<>(root, em.getMetamodel()));
+
+        assertThat(fields.get("tags")).isSameAs(fields.get("tags"));
+        assertThat(fields.get("unknown")).isNull();
+        assertThat(root.getJoins()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should not resolve the fields of a provider on its own root")
+    void providerFieldsNotResolved() {
+        final CourseFilterQueryProvider provider = new CourseFilterQueryProvider(em);
+        assertThat(provider.fields).isNotEmpty();
+        assertThat(provider.root.getJoins()).isEmpty();
+
+        provider.createQuery("teacher.name = :name");
+        assertThat(provider.root.getJoins()).isEmpty();
+        assertThat(provider.fields.get("teacher.name").getPath().getJavaType()).isEqualTo(String.class);
+        assertThat(provider.root.getJoins()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should fail to register a field with an unknown attribute")
+    void unknownAttribute() {
+        assertThatThrownBy(() -> new CourseFilterQueryProvider(em).field("teacher.unknown"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown");
+        assertThatThrownBy(() -> new CourseFilterQueryProvider(em).orderableField("name.length"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CompiledFilterQueryProvider<>(Course.class,
+                singletonList(new FieldDescriptor("teacher.unknown", "unknown", null, false)), em.getMetamodel()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
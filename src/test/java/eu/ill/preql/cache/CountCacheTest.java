@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Count cache tests")
+class CountCacheTest {
+
+    private static final Set<Class<?>> NUMBERS = singleton(Number.class);
+
+    @Test
+    @DisplayName("should return a stale count while it is refreshed once in the background")
+    void staleWhileRevalidate() {
+        final AtomicLong                    time      = new AtomicLong();
+        final AtomicLong                    count     = new AtomicLong(10);
+        final List<CompletableFuture<Long>> refreshes = new ArrayList<>();
+        final Supplier<CompletableFuture<Long>> refresher = () -> {
+            final CompletableFuture<Long> refresh = new CompletableFuture<>();
+            refreshes.add(refresh);
+            return refresh;
+        };
+        final CountCache cache = new CountCache(10, Duration.ofSeconds(1), Duration.ofSeconds(10), time::get);
+
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(10L);
+        count.set(20);
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(10L);
+        assertThat(refreshes).isEmpty();
+
+        time.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(10L);
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(10L);
+        assertThat(refreshes).hasSize(1);
+        refreshes.get(0).complete(20L);
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(20L);
+
+        time.addAndGet(Duration.ofSeconds(20).toNanos());
+        count.set(30);
+        assertThat(cache.get("key", NUMBERS, count::get, refresher)).isEqualTo(30L);
+
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getStaleHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getRefreshCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should keep a stale count when it fails to be refreshed")
+    void failedRefresh() {
+        final AtomicLong time  = new AtomicLong();
+        final CountCache cache = new CountCache(10, Duration.ofSeconds(1), Duration.ofSeconds(10), time::get);
+        cache.get("key", NUMBERS, () -> 10L, null);
+
+        time.addAndGet(Duration.ofSeconds(2).toNanos());
+        final CompletableFuture<Long> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("Database is down"));
+        assertThat(cache.get("key", NUMBERS, () -> 0L, () -> failure)).isEqualTo(10L);
+        assertThat(cache.get("key", NUMBERS, () -> 0L, () -> CompletableFuture.completedFuture(20L))).isEqualTo(10L);
+        assertThat(cache.get("key", NUMBERS, () -> 0L, null)).isEqualTo(20L);
+        assertThat(cache.getRefreshCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should load the identical counts requested concurrently once")
+    void singleFlight() throws Exception {
+        final CountCache      cache    = new CountCache(10, Duration.ofMinutes(1), Duration.ZERO);
+        final AtomicInteger   loads    = new AtomicInteger();
+        final CountDownLatch  started  = new CountDownLatch(1);
+        final CountDownLatch  release  = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Supplier<Long> loader = () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                return 42L;
+            };
+            final List<Future<Long>> counts = new ArrayList<>();
+            counts.add(executor.submit(() -> cache.get("key", NUMBERS, loader, null)));
+            started.await();
+            for (int i = 0; i < 3; i++) {
+                counts.add(executor.submit(() -> cache.get("key", NUMBERS, loader, null)));
+            }
+            while (cache.getMissCount() < 4) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (final Future<Long> count : counts) {
+                assertThat(count.get()).isEqualTo(42L);
+            }
+            assertThat(loads.get()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("should make the counts that depend on an entity type stale")
+    void invalidate() {
+        final AtomicLong time  = new AtomicLong();
+        final CountCache cache = new CountCache(10, Duration.ofSeconds(1), Duration.ofSeconds(10), time::get);
+        cache.get("numbers", NUMBERS, () -> 10L, null);
+        cache.get("strings", singleton(String.class), () -> 10L, null);
+
+        cache.invalidate(Long.class);
+        assertThat(cache.getInvalidationCount()).isEqualTo(1);
+        assertThat(cache.get("numbers", NUMBERS, () -> 0L, () -> CompletableFuture.completedFuture(20L))).isEqualTo(10L);
+        assertThat(cache.get("numbers", NUMBERS, () -> 0L, null)).isEqualTo(20L);
+        assertThat(cache.get("strings", singleton(String.class), () -> 0L, null)).isEqualTo(10L);
+        assertThat(cache.getStaleHitCount()).isEqualTo(1);
+
+        assertThrows(IllegalArgumentException.class, () -> new CountCache(1, Duration.ofSeconds(1), Duration.ofSeconds(-1)));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Result cache tests")
+class ResultCacheTest {
+
+    private static final Set<Class<?>> NUMBERS = singleton(Number.class);
+    private static final Set<Class<?>> STRINGS = singleton(String.class);
+
+    @Test
+    @DisplayName("should cache the results until they expire")
+    void expire() {
+        final AtomicLong    time  = new AtomicLong();
+        final AtomicInteger loads = new AtomicInteger();
+        final ResultCache   cache = new ResultCache(10, Duration.ofSeconds(1), time::get);
+
+        assertThat(cache.get("key", NUMBERS, loads::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.get("key", NUMBERS, loads::incrementAndGet)).isEqualTo(1);
+        time.addAndGet(Duration.ofMillis(999).toNanos());
+        assertThat(cache.get("key", NUMBERS, loads::incrementAndGet)).isEqualTo(1);
+        time.addAndGet(Duration.ofMillis(1).toNanos());
+        assertThat(cache.get("key", NUMBERS, loads::incrementAndGet)).isEqualTo(2);
+
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used results")
+    void evict() {
+        final ResultCache cache = new ResultCache(2, Duration.ofMinutes(1));
+        cache.get("first", NUMBERS, () -> 1);
+        cache.get("second", NUMBERS, () -> 2);
+        cache.get("first", NUMBERS, () -> 0);
+        cache.get("third", NUMBERS, () -> 3);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.get("first", NUMBERS, () -> 0)).isEqualTo(1);
+        assertThat(cache.get("second", NUMBERS, () -> 0)).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("should invalidate the results that depend on an entity type")
+    void invalidate() {
+        final ResultCache cache = new ResultCache(10, Duration.ofMinutes(1));
+        cache.get("numbers", NUMBERS, () -> 1);
+        cache.get("strings", STRINGS, () -> "1");
+
+        cache.invalidate(Integer.class);
+        assertThat(cache.getInvalidationCount()).isEqualTo(1);
+        assertThat(cache.get("numbers", NUMBERS, () -> 2)).isEqualTo(2);
+        assertThat(cache.get("strings", STRINGS, () -> "2")).isEqualTo("1");
+
+        cache.invalidate(Object.class);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("should not cache a result loaded while the cache is invalidated")
+    void invalidateWhileLoading() {
+        final ResultCache cache = new ResultCache(10, Duration.ofMinutes(1));
+        assertThat(cache.get("key", NUMBERS, () -> {
+            cache.invalidate(Long.class);
+            return new ArrayList<>();
+        })).isEmpty();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThrows(IllegalArgumentException.class, () -> new ResultCache(0, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new ResultCache(1, Duration.ZERO));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import com.google.common.collect.ImmutableList;
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.support.FieldDescriptor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Attribute accessor tests")
+class AttributeAccessorTest {
+
+    @Test
+    @DisplayName("should read an attribute path with generated accessors")
+    void generatedAccessors() {
+        final Sample parent = new Sample(1, 0.5, null, "parent");
+        final Sample child  = new Sample(2, 1.5, parent, "child");
+
+        final AttributeAccessor rank = AttributeAccessor.resolve(Sample.class, "parent.rank");
+        assertThat(rank.getSegments()).hasSize(2);
+        assertThat(rank.getType()).isEqualTo(int.class);
+        assertThat(rank.getLeaf().getGetter().getClass().getName()).startsWith(Sample.class.getName());
+        assertThat(rank.getLeaf().getLongGetter().applyAsLong(parent)).isEqualTo(1L);
+        assertThat(AttributeAccessor.navigate(rank.getGetters(0, 2), child)).isEqualTo(1);
+        assertThat(AttributeAccessor.navigate(rank.getGetters(0, 2), parent)).isNull();
+
+        final AttributeAccessor score = AttributeAccessor.resolve(Sample.class, "score");
+        assertThat(score.getLeaf().getLongGetter()).isNull();
+        assertThat(score.getLeaf().getDoubleGetter().applyAsDouble(child)).isEqualTo(1.5);
+
+        final AttributeAccessor label = AttributeAccessor.resolve(Sample.class, "parent.label");
+        assertThat(AttributeAccessor.navigate(label.getGetters(0, 2), child)).isEqualTo("parent");
+
+        final AttributeAccessor children = AttributeAccessor.resolve(Sample.class, "children.rank");
+        assertThat(children.isCollection()).isTrue();
+        assertThat(children.getSegments().get(0).getType()).isEqualTo(Sample.class);
+
+        assertThrows(InvalidQueryException.class, () -> AttributeAccessor.resolve(Sample.class, "parent.unknown"));
+    }
+
+    @Test
+    @DisplayName("should filter and order objects that are not entities")
+    void filterAndOrder() {
+        final Map<String, FieldDescriptor> fields = of(
+                "rank", new FieldDescriptor("rank", "rank", null, true),
+                "score", new FieldDescriptor("score", "score", null, true),
+                "parent", new FieldDescriptor("parent.rank", "parent", null, true),
+                "children", new FieldDescriptor("children.rank", "children", null, false));
+        final PredicateCompiler<Sample> compiler = new PredicateCompiler<>(Sample.class, fields);
+        final Sample first  = new Sample(1, 3.0, null, "first");
+        final Sample second = new Sample(2, 2.0, first, "second");
+        final Sample third  = new Sample(3, 1.0, first, "third");
+        first.getChildren().add(second);
+        first.getChildren().add(third);
+        final List<Sample> samples = ImmutableList.of(third, second, first);
+
+        assertThat(compiler.createQuery("rank BETWEEN :lower AND :upper").setParameter("lower", "2").setParameter("upper", 3)
+                .setOrder("rank", "asc").getResultList(samples)).containsExactly(second, third);
+        assertThat(compiler.createQuery("score < :score").setParameter("score", 2.5)
+                .setOrder("score", "desc").getResultList(samples)).containsExactly(second, third);
+        assertThat(compiler.createQuery("parent = :rank").setParameter("rank", 1).count(samples)).isEqualTo(2);
+        assertThat(compiler.createQuery("parent != :rank").setParameter("rank", 1).count(samples)).isEqualTo(0);
+        assertThat(compiler.createQuery("children = :rank").setParameter("rank", 3).getResultList(samples)).containsExactly(first);
+        assertThat(compiler.createQuery(null).setOrder("parent", "asc").getResultList(samples)).containsExactly(first, third, second);
+
+        assertThrows(InvalidQueryException.class, () -> compiler.createQuery(null).setOrder("children", "asc"));
+        assertThrows(InvalidQueryException.class, () -> compiler.createQuery(null).setOrder("rank", "up"));
+    }
+
+    public static class Sample {
+        private final int          rank;
+        private final double       score;
+        private final Sample       parent;
+        private final String       label;
+        private final List<Sample> children = new ArrayList<>();
+
+        Sample(final int rank, final double score, final Sample parent, final String label) {
+            this.rank = rank;
+            this.score = score;
+            this.parent = parent;
+            this.label = label;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public Sample getParent() {
+            return parent;
+        }
+
+        public List<Sample> getChildren() {
+            return children;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.memory.AttributeAccessorTest.Sample;
+import eu.ill.preql.support.FieldDescriptor;
+import eu.ill.preql.support.Pagination;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("In memory query tests")
+class InMemoryQueryTest {
+
+    private final PredicateCompiler<Sample> compiler = new PredicateCompiler<>(Sample.class, of(
+            "rank", new FieldDescriptor("rank", "rank", null, true),
+            "score", new FieldDescriptor("score", "score", null, true)));
+
+    @Test
+    @DisplayName("should filter and order objects in parallel with the same results as sequentially")
+    void parallel() {
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            samples.add(new Sample(i % 10, i, null, null));
+        }
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<Sample> filtered = compiler.createQuery("rank < :rank").setParameter("rank", 5).getResultList(samples);
+            assertThat(filtered).hasSize(5000);
+            assertThat(compiler.createQuery("rank < :rank").setParameter("rank", 5)
+                    .setParallel(true).setForkJoinPool(pool).setChunkSize(100).getResultList(samples)).containsExactlyElementsOf(filtered);
+
+            final List<Sample> ordered = compiler.createQuery("score >= :score").setParameter("score", 10)
+                    .setOrder("rank", "desc").setPagination(new Pagination(100, 10)).getResultList(samples);
+            assertThat(ordered).hasSize(100);
+            assertThat(compiler.createQuery("score >= :score").setParameter("score", 10).setOrder("rank", "desc")
+                    .setPagination(new Pagination(100, 10)).setParallel(true).setChunkSize(100).getResultList(samples))
+                    .containsExactlyElementsOf(ordered);
+
+            assertThat(compiler.createQuery("rank = :rank").setParameter("rank", 3)
+                    .setParallel(true).setForkJoinPool(pool).setChunkSize(64).count(samples)).isEqualTo(1000L);
+        } finally {
+            pool.shutdown();
+        }
+        assertThrows(InvalidQueryException.class, () -> compiler.createQuery(null).setChunkSize(0));
+    }
+}
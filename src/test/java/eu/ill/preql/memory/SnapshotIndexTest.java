@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.memory;
+
+import eu.ill.preql.memory.AttributeAccessorTest.Sample;
+import eu.ill.preql.support.FieldDescriptor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.ImmutableMap.of;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Snapshot index tests")
+class SnapshotIndexTest {
+
+    private final PredicateCompiler<Sample> compiler = new PredicateCompiler<>(Sample.class, of(
+            "rank", new FieldDescriptor("rank", "rank", null, true),
+            "score", new FieldDescriptor("score", "score", null, true),
+            "label", new FieldDescriptor("label", "label", null, true),
+            "parent.rank", new FieldDescriptor("parent.rank", "parent.rank", null, true),
+            "children.rank", new FieldDescriptor("children.rank", "children.rank", null, true)));
+
+    @Test
+    @DisplayName("should evaluate queries on the columns with the same results as the compiled predicate")
+    void columns() {
+        final List<Sample> samples = createSamples();
+        final SnapshotIndex<Sample> index = compiler.createSnapshotIndex(() -> samples);
+        assertIndexed(index, samples, "rank = :rank", of("rank", 3));
+        assertIndexed(index, samples, "rank != :rank and score < :score", of("rank", 3, "score", 100.0));
+        assertIndexed(index, samples, "rank between :lower and :upper or score >= :score", of("lower", 2, "upper", 4, "score", 190));
+        assertIndexed(index, samples, "rank not in :ranks", of("ranks", asList(1, 5, 7)));
+        assertIndexed(index, samples, "label in :labels", of("labels", asList("label-1", "label-3", "other")));
+        assertIndexed(index, samples, "label > :label and label not like :pattern", of("label", "label-3", "pattern", "%7"));
+        assertIndexed(index, samples, "label is null or score not between :lower and :upper", of("lower", 10, "upper", 180));
+        assertIndexed(index, samples, "parent.rank = :rank or parent.rank is null", of("rank", 2));
+        assertIndexed(index, samples, "parent.rank != :rank", of("rank", 2));
+        assertIndexed(index, samples, "children.rank = :rank and rank < :max", of("rank", 5, "max", 6));
+        assertThat(index.count(null, null)).isEqualTo(samples.size());
+        assertThat(index.getResultList("rank = :rank", of("rank", 3))).extracting(Sample::getRank).containsOnly(3);
+    }
+
+    @Test
+    @DisplayName("should reload the snapshot when it is refreshed or invalidated")
+    void refresh() {
+        final List<Sample>  samples = new ArrayList<>(createSamples());
+        final AtomicInteger loads   = new AtomicInteger();
+        final SnapshotIndex<Sample> index = compiler.createSnapshotIndex(() -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(samples);
+        });
+        assertThat(loads.get()).isEqualTo(0);
+        assertThat(index.count("rank = :rank", of("rank", 3))).isEqualTo(20L);
+        assertThat(loads.get()).isEqualTo(1);
+
+        samples.add(new Sample(3, 0, null, null));
+        assertThat(index.count("rank = :rank", of("rank", 3))).isEqualTo(20L);
+        index.invalidate();
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(index.count("rank = :rank", of("rank", 3))).isEqualTo(21L);
+        assertThat(loads.get()).isEqualTo(2);
+
+        samples.add(new Sample(3, 0, null, null));
+        assertThat(index.refresh().size()).isEqualTo(202);
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(index.refresh(samples.subList(0, 10)).count("rank = :rank", of("rank", 3))).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("should discard a snapshot loaded before an invalidation")
+    void invalidateWhileLoading() throws Exception {
+        final List<Sample>   samples = new ArrayList<>(createSamples());
+        final AtomicInteger  loads   = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SnapshotIndex<Sample> index = compiler.createSnapshotIndex(() -> {
+            final List<Sample> loaded = new ArrayList<>(samples);
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                await(release);
+            }
+            return loaded;
+        });
+        final CompletableFuture<Void> refresh = CompletableFuture.runAsync(index::refresh);
+        loading.await(10, TimeUnit.SECONDS);
+        samples.add(new Sample(3, 0, null, null));
+        index.invalidate();
+        release.countDown();
+        refresh.get(10, TimeUnit.SECONDS);
+
+        assertThat(index.count("rank = :rank", of("rank", 3))).isEqualTo(21L);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should keep the snapshot of the last refresh when the refreshes complete out of order")
+    void concurrentRefreshes() throws Exception {
+        final List<Sample>   samples = createSamples();
+        final AtomicInteger  loads   = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SnapshotIndex<Sample> index = compiler.createSnapshotIndex(() -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                await(release);
+                return samples.subList(0, 10);
+            }
+            return samples;
+        });
+        final CompletableFuture<Void> first = CompletableFuture.runAsync(index::refresh);
+        loading.await(10, TimeUnit.SECONDS);
+        index.refresh();
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        assertThat(index.size()).isEqualTo(200);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Sample> createSamples() {
+        final List<Sample> samples = new ArrayList<>();
+        Sample parent = null;
+        for (int i = 0; i < 200; i++) {
+            final Sample sample = new Sample(i % 10, i, i % 3 == 0 ? null : parent, i % 4 == 0 ? null : "label-" + (i % 9));
+            if (parent != null && i % 5 == 0) {
+                parent.getChildren().add(sample);
+            }
+            samples.add(sample);
+            parent = sample;
+        }
+        return samples;
+    }
+
+    private void assertIndexed(final SnapshotIndex<Sample> index, final List<Sample> samples, final String preql, final Map<String, Object> parameters) {
+        final List<Sample> expected = samples.stream().filter(compiler.compile(preql, parameters)).collect(toList());
+        assertThat(expected).isNotEmpty();
+        assertThat(index.getResultList(preql, parameters)).containsExactlyElementsOf(expected);
+        assertThat(index.count(preql, parameters)).isEqualTo(expected.size());
+    }
+}
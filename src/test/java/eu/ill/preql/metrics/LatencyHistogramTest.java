@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("Latency histogram tests")
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("should count small values exactly")
+    void smallValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getTotal()).isEqualTo(5050);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(50);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(99);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should report large values within the precision of the buckets")
+    void largeValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 1_000_000_000L; value *= 10) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+        assertThat(histogram.getCount()).isEqualTo(8);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000_000L);
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(0);
+        assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(100_000, within(100_000 / 64.0));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1_000_000_000L);
+        assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            final long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / 64);
+        }
+    }
+
+    @Test
+    @DisplayName("should record values from concurrent threads")
+    void concurrentValues() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= 10000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(histogram.getCount()).isEqualTo(40000);
+        assertThat(histogram.getMax()).isEqualTo(10000);
+        assertThat(histogram.getTotal()).isEqualTo(4 * 50005000L);
+
+        histogram.reset();
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+    }
+}
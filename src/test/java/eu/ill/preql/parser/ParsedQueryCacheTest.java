@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Parsed query cache tests")
+class ParsedQueryCacheTest {
+
+    @Test
+    @DisplayName("should only parse a query once")
+    void hits() {
+        final ParsedQueryCache cache = new ParsedQueryCache(10, 1000);
+        final ParsedQuery parsedQuery = cache.get("id = :id", QueryParser::parseQuery);
+        assertThat(cache.get("id = :id", query -> {
+            throw new IllegalStateException("The query should not be parsed");
+        })).isSameAs(parsedQuery);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getWeight()).isEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used query when the maximum size is exceeded")
+    void maxSize() {
+        final ParsedQueryCache cache = new ParsedQueryCache(2, 1000);
+        cache.get("id = :a", QueryParser::parseQuery);
+        cache.get("id = :b", QueryParser::parseQuery);
+        cache.get("id = :a", QueryParser::parseQuery);
+        cache.get("id = :c", QueryParser::parseQuery);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+        cache.get("id = :a", QueryParser::parseQuery);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        cache.get("id = :b", QueryParser::parseQuery);
+        assertThat(cache.getMissCount()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("should evict queries when the maximum weight is exceeded")
+    void maxWeight() {
+        final ParsedQueryCache cache = new ParsedQueryCache(10, 16);
+        cache.get("id = :a", QueryParser::parseQuery);
+        cache.get("id = :b", QueryParser::parseQuery);
+        cache.get("id = :c", QueryParser::parseQuery);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getWeight()).isEqualTo(14);
+        cache.get("name = :name AND id = :id", QueryParser::parseQuery);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should stay within its bounds when used by multiple threads")
+    void concurrentAccess() throws Exception {
+        final ParsedQueryCache cache = new ParsedQueryCache(8, 1000);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        final String query = "id = :p" + (i % 10);
+                        assertThat(cache.get(query, QueryParser::parseQuery).getExpression()).isNotNull();
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(8);
+        assertThat(cache.getHitCount() + cache.getMissCount()).isEqualTo(4000);
+        assertThat(cache.getMissCount() - cache.getEvictionCount()).isGreaterThanOrEqualTo(cache.size());
+        assertThat(cache.getWeight()).isEqualTo(cache.size() * 8L);
+    }
+
+    @Test
+    @DisplayName("should not cache a query that fails to parse")
+    void invalidQuery() {
+        final ParsedQueryCache cache = new ParsedQueryCache(10, 1000);
+        assertThrows(InvalidQueryException.class, () -> cache.get("id = ", QueryParser::parseQuery));
+        assertThat(cache.size()).isEqualTo(0);
+        assertThrows(IllegalArgumentException.class, () -> new ParsedQueryCache(0, 1000));
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.parser.ast.AndNode;
+import eu.ill.preql.parser.ast.BetweenNode;
+import eu.ill.preql.parser.ast.ComparisonNode;
+import eu.ill.preql.parser.ast.ComparisonOperator;
+import eu.ill.preql.parser.ast.InNode;
+import eu.ill.preql.parser.ast.LikeNode;
+import eu.ill.preql.parser.ast.NullNode;
+import eu.ill.preql.parser.ast.OrNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Parsed query tests")
+class ParsedQueryTest {
+
+    @Test
+    @DisplayName("should parse the expressions of a query into nodes")
+    void expressions() {
+        assertThat(QueryParser.parseQuery("id >= :id").getExpression())
+                .isEqualTo(new ComparisonNode("id", ComparisonOperator.GT_EQ, "id"));
+        assertThat(QueryParser.parseQuery("id <> :id").getExpression())
+                .isEqualTo(new ComparisonNode("id", ComparisonOperator.NOT_EQ, "id"));
+        assertThat(QueryParser.parseQuery("credits NOT BETWEEN :lower AND :upper").getExpression())
+                .isEqualTo(new BetweenNode("credits", "lower", "upper", true));
+        assertThat(QueryParser.parseQuery("tags IN :tags").getExpression())
+                .isEqualTo(new InNode("tags", "tags", false));
+        assertThat(QueryParser.parseQuery("name not like :name").getExpression())
+                .isEqualTo(new LikeNode("name", "name", true));
+        assertThat(QueryParser.parseQuery("tags IS NOT NULL").getExpression())
+                .isEqualTo(new NullNode("tags", true));
+        assertThat(QueryParser.parseQuery("/* nothing */").isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should combine the expressions from left to right and flatten the same operators")
+    void logicalExpressions() {
+        final ComparisonNode a = new ComparisonNode("a", ComparisonOperator.EQ, "a");
+        final ComparisonNode b = new ComparisonNode("b", ComparisonOperator.EQ, "b");
+        final ComparisonNode c = new ComparisonNode("c", ComparisonOperator.EQ, "c");
+        assertThat(QueryParser.parseQuery("a = :a AND b = :b AND c = :c").getExpression())
+                .isEqualTo(new AndNode(a, b, c));
+        assertThat(QueryParser.parseQuery("a = :a AND (b = :b AND c = :c)").getExpression())
+                .isEqualTo(new AndNode(a, b, c));
+        assertThat(QueryParser.parseQuery("a = :a OR b = :b AND c = :c").getExpression())
+                .isEqualTo(new AndNode(new OrNode(a, b), c));
+        assertThat(QueryParser.parseQuery("a = :a OR (b = :b AND c = :c)").getExpression())
+                .isEqualTo(new OrNode(a, new AndNode(b, c)));
+        assertThat(QueryParser.parseQuery("a = :a OR (b = :b AND c = :c)").getExpression().getExpressionCount())
+                .isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("should render a query in a normalized form")
+    void normalizedQuery() {
+        final ParsedQuery query = QueryParser.parseQuery("(a = :a  or  b IS null) AND c not between :c1 and :c2");
+        assertThat(query.toString()).isEqualTo("((a = :a OR b IS NULL) AND c NOT BETWEEN :c1 AND :c2)");
+        assertThat(QueryParser.parseQuery(query.toString()).getExpression()).isEqualTo(query.getExpression());
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.parser;
+
+import eu.ill.preql.exception.InvalidQueryException;
+import eu.ill.preql.parser.ast.Node;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Syntax parser tests")
+class SyntaxParserTest {
+
+    private static final String[] FIELDS      = {"id", "name", "teacher.name", "_x1", "a.b.c.", "andy", "order", "isbn", "nullable"};
+    private static final String[] OPERATORS   = {"<", "<=", ">", ">=", "=", "!=", "<>"};
+    private static final String[] SEPARATORS  = {" ", "  ", "\t", "\n", "\r\n", "\u000B", " -- comment\n", "/* comment */", "/**/", "/* multi\nline */"};
+    private static final String[] TOKENS      = {
+            "id", "a.b", "Name", ":", ":id", "(", ")", "<", "<=", ">", ">=", "=", "!=", "<>", "and", "AND", "&&", "or", "Or", "||",
+            "not", "NOT", "between", "BeTwEeN", "in", "IN", "like", "LIKE", "is", "IS", "null", "NULL",
+            ".", ",", ";", "1", "!", "&", "|", "-", "/", "*", "'x'", "é", "--", "/*", "*/", "\f", " ", "\n"
+    };
+
+    @Test
+    @DisplayName("should parse the same queries as the ANTLR parser")
+    void validQueries() {
+        final String[] queries = {
+                "",
+                "   ",
+                "-- only a comment",
+                "/* unterminated comment",
+                "id = :id",
+                "id=:id",
+                "id = : id",
+                "ID <= :Id AND name LIKE :name",
+                "a.b.c. >= :d.e.",
+                "name not like :name or name is not null",
+                "credits NOT BETWEEN :lower AND :upper AND id IN :ids",
+                "((a = :a) || (b != :b && c <> :c))",
+                "a = :a OR b = :b AND c = :c OR d = :d",
+                "a is null /* trailing */",
+                "a -- comment\n = :a",
+                "andy = :orange AND isbn IS NULL AND nullable in :inn",
+                "a = :a\r\nAND\tb = :b\u000B"
+        };
+        for (final String query : queries) {
+            assertSameResult(query);
+            assertThat(SyntaxParser.RECURSIVE_DESCENT.parse(query).getQuery()).isEqualTo(query);
+        }
+    }
+
+    @Test
+    @DisplayName("should reject the same queries as the ANTLR parser")
+    void invalidQueries() {
+        final String[] queries = {
+                "id",
+                "id =",
+                "id = :",
+                "id = id",
+                "id = :id AND",
+                "id = :id id = :id",
+                "(id = :id",
+                "id = :id)",
+                "()",
+                "and = :id",
+                "id = :in",
+                "id = :id;",
+                "id == :id",
+                "id ! = :id",
+                "id & :id",
+                "1 = :id",
+                ".id = :id",
+                "id NOT IS NULL",
+                "id IS NOT",
+                "id NOT = :id",
+                "id BETWEEN :a OR :b",
+                "id BETWEEN :a",
+                "id IN (:a, :b)",
+                "id = 'x'",
+                "id = :id -",
+                "id = :id / 2",
+                "id\f= :id",
+                "é = :id",
+                "id = ::id"
+        };
+        for (final String query : queries) {
+            assertSameResult(query);
+            assertThatThrownBy(() -> SyntaxParser.RECURSIVE_DESCENT.parse(query))
+                    .isInstanceOf(InvalidQueryException.class)
+                    .hasMessageStartingWith("Failed to parse query");
+        }
+    }
+
+    @Test
+    @DisplayName("should produce the same nodes as the ANTLR parser for generated queries")
+    void generatedQueries() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            assertSameResult(expression(random, 0));
+        }
+    }
+
+    @Test
+    @DisplayName("should accept and reject the same sequences of tokens as the ANTLR parser")
+    void randomTokens() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            final StringBuilder query = new StringBuilder();
+            final int size = random.nextInt(12);
+            for (int j = 0; j < size; j++) {
+                query.append(TOKENS[random.nextInt(TOKENS.length)]);
+                if (random.nextBoolean()) {
+                    query.append(' ');
+                }
+            }
+            assertSameResult(query.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("should use the configured syntax parser")
+    void configuration() {
+        final SyntaxParser parser = QueryParser.getSyntaxParser();
+        final ParsedQueryCache cache = QueryParser.getQueryCache();
+        try {
+            QueryParser.setQueryCache(null);
+            QueryParser.setSyntaxParser(SyntaxParser.RECURSIVE_DESCENT);
+            assertThat(QueryParser.parseQuery("a = :a AND b IS NULL").toString()).isEqualTo("(a = :a AND b IS NULL)");
+            assertThatThrownBy(() -> QueryParser.parseQuery("a = "))
+                    .isInstanceOf(InvalidQueryException.class)
+                    .hasMessage("Failed to parse query at line 1:4: mismatched input '<EOF>'");
+            assertThatThrownBy(() -> QueryParser.setSyntaxParser(null))
+                    .isInstanceOf(NullPointerException.class);
+        } finally {
+            QueryParser.setSyntaxParser(parser);
+            QueryParser.setQueryCache(cache);
+        }
+    }
+
+    private static void assertSameResult(final String query) {
+        final Node expected;
+        try {
+            expected = SyntaxParser.ANTLR.parse(query).getExpression();
+        } catch (InvalidQueryException exception) {
+            assertThatThrownBy(() -> SyntaxParser.RECURSIVE_DESCENT.parse(query))
+                    .as("query [%s] should be rejected", query)
+                    .isInstanceOf(InvalidQueryException.class);
+            return;
+        }
+        assertThat(SyntaxParser.RECURSIVE_DESCENT.parse(query).getExpression())
+                .as("query [%s]", query)
+                .isEqualTo(expected);
+    }
+
+    private static String expression(final Random random, final int depth) {
+        final int choice = random.nextInt(depth < 3 ? 8 : 6);
+        final String field = FIELDS[random.nextInt(FIELDS.length)];
+        final String not = random.nextBoolean() ? "NOT" + separator(random) : "";
+        switch (choice) {
+            case 0:
+                return field + separator(random) + OPERATORS[random.nextInt(OPERATORS.length)] + parameter(random);
+            case 1:
+                return field + separator(random) + not + "between" + parameter(random) + separator(random) + "and" + parameter(random);
+            case 2:
+                return field + separator(random) + not + "In" + parameter(random);
+            case 3:
+                return field + separator(random) + not + "LIKE" + parameter(random);
+            case 4:
+                return field + separator(random) + "is" + separator(random) + not + "null";
+            case 5:
+                return "(" + expression(random, depth + 1) + ")";
+            default:
+                final String operator = new String[]{"AND", "and", "&&", "OR", "or", "||"}[random.nextInt(6)];
+                return expression(random, depth + 1) + separator(random) + operator + separator(random) + expression(random, depth + 1);
+        }
+    }
+
+    private static String parameter(final Random random) {
+        return separator(random) + ":" + (random.nextInt(10) == 0 ? separator(random) : "") + FIELDS[random.nextInt(FIELDS.length)];
+    }
+
+    private static String separator(final Random random) {
+        return SEPARATORS[random.nextInt(SEPARATORS.length)];
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Institut Laue–Langevin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.ill.preql.support;
+
+import com.google.common.collect.ImmutableList;
+import eu.ill.preql.exception.InvalidQueryException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Cursor tests")
+class CursorTest {
+
+    @Test
+    @DisplayName("should encode and decode a cursor")
+    void encodeAndDecode() {
+        final Date date = new Date();
+        final String token = Cursor.of("price:desc", ImmutableList.of(new BigDecimal("100.50"), "a|b:c", date, LocalDate.of(2018, 1, 1), 10L)).encode();
+        assertThat(token).matches("^[A-Za-z0-9_-]+$");
+
+        final Cursor cursor = Cursor.decode(token);
+        assertThat(cursor.getOrder()).isEqualTo("price:desc");
+        assertThat(cursor.size()).isEqualTo(5);
+        assertThat(cursor.getValue(0, BigDecimal.class)).isEqualTo(new BigDecimal("100.50"));
+        assertThat(cursor.getValue(1, String.class)).isEqualTo("a|b:c");
+        assertThat(cursor.getValue(2, Date.class)).isEqualTo(date);
+        assertThat(cursor.getValue(3, LocalDate.class)).isEqualTo(LocalDate.of(2018, 1, 1));
+        assertThat(cursor.getValue(4, long.class)).isEqualTo(10L);
+    }
+
+    @Test
+    @DisplayName("should fail to decode an invalid cursor")
+    void invalidCursor() {
+        assertThrows(InvalidQueryException.class, () -> Cursor.decode("not a cursor"));
+        assertThrows(InvalidQueryException.class, () -> Cursor.decode("AAE"));
+        assertThrows(InvalidQueryException.class, () -> Cursor.decode(Cursor.of("", ImmutableList.of("abc")).encode()).getValue(0, Long.class));
+    }
+
+    @Test
+    @DisplayName("should encode and decode a cursor with a null value")
+    void nullValue() {
+        final Cursor cursor = Cursor.decode(Cursor.of("summary:asc", Arrays.asList(null, 10L)).encode());
+        assertThat(cursor.size()).isEqualTo(2);
+        assertThat(cursor.getValue(0, String.class)).isNull();
+        assertThat(cursor.getValue(1, Long.class)).isEqualTo(10L);
+    }
+
+    @Test
+    @DisplayName("should encode and decode a value by its declared type")
+    void declaredType() {
+        final Timestamp timestamp = Timestamp.from(Instant.parse("2018-01-01T10:00:00.123456789Z"));
+        final Cursor cursor = Cursor.decode(Cursor.of("startDate:asc", ImmutableList.of(timestamp, 10L),
+                ImmutableList.of(Date.class, Long.class)).encode());
+        assertThat(cursor.getValue(0, Date.class)).isEqualTo(timestamp);
+        assertThat(Cursor.decode(Cursor.of("", ImmutableList.of(new Date(1000L))).encode()).getValue(0, Date.class)).isEqualTo(new Date(1000L));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.of("", ImmutableList.of(1L), ImmutableList.of()));
+    }
+
+}